@@ -14,6 +14,7 @@ import model.network.schema.ColorInputAdapter;
 import model.network.schema.Schema;
 
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class Main extends Application {
    @Override
@@ -67,6 +68,8 @@ public class Main extends Application {
       //algorithm.setGenerationCap(1);
       algorithm.setPopulationSize(50);
       algorithm.setAcceptableFitness(.90);
+      algorithm.setForkJoinPool(new ForkJoinPool());
+      algorithm.setSeed(0);
 
       algorithm.run();
       System.exit(0);
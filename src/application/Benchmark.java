@@ -0,0 +1,1110 @@
+package application;
+
+import model.network.BatchQueryResult;
+import model.network.DenseNeuronGraph;
+import model.network.Evaluation;
+import model.network.Evaluator;
+import model.network.FloatNeuronGraph;
+import model.network.Kernels;
+import model.network.ConjugateGradientTrainer;
+import model.network.LBFGSTrainer;
+import model.network.Network;
+import model.network.NetworkTrainer;
+import model.network.NeuronGraph;
+import model.network.OffHeapNeuronGraph;
+import model.network.PrototypeSynthesizer;
+import model.network.QuantizedNeuronGraph;
+import model.network.Registry;
+import model.geneticAlgorithm.GeneticAlgorithm;
+import model.geneticAlgorithm.IslandGeneticAlgorithm;
+import model.geneticAlgorithm.NetworkGeneticAdapter;
+import model.geneticAlgorithm.PrototypeGeneticAdapter;
+import model.network.activation.ActivationFunction;
+import model.network.optimizer.Optimizer;
+import model.network.schedule.ConstantSchedule;
+import model.network.schedule.CosineSchedule;
+import model.network.schedule.ExponentialSchedule;
+import model.network.schedule.StepSchedule;
+import model.network.activation.Sigmoid;
+import model.network.memory.Memory;
+import model.network.parameters.BooleanParameter;
+import model.network.parameters.ClassParameter;
+import model.network.parameters.Parameters;
+import model.network.schema.ColorInputAdapter;
+import model.network.schema.Schema;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Benchmarks for comparing network engines on the stored color memories.
+ * Run with the name of a benchmark as the first argument.
+ * Correctness checks belong in the JUnit tests under the test directory.
+ */
+public class Benchmark {
+   /** Memory set used for benchmarking. */
+   private static final String kMemorySet = "master";
+
+   public static void main(String[] args) throws Exception {
+      String name = (args.length > 0) ? args[0] : "";
+
+      if (name.equals("precision")) {
+         precisionTest();
+      } else if (name.equals("parallel")) {
+         parallelTest();
+      } else if (name.equals("offheap")) {
+         offHeapTest();
+      } else if (name.equals("kernels")) {
+         kernelTest();
+      } else if (name.equals("quantization")) {
+         quantizationTest();
+      } else if (name.equals("activation")) {
+         activationTest();
+      } else if (name.equals("softmax")) {
+         softmaxTest();
+      } else if (name.equals("optimizer")) {
+         optimizerTest();
+      } else if (name.equals("fullbatch")) {
+         fullBatchTest();
+      } else if (name.equals("schedule")) {
+         scheduleTest();
+      } else if (name.equals("evaluation")) {
+         evaluationTest();
+      } else if (name.equals("snapshot")) {
+         snapshotTest();
+      } else if (name.equals("copy")) {
+         copyTest();
+      } else if (name.equals("genetic")) {
+         geneticTest();
+      } else if (name.equals("islands")) {
+         islandTest();
+      } else if (name.equals("prototypes")) {
+         prototypeTest();
+      } else if (name.equals("synthesis")) {
+         synthesisTest();
+      } else {
+         System.err.println("Unknown benchmark: " + name);
+      }
+   }
+
+   /**
+    * Compares the single precision graph against the double precision
+    * graph for accuracy after training, query speed and size.
+    */
+   public static void precisionTest() throws Exception {
+      final int kTrials = 5;
+      final int kEpochs = 500;
+
+      Schema schema = createColorSchema();
+      List<Memory> memories = FileManager.loadMemories(kMemorySet);
+      Collections.shuffle(memories, new Random(0));
+      int cutoff = memories.size() * 2 / 3;
+      List<Memory> training = memories.subList(0, cutoff);
+      List<Memory> test = memories.subList(cutoff, memories.size());
+
+      Class[] graphClasses = new Class[] {
+            DenseNeuronGraph.class,
+            FloatNeuronGraph.class
+      };
+
+      // Accuracy parity.
+      for (Class graphClass : graphClasses) {
+         double totalPercent = 0.0;
+         for (int trial = 0; trial < kTrials; ++trial) {
+            NeuronGraph graph = NeuronGraph.create(schema,
+                  createParameters(graphClass, new Integer[] { 16 }));
+            for (int epoch = 0; epoch < kEpochs; ++epoch) {
+               for (Memory mem : training) graph.backpropagate(mem);
+            }
+            totalPercent += calcPercentCorrect(schema, graph, test);
+         }
+         System.out.printf("%s: %.2f%% correct after %d epochs (%d trials)\n",
+               graphClass.getSimpleName(), totalPercent / kTrials, kEpochs, kTrials);
+      }
+
+      // Speed and size on large hidden layers.
+      for (Class graphClass : graphClasses) {
+         NeuronGraph graph = NeuronGraph.create(schema,
+               createParameters(graphClass, new Integer[] { 512, 512 }));
+
+         double queryTime = timeQueries(graph, memories, 20);
+         long start = System.nanoTime();
+         for (int round = 0; round < 5; ++round) {
+            for (Memory mem : memories) graph.backpropagate(mem);
+         }
+         double trainTime = (double) (System.nanoTime() - start) / (5 * memories.size());
+
+         System.out.printf("%s (512x512): %.0f ns/query, %.0f ns/backpropagation, %d bytes serialized\n",
+               graphClass.getSimpleName(), queryTime, trainTime, serializedSize(graph));
+      }
+   }
+
+   /**
+    * Compares per-memory training with mini-batch training on one thread
+    * and sharded across every core, by the epochs and seconds each needs
+    * to reach a demanding percentage on the test memories.
+    * Each configuration trains from the same seeded starting weights.
+    */
+   public static void parallelTest() throws Exception {
+      final int kTrials = 3;
+      final int kCopies = 20;
+      final int kBatchSize = 32;
+      final int kIterationCap = 500;
+      final double kTarget = 90.0;
+      int cores = Runtime.getRuntime().availableProcessors();
+      final int[][] kConfigurations = new int[][] {
+            { 1, 1 }, { kBatchSize, 1 }, { kBatchSize, Math.max(2, cores) } };
+
+      Schema schema = createColorSchema();
+      List<Memory> memories = FileManager.loadMemories(kMemorySet);
+      Collections.shuffle(memories, new Random(0));
+      int cutoff = memories.size() * 2 / 3;
+      List<Memory> training = new ArrayList<Memory>();
+      for (int i = 0; i < kCopies; ++i) training.addAll(memories.subList(0, cutoff));
+      List<Memory> test = memories.subList(cutoff, memories.size());
+
+      for (int[] configuration : kConfigurations) {
+         Parameters params = createParameters(DenseNeuronGraph.class, new Integer[] { 64 });
+         params.getParameter(Parameters.kSoftmaxOutput).setValue(true);
+         params.getParameter(Parameters.kBatchSize).setValue(configuration[0]);
+         params.getParameter(Parameters.kTrainingThreads).setValue(configuration[1]);
+         params.getParameter(Parameters.kIterationCap).setValue(kIterationCap);
+         params.getParameter(Parameters.kAcceptablePercentCorrect).setValue(kTarget);
+
+         int epochs = 0;
+         double seconds = 0.0;
+         for (int trial = 0; trial < kTrials; ++trial) {
+            NeuronGraph.setRandomSeed(trial);
+            Network network = new Network("Benchmark", schema, params);
+            NeuronGraph.clearRandomSeed();
+
+            NetworkTrainer trainer = NetworkTrainer.create(network, training, test);
+            long start = System.nanoTime();
+            trainer.train();
+            seconds += (System.nanoTime() - start) / 1e9;
+            epochs += trainer.getEpochCount();
+         }
+
+         System.out.printf("Batch %2d, %d threads: %6.1f epochs and %6.2f s to %.0f%% " +
+                     "(%.1f ms/epoch, cap %d, %d cores)\n",
+               configuration[0], configuration[1], (double) epochs / kTrials,
+               seconds / kTrials, kTarget, 1e3 * seconds / epochs, kIterationCap, cores);
+      }
+   }
+
+   /**
+    * Writes a trained graph to a model file, maps it back read-only and
+    * compares query speed of heap and off-heap storage.
+    */
+   public static void offHeapTest() throws Exception {
+      Schema schema = createColorSchema();
+      List<Memory> memories = FileManager.loadMemories(kMemorySet);
+      Integer[] hiddenLayerDepths = new Integer[] { 512, 512 };
+
+      NeuronGraph dense = NeuronGraph.create(schema,
+            createParameters(DenseNeuronGraph.class, hiddenLayerDepths));
+      for (Memory mem : memories) dense.backpropagate(mem);
+
+      File file = File.createTempFile("network", ".model");
+      file.deleteOnExit();
+      OffHeapNeuronGraph.write(dense, file);
+
+      OffHeapNeuronGraph mapped = OffHeapNeuronGraph.map(file, schema,
+            createParameters(OffHeapNeuronGraph.class, hiddenLayerDepths), false);
+      try {
+         System.out.printf("Model file: %d bytes\n", file.length());
+         System.out.printf("DenseNeuronGraph (512x512): %.0f ns/query\n",
+               timeQueries(dense, memories, 20));
+         System.out.printf("OffHeapNeuronGraph (512x512, mapped): %.0f ns/query\n",
+               timeQueries(mapped, memories, 20));
+      } finally {
+         mapped.close();
+      }
+   }
+
+   /**
+    * Compares the inner loop kernels against plain loops for a range of
+    * layer widths.  Each width is timed as one layer of that many neurons
+    * with that many inputs: a forward pass of dot products, error
+    * propagation and a weight update.
+    */
+   public static void kernelTest() {
+      final int[] kWidths = new int[] { 8, 16, 32, 64, 128, 256, 512, 1024 };
+      final long kOperations = 50000000L;
+      Random rand = new Random(0);
+
+      System.out.println("Width   plain dot  kernel dot   plain add  kernel add  (ns/layer)");
+      for (int width : kWidths) {
+         double[] matrix = new double[width * width];
+         double[] in = new double[width];
+         double[] out = new double[width];
+         for (int i = 0; i < matrix.length; ++i) matrix[i] = rand.nextDouble() * 2 - 1;
+         for (int i = 0; i < width; ++i) in[i] = rand.nextDouble();
+
+         int rounds = (int) Math.max(1, kOperations / matrix.length);
+         double[] times = new double[4];
+
+         // Warm up, then time each variant.
+         for (int pass = 0; pass < 2; ++pass) {
+            for (int variant = 0; variant < 4; ++variant) {
+               long start = System.nanoTime();
+               for (int round = 0; round < rounds; ++round) {
+                  runLayer(variant, matrix, in, out, width);
+               }
+               times[variant] = (double) (System.nanoTime() - start) / rounds;
+            }
+         }
+
+         System.out.printf("%5d  %10.0f  %10.0f  %10.0f  %10.0f\n",
+               width, times[0], times[1], times[2], times[3]);
+      }
+   }
+
+   /**
+    * Runs one layer's worth of a kernel variant.
+    * @param variant 0 plain dot, 1 kernel dot, 2 plain add, 3 kernel add
+    * @param matrix layer weights, one row per neuron
+    * @param in layer inputs
+    * @param out layer outputs
+    * @param width layer width
+    */
+   private static void runLayer(int variant, double[] matrix, double[] in, double[] out, int width) {
+      for (int row = 0, offset = 0; row < width; ++row, offset += width) {
+         if (variant == 0) {
+            double x = 0.0;
+            for (int col = 0; col < width; ++col) x += in[col] * matrix[offset + col];
+            out[row] = x;
+         } else if (variant == 1) {
+            out[row] = Kernels.dot(in, 0, matrix, offset, width);
+         } else if (variant == 2) {
+            // Tiny scale keeps the values bounded over many rounds.
+            double scale = 1e-12 * in[row];
+            for (int col = 0; col < width; ++col) out[col] += scale * matrix[offset + col];
+         } else {
+            Kernels.addScaled(1e-12 * in[row], matrix, offset, out, 0, width);
+         }
+      }
+   }
+
+   /**
+    * Reports the accuracy, latency and footprint of int8 quantized graphs
+    * against the trained double precision graphs they were built from.
+    * Calibration uses the training memories only.
+    */
+   public static void quantizationTest() throws Exception {
+      final int kEpochs = 500;
+
+      Schema schema = createColorSchema();
+      List<Memory> memories = FileManager.loadMemories(kMemorySet);
+      Collections.shuffle(memories, new Random(0));
+      int cutoff = memories.size() * 2 / 3;
+      List<Memory> training = memories.subList(0, cutoff);
+      List<Memory> test = memories.subList(cutoff, memories.size());
+
+      Integer[][] shapes = new Integer[][] {
+            new Integer[] { 16 },
+            new Integer[] { 128, 128 }
+      };
+
+      for (Integer[] shape : shapes) {
+         Parameters params = createParameters(DenseNeuronGraph.class, shape);
+         NeuronGraph graph = NeuronGraph.create(schema, params);
+         for (int epoch = 0; epoch < kEpochs; ++epoch) {
+            for (Memory mem : training) graph.backpropagate(mem);
+         }
+         QuantizedNeuronGraph quantized = new QuantizedNeuronGraph(graph, schema, params, training);
+
+         int correct = 0;
+         int agreed = 0;
+         for (Memory mem : test) {
+            double[] output = quantized.fire(mem.inputVector);
+            if (schema.translateOutput(output).equals(mem.output)) ++correct;
+            if (schema.translateOutputIndex(output) ==
+                  schema.translateOutputIndex(graph.fire(mem.inputVector))) ++agreed;
+         }
+
+         // Time both graphs on the same output buffer path.
+         double[] output = new double[schema.outputSize];
+         double[] times = new double[2];
+         for (int pass = 0; pass < 2; ++pass) {
+            long start = System.nanoTime();
+            for (int round = 0; round < 20; ++round) {
+               for (Memory mem : memories) graph.fire(mem.inputVector, output);
+            }
+            times[0] = (double) (System.nanoTime() - start) / (20 * memories.size());
+
+            start = System.nanoTime();
+            for (int round = 0; round < 20; ++round) {
+               for (Memory mem : memories) quantized.fire(mem.inputVector, output);
+            }
+            times[1] = (double) (System.nanoTime() - start) / (20 * memories.size());
+         }
+
+         String name = Arrays.toString(shape);
+         System.out.printf("%s double: %.2f%% correct, %.0f ns/query, %d parameter bytes, %d bytes serialized\n",
+               name, calcPercentCorrect(schema, graph, test), times[0],
+               8L * graph.getParameterCount(), serializedSize(graph));
+         System.out.printf("%s int8:   %.2f%% correct, %.0f ns/query, %d parameter bytes, %d bytes serialized, %.2f%% agreement\n",
+               name, 100.0 * correct / test.size(), times[1],
+               quantized.getParameterBytes(), serializedSize(quantized),
+               100.0 * agreed / test.size());
+      }
+   }
+
+   /**
+    * Reports the cost and accuracy of every registered activation function:
+    * nanoseconds per calculation, maximum absolute error against the exact
+    * function it models, and test accuracy after training on the color
+    * memories.
+    */
+   public static void activationTest() throws Exception {
+      final int kInputs = 1 << 16;
+      final int kRounds = 200;
+      final int kEpochs = 300;
+
+      Schema schema = createColorSchema();
+      List<Memory> memories = FileManager.loadMemories(kMemorySet);
+      Collections.shuffle(memories, new Random(0));
+      int cutoff = memories.size() * 2 / 3;
+      List<Memory> training = memories.subList(0, cutoff);
+      List<Memory> test = memories.subList(cutoff, memories.size());
+
+      // Inputs spanning the useful range of every function.
+      Random rand = new Random(0);
+      double[] inputs = new double[kInputs];
+      for (int i = 0; i < kInputs; ++i) inputs[i] = rand.nextDouble() * 20 - 10;
+      Sigmoid exactSigmoid = new Sigmoid(Sigmoid.defaultParameters);
+
+      Class[] functionClasses = Registry.activationFunctionClasses;
+      ActivationFunction[] functions = new ActivationFunction[functionClasses.length];
+      Parameters[] functionParams = new Parameters[functionClasses.length];
+      for (int f = 0; f < functions.length; ++f) {
+         functionParams[f] = createParameters(DenseNeuronGraph.class, new Integer[] { 16 });
+         ClassParameter functionParam =
+               (ClassParameter) functionParams[f].getParameter(Parameters.kActivationFunction);
+         functionParam.setValue(functionClasses[f]);
+         functions[f] = (ActivationFunction) functionParam.instantiate();
+      }
+
+      // Warm up every function first so that each is timed through the
+      // same call site profile, as it would be inside a neuron graph.
+      for (ActivationFunction function : functions) {
+         timeActivation(function, inputs, kRounds);
+      }
+
+      System.out.println("Function          ns/op    max error   % correct");
+      for (int f = 0; f < functions.length; ++f) {
+         ActivationFunction function = functions[f];
+
+         // Approximations are measured against the exact sigmoid.
+         ActivationFunction reference = (function instanceof Sigmoid) ? exactSigmoid : function;
+         double maxError = 0.0;
+         for (double input : inputs) {
+            maxError = Math.max(maxError,
+                  Math.abs(function.calculate(input) - reference.calculate(input)));
+         }
+
+         double time = timeActivation(function, inputs, kRounds);
+
+         NeuronGraph graph = NeuronGraph.create(schema, functionParams[f]);
+         for (int epoch = 0; epoch < kEpochs; ++epoch) {
+            for (Memory mem : training) graph.backpropagate(mem);
+         }
+
+         System.out.printf("%-15s %7.2f  %10.2e  %9.2f\n",
+               functionClasses[f].getSimpleName(), time, maxError,
+               calcPercentCorrect(schema, graph, test));
+      }
+   }
+
+   /**
+    * Times an activation function.
+    * @param function activation function
+    * @param inputs inputs to calculate
+    * @param rounds number of rounds over the inputs
+    * @return nanoseconds per calculation
+    */
+   private static double timeActivation(ActivationFunction function, double[] inputs, int rounds) {
+      double sum = 0.0;
+      long start = System.nanoTime();
+      for (int round = 0; round < rounds; ++round) {
+         for (int i = 0; i < inputs.length; ++i) sum += function.calculate(inputs[i]);
+      }
+      long time = System.nanoTime() - start;
+
+      // Keep the results live so the calculations are not optimized away.
+      if (Double.isNaN(sum)) System.out.println("NaN activation result!");
+      return (double) time / ((long) rounds * inputs.length);
+   }
+
+   /**
+    * Compares the number of epochs sigmoid outputs with squared error and
+    * softmax outputs with cross-entropy need to reach the default
+    * acceptable percentage correct on the test memories.
+    */
+   public static void softmaxTest() throws Exception {
+      final int kTrials = 10;
+      final int kEpochCap = 2000;
+
+      Schema schema = createColorSchema();
+      List<Memory> memories = FileManager.loadMemories(kMemorySet);
+      Collections.shuffle(memories, new Random(0));
+      int cutoff = memories.size() * 2 / 3;
+      List<Memory> training = memories.subList(0, cutoff);
+      List<Memory> test = memories.subList(cutoff, memories.size());
+
+      for (boolean softmax : new boolean[] { false, true }) {
+         Parameters params = createParameters(DenseNeuronGraph.class, new Integer[] { 16 });
+         params.getParameter(Parameters.kSoftmaxOutput).setValue(softmax);
+         double target = (Double)
+               params.getParameter(Parameters.kAcceptablePercentCorrect).getValue();
+
+         int totalEpochs = 0;
+         int reached = 0;
+         double totalPercent = 0.0;
+         for (int trial = 0; trial < kTrials; ++trial) {
+            NeuronGraph graph = NeuronGraph.create(schema, params);
+            int epoch = 0;
+            double percent = calcPercentCorrect(schema, graph, test);
+            while (percent < target && epoch < kEpochCap) {
+               for (Memory mem : training) graph.backpropagate(mem);
+               percent = calcPercentCorrect(schema, graph, test);
+               ++epoch;
+            }
+            if (percent >= target) ++reached;
+            totalEpochs += epoch;
+            totalPercent += percent;
+         }
+
+         System.out.printf("%s: %.1f epochs to %.0f%% on average, %d/%d trials reached it, %.2f%% final\n",
+               softmax ? "Softmax + cross-entropy" : "Sigmoid + squared error",
+               (double) totalEpochs / kTrials, target, reached, kTrials, totalPercent / kTrials);
+      }
+   }
+
+   /**
+    * Compares the number of mini-batch epochs each registered optimizer
+    * needs to reach the default acceptable percentage correct.
+    * Each optimizer uses a learning rate suited to its update scale.
+    */
+   public static void optimizerTest() throws Exception {
+      final int kTrials = 5;
+      final int kEpochCap = 1000;
+      final int kBatchSize = 16;
+      final double[] kLearningRates = new double[] { 0.5, 0.1, 0.1, 0.01, 0.03 };
+
+      Schema schema = createColorSchema();
+      List<Memory> memories = FileManager.loadMemories(kMemorySet);
+      Collections.shuffle(memories, new Random(0));
+      int cutoff = memories.size() * 2 / 3;
+      List<Memory> training = memories.subList(0, cutoff);
+      List<Memory> test = memories.subList(cutoff, memories.size());
+
+      Class[] optimizerClasses = Registry.optimizerClasses;
+      for (int o = 0; o < optimizerClasses.length; ++o) {
+         Parameters params = createParameters(DenseNeuronGraph.class, new Integer[] { 16 });
+         params.getParameter(Parameters.kSoftmaxOutput).setValue(true);
+         ClassParameter optimizerParam =
+               (ClassParameter) params.getParameter(Parameters.kOptimizer);
+         optimizerParam.setValue(optimizerClasses[o]);
+         double target = (Double)
+               params.getParameter(Parameters.kAcceptablePercentCorrect).getValue();
+
+         int totalEpochs = 0;
+         int reached = 0;
+         long start = System.nanoTime();
+         for (int trial = 0; trial < kTrials; ++trial) {
+            NeuronGraph graph = NeuronGraph.create(schema, params);
+            Optimizer optimizer = (Optimizer) optimizerParam.instantiate();
+            double[] gradient = new double[graph.getParameterCount()];
+
+            int epoch = 0;
+            double percent = calcPercentCorrect(schema, graph, test);
+            while (percent < target && epoch < kEpochCap) {
+               for (int batch = 0; batch < training.size(); batch += kBatchSize) {
+                  int end = Math.min(batch + kBatchSize, training.size());
+                  Arrays.fill(gradient, 0.0);
+                  for (int i = batch; i < end; ++i) {
+                     graph.accumulateGradient(training.get(i), gradient);
+                  }
+                  for (int i = 0; i < gradient.length; ++i) gradient[i] /= (end - batch);
+                  optimizer.step(graph, gradient, kLearningRates[o]);
+               }
+               percent = calcPercentCorrect(schema, graph, test);
+               ++epoch;
+            }
+            if (percent >= target) ++reached;
+            totalEpochs += epoch;
+         }
+         double seconds = (System.nanoTime() - start) / 1e9;
+
+         System.out.printf("%-9s (rate %.3f): %.1f epochs to %.0f%% on average, %d/%d trials reached it, %.2f s\n",
+               optimizerClasses[o].getSimpleName(), kLearningRates[o],
+               (double) totalEpochs / kTrials, target, reached, kTrials, seconds);
+      }
+   }
+
+   /**
+    * Compares the stochastic trainer with the full-batch L-BFGS and
+    * conjugate gradient trainers on a small network, timing how long
+    * each takes to reach the acceptable percentage on the test set.
+    */
+   public static void fullBatchTest() throws Exception {
+      final int kTrials = 3;
+      final Class[] kTrainerClasses = new Class[] {
+            NetworkTrainer.class, LBFGSTrainer.class, ConjugateGradientTrainer.class };
+
+      Schema schema = createColorSchema();
+      List<Memory> memories = FileManager.loadMemories(kMemorySet);
+      Collections.shuffle(memories, new Random(0));
+      int cutoff = memories.size() * 2 / 3;
+      List<Memory> training = memories.subList(0, cutoff);
+      List<Memory> test = memories.subList(cutoff, memories.size());
+
+      double[] seconds = new double[kTrainerClasses.length];
+      double[] percents = new double[kTrainerClasses.length];
+      for (int t = 0; t < kTrainerClasses.length; ++t) {
+         for (int trial = 0; trial < kTrials; ++trial) {
+            Parameters params = createParameters(DenseNeuronGraph.class, new Integer[] { 16 });
+            params.getParameter(Parameters.kSoftmaxOutput).setValue(true);
+            ((ClassParameter) params.getParameter(Parameters.kTrainer)).setValue(kTrainerClasses[t]);
+            Network network = new Network("Benchmark", schema, params);
+
+            long start = System.nanoTime();
+            NetworkTrainer.create(network, training, test).train();
+            seconds[t] += (System.nanoTime() - start) / 1e9;
+
+            int correct = 0;
+            for (Memory mem : test) {
+               if (network.query(mem.inputVector).equals(mem.output)) ++correct;
+            }
+            percents[t] += 100.0 * correct / test.size();
+         }
+      }
+
+      for (int t = 0; t < kTrainerClasses.length; ++t) {
+         System.out.printf("%-24s: %.2f s to train, %.1f%% correct on average\n",
+               kTrainerClasses[t].getSimpleName(), seconds[t] / kTrials, percents[t] / kTrials);
+      }
+   }
+
+   /**
+    * Compares learning rate schedules and restart modes by how long the
+    * default trainer takes to reach a demanding test percentage, with a
+    * short stale threshold so that restarts actually happen.
+    */
+   public static void scheduleTest() throws Exception {
+      final int kTrials = 8;
+      final double kTarget = 92.0;
+      final int kIterationCap = 2000;
+      final Class[] kScheduleClasses = new Class[] {
+            ConstantSchedule.class, StepSchedule.class, ExponentialSchedule.class,
+            CosineSchedule.class, ConstantSchedule.class, CosineSchedule.class };
+      final String[] kRestartModes = new String[] {
+            NetworkTrainer.kResetRestart, NetworkTrainer.kResetRestart,
+            NetworkTrainer.kResetRestart, NetworkTrainer.kResetRestart,
+            NetworkTrainer.kPerturbRestart, NetworkTrainer.kPerturbRestart };
+
+      Schema schema = createColorSchema();
+      List<Memory> memories = FileManager.loadMemories(kMemorySet);
+      Collections.shuffle(memories, new Random(0));
+      int cutoff = memories.size() * 2 / 3;
+      List<Memory> training = memories.subList(0, cutoff);
+      List<Memory> test = memories.subList(cutoff, memories.size());
+
+      double[] seconds = new double[kScheduleClasses.length];
+      int[] reached = new int[kScheduleClasses.length];
+      for (int s = 0; s < kScheduleClasses.length; ++s) {
+         for (int trial = 0; trial < kTrials; ++trial) {
+            Parameters params = createParameters(DenseNeuronGraph.class, new Integer[] { 16 });
+            params.getParameter(Parameters.kSoftmaxOutput).setValue(true);
+            params.getParameter(Parameters.kAcceptablePercentCorrect).setValue(kTarget);
+            params.getParameter(Parameters.kIterationCap).setValue(kIterationCap);
+            params.getParameter(Parameters.kStaleThreshold).setValue(20);
+            params.getParameter(Parameters.kRestartMode).setValue(kRestartModes[s]);
+            ((ClassParameter) params.getParameter(Parameters.kLearningRateSchedule))
+                  .setValue(kScheduleClasses[s]);
+            Network network = new Network("Benchmark", schema, params);
+
+            long start = System.nanoTime();
+            NetworkTrainer.create(network, training, test).train();
+            seconds[s] += (System.nanoTime() - start) / 1e9;
+
+            int correct = 0;
+            for (Memory mem : test) {
+               if (network.query(mem.inputVector).equals(mem.output)) ++correct;
+            }
+            if (100.0 * correct / test.size() >= kTarget) ++reached[s];
+         }
+      }
+
+      for (int s = 0; s < kScheduleClasses.length; ++s) {
+         System.out.printf("%-19s %-12s: %.2f s to train, %d/%d trials reached %.0f%%\n",
+               kScheduleClasses[s].getSimpleName(), kRestartModes[s],
+               seconds[s] / kTrials, reached[s], kTrials, kTarget);
+      }
+   }
+
+   /**
+    * Compares evaluating a test set with separate error and accuracy
+    * passes against the fused evaluator, on one thread and on all cores.
+    */
+   public static void evaluationTest() throws Exception {
+      final int kCopies = 200;
+      final int kRounds = 10;
+
+      Schema schema = createColorSchema();
+      List<Memory> memories = new ArrayList<Memory>();
+      List<Memory> loaded = FileManager.loadMemories(kMemorySet);
+      for (int i = 0; i < kCopies; ++i) memories.addAll(loaded);
+
+      Parameters params = createParameters(DenseNeuronGraph.class, new Integer[] { 64, 64 });
+      NeuronGraph graph = NeuronGraph.create(schema, params);
+      Evaluator evaluator = new Evaluator(schema, false);
+      int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+      ExecutorService workers = Executors.newFixedThreadPool(threads);
+
+      try {
+         double[] output = new double[schema.outputSize];
+         double twoPassError = 0.0;
+         double twoPassPercent = 0.0;
+         Evaluation serial = null;
+         Evaluation parallel = null;
+         long[] times = new long[3];
+
+         for (int round = 0; round < kRounds + 1; ++round) {
+            long start = System.nanoTime();
+            twoPassError = 0.0;
+            for (Memory mem : memories) {
+               graph.fire(mem.inputVector, output);
+               twoPassError += evaluator.calcError(output, schema.getOutputIndex(mem.output));
+            }
+            int correct = 0;
+            for (Memory mem : memories) {
+               graph.fire(mem.inputVector, output);
+               if (schema.translateOutput(output).equals(mem.output)) ++correct;
+            }
+            twoPassPercent = 100.0 * correct / memories.size();
+            long middle = System.nanoTime();
+            serial = evaluator.evaluate(graph, memories);
+            long end = System.nanoTime();
+            parallel = evaluator.evaluate(graph, memories, workers, threads);
+            long last = System.nanoTime();
+
+            // The first round is warm up.
+            if (round > 0) {
+               times[0] += middle - start;
+               times[1] += end - middle;
+               times[2] += last - end;
+            }
+         }
+
+         System.out.printf("%d memories, %d threads\n", memories.size(), threads);
+         System.out.printf("Two passes:         %.1f ms, error %.4f, %.2f%% correct\n",
+               times[0] / 1e6 / kRounds, twoPassError, twoPassPercent);
+         System.out.printf("Fused:              %.1f ms, error %.4f, %.2f%% correct\n",
+               times[1] / 1e6 / kRounds, serial.getTotalError(), serial.getPercentCorrect());
+         System.out.printf("Fused and parallel: %.1f ms, error %.4f, %.2f%% correct\n",
+               times[2] / 1e6 / kRounds, parallel.getTotalError(), parallel.getPercentCorrect());
+         System.out.print(parallel);
+      } finally {
+         workers.shutdown();
+      }
+   }
+
+   /**
+    * Compares keeping the best graph by cloning it through serialization
+    * with snapshotting its weights into a reusable buffer.
+    */
+   public static void snapshotTest() throws Exception {
+      final int kRounds = 200;
+      Schema schema = createColorSchema();
+
+      for (Class graphClass : Registry.neuronGraphClasses) {
+         Parameters params = createParameters(graphClass, new Integer[] { 64, 64 });
+         NeuronGraph graph = NeuronGraph.create(schema, params);
+         double[] snapshot = new double[graph.getParameterCount()];
+
+         // Warm up both.
+         for (int round = 0; round < kRounds / 10; ++round) {
+            graph.clone();
+            graph.getWeights(snapshot);
+            graph.setWeights(snapshot);
+         }
+
+         long start = System.nanoTime();
+         for (int round = 0; round < kRounds; ++round) graph.clone();
+         long middle = System.nanoTime();
+         for (int round = 0; round < kRounds; ++round) {
+            graph.getWeights(snapshot);
+            graph.setWeights(snapshot);
+         }
+         long end = System.nanoTime();
+
+         System.out.printf("%-18s: clone %.1f us, snapshot and restore %.1f us\n",
+               graphClass.getSimpleName(), (middle - start) / 1e3 / kRounds,
+               (end - middle) / 1e3 / kRounds);
+         if (graph instanceof OffHeapNeuronGraph) ((OffHeapNeuronGraph) graph).close();
+      }
+   }
+
+   /**
+    * Compares copying a network through serialization with the direct
+    * and copy-on-write clones.
+    */
+   public static void copyTest() throws Exception {
+      final int kRounds = 200;
+      Schema schema = createColorSchema();
+      List<Memory> memories = FileManager.loadMemories(kMemorySet);
+
+      Parameters params = createParameters(DenseNeuronGraph.class, new Integer[] { 64, 64 });
+      Network network = new Network("Benchmark", schema, params);
+      network.addMemories(memories);
+
+      // Warm up all three.
+      for (int round = 0; round < kRounds / 10; ++round) {
+         serializedCopy(network);
+         network.clone();
+         network.copyOnWriteClone();
+      }
+
+      long[] times = new long[3];
+      long start = System.nanoTime();
+      for (int round = 0; round < kRounds; ++round) serializedCopy(network);
+      times[0] = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int round = 0; round < kRounds; ++round) network.clone();
+      times[1] = System.nanoTime() - start;
+      start = System.nanoTime();
+      for (int round = 0; round < kRounds; ++round) network.copyOnWriteClone();
+      times[2] = System.nanoTime() - start;
+
+      System.out.printf("Serialization:  %.1f us\n", times[0] / 1e3 / kRounds);
+      System.out.printf("Clone:          %.1f us\n", times[1] / 1e3 / kRounds);
+      System.out.printf("Copy-on-write:  %.1f us\n", times[2] / 1e3 / kRounds);
+   }
+
+   /**
+    * Copies an object by writing and reading it with Java serialization.
+    * @param object object to copy
+    * @return copy
+    */
+   private static Object serializedCopy(Object object) throws Exception {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(baos);
+      oos.writeObject(object);
+      oos.close();
+      return new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray())).readObject();
+   }
+
+   /**
+    * Times a small seeded network genetic algorithm serially and on a
+    * fork-join pool, and reports how many fitness evaluations the cache
+    * saved.
+    */
+   public static void geneticTest() throws Exception {
+      final long kSeed = 42;
+      final int kThreads = 4;
+
+      Schema schema = createColorSchema();
+      List<Memory> memories = FileManager.loadMemories(kMemorySet);
+      Collections.shuffle(memories, new Random(0));
+      int third = memories.size() / 3;
+      List<Memory> training = memories.subList(0, third);
+      List<Memory> test = memories.subList(third, 2 * third);
+      List<Memory> fitness = memories.subList(2 * third, memories.size());
+
+      Parameters params = createParameters(DenseNeuronGraph.class, new Integer[] { 8 });
+      params.getParameter(Parameters.kIterationCap).setValue(50);
+
+      double[] seconds = new double[2];
+      long evaluations = 0;
+      long saved = 0;
+      for (int run = 0; run < 2; ++run) {
+         ForkJoinPool pool = (run == 0) ? null : new ForkJoinPool(kThreads);
+         GeneticAlgorithm<Network> algorithm = new GeneticAlgorithm<Network>(
+               new NetworkGeneticAdapter(schema, params, training, test, fitness));
+         algorithm.setPopulationSize(8);
+         algorithm.setGenerationCap(2);
+         algorithm.setSeed(kSeed);
+         algorithm.setForkJoinPool(pool);
+
+         long start = System.nanoTime();
+         algorithm.run();
+         seconds[run] = (System.nanoTime() - start) / 1e9;
+         if (pool != null) pool.shutdown();
+         evaluations = algorithm.getEvaluationCount();
+         saved = algorithm.getSavedEvaluationCount();
+      }
+
+      System.out.printf("Serial: %.2f s, pool of %d: %.2f s on %d cores\n",
+            seconds[0], kThreads, seconds[1], Runtime.getRuntime().availableProcessors());
+      System.out.printf("Fitness evaluations per run: %d, saved by the cache: %d\n",
+            evaluations, saved);
+   }
+
+   /**
+    * Searches for a prototype of each classification with one large
+    * population and with the same number of individuals split across
+    * islands.
+    */
+   public static void islandTest() throws Exception {
+      final int kIslands = 4;
+      final int kPopulation = 2000;
+      final int kGenerations = 25;
+
+      Schema schema = createColorSchema();
+      List<Memory> memories = FileManager.loadMemories(kMemorySet);
+      Collections.shuffle(memories, new Random(0));
+      int cutoff = memories.size() * 2 / 3;
+      Parameters params = createParameters(DenseNeuronGraph.class, new Integer[] { 16 });
+      Network network = new Network("Benchmark", schema, params);
+      network.train(memories.subList(0, cutoff), memories.subList(cutoff, memories.size()));
+
+      double[] seconds = new double[2];
+      double[] fitness = new double[2];
+      for (Object classification : schema.getOutputClassifications()) {
+         PrototypeGeneticAdapter adapter = new PrototypeGeneticAdapter(network, classification);
+
+         GeneticAlgorithm<double[]> single = new GeneticAlgorithm<double[]>(adapter);
+         single.setPopulationSize(kPopulation);
+         single.setGenerationCap(kGenerations);
+         single.setMutationRate(0.1);
+         single.setAcceptableFitness(-0.001);
+         single.setSeed(0);
+         long start = System.nanoTime();
+         fitness[0] += adapter.calcFitness(single.run());
+         seconds[0] += (System.nanoTime() - start) / 1e9;
+
+         IslandGeneticAlgorithm<double[]> islands =
+               new IslandGeneticAlgorithm<double[]>(adapter, kIslands);
+         islands.setPopulationSize(kPopulation / kIslands);
+         islands.setGenerationCap(kGenerations);
+         islands.setMutationRate(0.1);
+         islands.setAcceptableFitness(-0.001);
+         islands.setMigrationInterval(5);
+         islands.setSeed(0);
+         start = System.nanoTime();
+         fitness[1] += adapter.calcFitness(islands.run());
+         seconds[1] += (System.nanoTime() - start) / 1e9;
+      }
+
+      int classes = schema.outputSize;
+      System.out.printf("One population of %d:  %.2f s, mean best fitness %.4f\n",
+            kPopulation, seconds[0], fitness[0] / classes);
+      System.out.printf("%d islands of %d:      %.2f s, mean best fitness %.4f on %d cores\n",
+            kIslands, kPopulation / kIslands, seconds[1], fitness[1] / classes,
+            Runtime.getRuntime().availableProcessors());
+   }
+
+   /**
+    * Times building and training a network now that prototypes are
+    * generated on request in the background, and times serving the
+    * previous set while a new one is generated.
+    */
+   public static void prototypeTest() throws Exception {
+      Schema schema = createColorSchema();
+      List<Memory> memories = FileManager.loadMemories(kMemorySet);
+      Collections.shuffle(memories, new Random(0));
+      int cutoff = memories.size() * 2 / 3;
+      List<Memory> training = memories.subList(0, cutoff);
+      List<Memory> test = memories.subList(cutoff, memories.size());
+      Parameters params = createParameters(DenseNeuronGraph.class, new Integer[] { 16 });
+
+      long start = System.nanoTime();
+      Network network = new Network("Benchmark", schema, params);
+      network.train(training, test);
+      double buildSeconds = (System.nanoTime() - start) / 1e9;
+
+      start = System.nanoTime();
+      int first = network.getPrototypes().size();
+      double requestMillis = (System.nanoTime() - start) / 1e6;
+
+      start = System.nanoTime();
+      Collection<Memory> generated = network.awaitPrototypes();
+      double generateSeconds = (System.nanoTime() - start) / 1e9;
+
+      network.train(training, test);
+      start = System.nanoTime();
+      int stale = network.getPrototypes().size();
+      double staleMillis = (System.nanoTime() - start) / 1e6;
+      network.awaitPrototypes();
+
+      System.out.printf("Construct and train:       %.2f s\n", buildSeconds);
+      System.out.printf("First request:             %.2f ms, %d prototypes\n",
+            requestMillis, first);
+      System.out.printf("Background generation:     %.2f s, %d prototypes\n",
+            generateSeconds, generated.size());
+      System.out.printf("Request after retraining:  %.2f ms, %d prototypes\n",
+            staleMillis, stale);
+   }
+
+   /**
+    * Compares prototypes found by the genetic algorithm with prototypes
+    * synthesized by gradient ascent on the inputs, on networks with
+    * sigmoid and softmax outputs.  Quality is the margin between the
+    * classification's output and the strongest other output.
+    */
+   public static void synthesisTest() throws Exception {
+      Schema schema = createColorSchema();
+      List<Memory> memories = FileManager.loadMemories(kMemorySet);
+      Collections.shuffle(memories, new Random(0));
+      int cutoff = memories.size() * 2 / 3;
+      Object[] classifications = schema.getOutputClassifications();
+
+      for (boolean softmax : new boolean[] { false, true }) {
+         Parameters params = createParameters(DenseNeuronGraph.class, new Integer[] { 16 });
+         ((BooleanParameter) params.getParameter(Parameters.kSoftmaxOutput)).setValue(softmax);
+         NeuronGraph.setRandomSeed(0);
+         Network network = new Network("Benchmark", schema, params);
+         network.train(memories.subList(0, cutoff), memories.subList(cutoff, memories.size()));
+         NeuronGraph.clearRandomSeed();
+
+         double[][] genetic = new double[classifications.length][];
+         long geneticPasses = 0;
+         long start = System.nanoTime();
+         for (int index = 0; index < classifications.length; ++index) {
+            GeneticAlgorithm<double[]> alg = new GeneticAlgorithm<double[]>(
+                  new PrototypeGeneticAdapter(network, classifications[index]));
+            alg.setPopulationSize(1000);
+            alg.setGenerationCap(25);
+            alg.setMutationRate(0.1);
+            alg.setAcceptableFitness(-0.001);
+            alg.setSeed(index);
+            genetic[index] = alg.run();
+            geneticPasses += alg.getEvaluationCount();
+         }
+         double geneticMillis = (System.nanoTime() - start) / 1e6;
+
+         double[][] gradient = new double[classifications.length][];
+         start = System.nanoTime();
+         PrototypeSynthesizer synthesizer = network.createPrototypeSynthesizer();
+         for (int index = 0; index < classifications.length; ++index) {
+            gradient[index] = synthesizer.synthesize(index, new Random(index));
+         }
+         double gradientMillis = (System.nanoTime() - start) / 1e6;
+
+         System.out.println(softmax ? "Softmax output:" : "Sigmoid output:");
+         printPrototypeQuality("  Genetic: ", network, genetic, geneticMillis,
+               geneticPasses / classifications.length);
+         printPrototypeQuality("  Gradient:", network, gradient, gradientMillis,
+               synthesizer.getPassCount() / classifications.length);
+      }
+   }
+
+   /**
+    * Prints how well a network classifies a prototype for each of its
+    * classifications.
+    * @param label row label
+    * @param network network the prototypes were found for
+    * @param prototypes prototype inputs, by classification index
+    * @param millis search time in milliseconds
+    * @param passes passes through the network per classification
+    */
+   private static void printPrototypeQuality(String label, Network network, double[][] prototypes,
+                                             double millis, long passes) throws Exception {
+      BatchQueryResult result = network.queryBatch(prototypes);
+      int correct = 0;
+      double margin = 0.0;
+      for (int index = 0; index < prototypes.length; ++index) {
+         double[] scores = result.scores[index];
+         double rival = Double.NEGATIVE_INFINITY;
+         for (int i = 0; i < scores.length; ++i) {
+            if (i != index) rival = Math.max(rival, scores[i]);
+         }
+         margin += scores[index] - rival;
+         if (result.classIndices[index] == index) ++correct;
+      }
+      System.out.printf("%s %4d/%d correct, mean margin %.3f, %6d passes per class, %7.1f ms\n",
+            label, correct, prototypes.length, margin / prototypes.length, passes, millis);
+   }
+
+   /**
+    * Creates the schema of the stored color memories.
+    * @return color schema
+    */
+   private static Schema createColorSchema() {
+      return new Schema("Schema", new ColorInputAdapter(), new Object[] {
+            "Red",
+            "Orange",
+            "Yellow",
+            "Green",
+            "Blue",
+            "Purple"
+      });
+   }
+
+   /**
+    * Creates network parameters for a neuron graph class.
+    * Uses the exact sigmoid so results do not depend on estimation tables.
+    * @param graphClass neuron graph class
+    * @param hiddenLayerDepths hidden layer depths
+    * @return parameters
+    */
+   private static Parameters createParameters(Class graphClass, Integer[] hiddenLayerDepths) {
+      Parameters params = new Parameters();
+      ((ClassParameter) params.getParameter(Parameters.kNeuronGraph)).setValue(graphClass);
+      ((ClassParameter) params.getParameter(Parameters.kActivationFunction)).setValue(Sigmoid.class);
+      params.getParameter(Parameters.kHiddenLayerDepths).setValue(hiddenLayerDepths);
+      return params;
+   }
+
+   /**
+    * Calculates the percentage of memories a graph classifies correctly.
+    * @param schema network schema
+    * @param graph neuron graph
+    * @param memories memories to classify
+    * @return percentage correct
+    */
+   private static double calcPercentCorrect(Schema schema, NeuronGraph graph,
+                                            List<Memory> memories) throws Exception {
+      int correct = 0;
+      for (Memory mem : memories) {
+         if (schema.translateOutput(graph.fire(mem.inputVector)).equals(mem.output))
+            ++correct;
+      }
+      return 100.0 * correct / memories.size();
+   }
+
+   /**
+    * Times queries of a graph after a warm up round.
+    * @param graph neuron graph
+    * @param memories memories to query with
+    * @param rounds number of rounds over the memories
+    * @return nanoseconds per query
+    */
+   private static double timeQueries(NeuronGraph graph, List<Memory> memories, int rounds) {
+      for (Memory mem : memories) graph.fire(mem.inputVector);
+
+      long start = System.nanoTime();
+      for (int round = 0; round < rounds; ++round) {
+         for (Memory mem : memories) graph.fire(mem.inputVector);
+      }
+      return (double) (System.nanoTime() - start) / (rounds * memories.size());
+   }
+
+   /**
+    * Gets the serialized size of an object.
+    * @param obj object to serialize
+    * @return size in bytes
+    */
+   private static int serializedSize(Object obj) throws Exception {
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(baos);
+      oos.writeObject(obj);
+      oos.close();
+      return baos.size();
+   }
+}
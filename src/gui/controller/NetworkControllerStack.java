@@ -90,7 +90,8 @@ public class NetworkControllerStack implements Initializable {
     * Pops a controller/view off the stack and restores the previous.
     */
    public void pop() {
-      stack.pop();
+      // Detach the popped controller so the network stops notifying it.
+      stack.pop().controller.setNetwork(null);
       display();
    }
 
@@ -5,12 +5,14 @@ import gui.controller.widget.ColorRandomizer;
 import gui.controller.widget.GenericHandler;
 import gui.controller.widget.GenericList;
 import gui.controller.widget.MemoryBox;
+import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.*;
 import javafx.scene.layout.FlowPane;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
+import model.network.Network;
 import model.network.memory.Memory;
 
 import java.io.IOException;
@@ -28,6 +30,20 @@ public class InteractController extends NetworkController implements Initializab
    private MemoryBox prototypesBox;
    private ColorRandomizer randomizer;
 
+   /** Reloads the prototypes box whenever new prototypes are generated. */
+   private final Network.PrototypeListener prototypeListener =
+         new Network.PrototypeListener() {
+            @Override
+            public void onPrototypesGenerated(Network network) {
+               Platform.runLater(new Runnable() {
+                  @Override
+                  public void run() {
+                     loadPrototypes();
+                  }
+               });
+            }
+         };
+
    /**
     * Initialization.
     * Sets up listeners for GUI.
@@ -55,6 +71,13 @@ public class InteractController extends NetworkController implements Initializab
       });
    }
 
+   @Override
+   public void setNetwork(Network network) {
+      if (this.network != null) this.network.removePrototypeListener(prototypeListener);
+      super.setNetwork(network);
+      if (network != null) network.addPrototypeListener(prototypeListener);
+   }
+
    @Override
    public void display() {
       classificationList.clear();
@@ -11,6 +11,7 @@ import javafx.fxml.FXML;
 import javafx.fxml.Initializable;
 import javafx.scene.control.ListView;
 import javafx.scene.layout.FlowPane;
+import model.network.Network;
 import model.network.memory.Memory;
 
 import java.net.URL;
@@ -25,6 +26,20 @@ public class MemoryController extends NetworkController implements Initializable
    private MemoryBox longTermMemoryBox;
    private GenericList<Object> classificationList;
 
+   /** Reloads the prototypes box whenever new prototypes are generated. */
+   private final Network.PrototypeListener prototypeListener =
+         new Network.PrototypeListener() {
+            @Override
+            public void onPrototypesGenerated(Network network) {
+               Platform.runLater(new Runnable() {
+                  @Override
+                  public void run() {
+                     loadPrototypes();
+                  }
+               });
+            }
+         };
+
    /**
     * Initialization.
     * Sets up listeners for GUI.
@@ -50,6 +65,13 @@ public class MemoryController extends NetworkController implements Initializable
       });
    }
 
+   @Override
+   public void setNetwork(Network network) {
+      if (this.network != null) this.network.removePrototypeListener(prototypeListener);
+      super.setNetwork(network);
+      if (network != null) network.addPrototypeListener(prototypeListener);
+   }
+
    /**
     * Loads up the network data.
     */
@@ -1,7 +1,5 @@
 package model.geneticAlgorithm;
 
-import java.util.ArrayList;
-import java.util.List;
 import java.util.Random;
 
 /**
@@ -9,65 +7,25 @@ import java.util.Random;
  */
 public abstract class GeneticAdapter<T> {
    /**
-    * Generates a population of individuals of a given size.
-    * @param size population size
-    * @return population
-    */
-   public List<T> generatePopulation(int size) {
-      List<T> population = new ArrayList<T>();
-      while (size-- > 0)
-         population.add(generateIndividual());
-      return population;
-   }
-
-   /**
-    * Mutates a population.
-    * @param mutationRate rate of mutation
-    * @param population population to mutate
-    */
-   public void mutatePopulation(double mutationRate, List<T> population) {
-      Random rand = new Random();
-      for (T indiv : population)
-         if (Double.compare(rand.nextDouble(), mutationRate) < 0) mutate(indiv);
-   }
-
-   /**
-    * Gets the best member of a population.
-    * @param population population
-    * @return best member
+    * Randomly generates an individual.
+    * @return randomly generated individual.
     */
-   public T getBest(List<T> population) {
-      T best = population.get(0);
-      double bestFitness = calcFitness(best);
-      for (T indiv : population) {
-         double indivFitness = calcFitness(indiv);
-         if (Double.compare(indivFitness, bestFitness) > 0) {
-            best = indiv;
-            bestFitness = indivFitness;
-         }
-      }
-      return best;
-   }
+   public abstract T generateIndividual();
 
    /**
-    * Gets a random member of a population.
-    * @param population population
-    * @return random member
+    * Randomly generates an individual from a given random source.
+    * Adapters that can draw all of their randomness from it override this
+    * so that seeded runs are reproducible.
+    * @param random random source
+    * @return randomly generated individual
     */
-   public T getRandom(List<T> population) {
-      Random rand = new Random();
-      return population.get(rand.nextInt(population.size()));
+   public T generateIndividual(Random random) {
+      return generateIndividual();
    }
 
-   /**
-    * Randomly generates an individual.
-    * @return randomly generated individual.
-    */
-   public abstract T generateIndividual();
-
    /**
     * Calculates the fitness of an individual.
-    * Lower fitness is better.
+    * Higher fitness is better.  May be called from several threads at once.
     *
     * @param individual individual to evaluate
     * @return fitness
@@ -82,9 +40,30 @@ public abstract class GeneticAdapter<T> {
     */
    public abstract T crossover(T left, T right);
 
+   /**
+    * Crosses over two individuals using a given random source.
+    * May be called from several threads at once, with the parents shared.
+    * @param left left parent
+    * @param right right parent
+    * @param random random source
+    * @return child individual
+    */
+   public T crossover(T left, T right, Random random) {
+      return crossover(left, right);
+   }
+
    /**
     * Mutates an individual.
     * @param individual individual to mutate.
     */
    public abstract void mutate(T individual);
+
+   /**
+    * Mutates an individual using a given random source.
+    * @param individual individual to mutate
+    * @param random random source
+    */
+   public void mutate(T individual, Random random) {
+      mutate(individual);
+   }
 }
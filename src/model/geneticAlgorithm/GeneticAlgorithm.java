@@ -1,7 +1,13 @@
 package model.geneticAlgorithm;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * Created by gpdavis on 6/7/15.
@@ -22,6 +28,30 @@ public class GeneticAlgorithm<T> {
    private int generationCap = 0;
    /** Acceptable fitness for algorithm termination. */
    private double acceptableFitness = 1.0;
+   /** Pool for fitness evaluation and child building, or null to run serially. */
+   private ForkJoinPool pool;
+   /** Random source for selection, mutation and seeding new individuals. */
+   private Random random = new Random();
+
+   /**
+    * Fitness of each member of the current population, keyed by identity.
+    * Individuals are never changed once scored, so survivors such as the
+    * elite keep their fitness from generation to generation.
+    */
+   private Map<T, Double> fitnessCache = new IdentityHashMap<T, Double>();
+   /** Number of fitness evaluations run. */
+   private long evaluationCount;
+   /** Number of fitness evaluations answered from the cache. */
+   private long savedEvaluationCount;
+
+   /** Current population. */
+   private List<T> population;
+   /** Fitness of each member of the current population. */
+   private double[] fitness;
+   /** Index of the best member of the current population. */
+   private int bestIndex;
+   /** Number of generations bred so far. */
+   private int generationCounter;
 
    public GeneticAlgorithm(GeneticAdapter<T> adapter) {
       this.adapter = adapter;
@@ -51,8 +81,48 @@ public class GeneticAlgorithm<T> {
       this.acceptableFitness = fitness;
    }
 
+   /**
+    * Sets the pool that fitness evaluation and child building are spread
+    * over.  Without a pool the algorithm runs on the calling thread.
+    * The adapter must then support concurrent fitness and crossover calls.
+    * @param pool fork-join pool, or null to run serially
+    */
+   public void setForkJoinPool(ForkJoinPool pool) {
+      this.pool = pool;
+   }
+
+   /**
+    * Seeds the algorithm so that runs can be reproduced, with or without
+    * a pool.  Reproducing a run also requires an adapter that draws its
+    * randomness from the random sources it is handed.
+    * @param seed random seed
+    */
+   public void setSeed(long seed) {
+      this.random = new Random(seed);
+   }
+
+   /**
+    * Gets the number of fitness evaluations run so far.
+    * @return number of evaluations
+    */
+   public long getEvaluationCount() {
+      return evaluationCount;
+   }
+
+   /**
+    * Gets the number of fitness evaluations that were avoided because the
+    * individual had already been scored.
+    * @return number of saved evaluations
+    */
+   public long getSavedEvaluationCount() {
+      return savedEvaluationCount;
+   }
+
    /**
     * Runs the genetic algorithm.
+    * Selection and mutation choices are made on the calling thread, and
+    * each new individual gets its own seed, so the result does not depend
+    * on the order that pool threads finish in.
     * @return winner
     */
    public T run() {
@@ -60,65 +130,309 @@ public class GeneticAlgorithm<T> {
 
       if (debug) System.out.println("RUNNING");
 
-      List<T> population = adapter.generatePopulation(populationSize);
+      initialize();
 
       if (debug) System.out.println("Generated population...");
 
-      T best = adapter.getBest(population);
-      double bestFitness = adapter.calcFitness(best);
-      boolean terminate = Double.compare(bestFitness, acceptableFitness) == 0;
-      int generationCounter = 0;
+      while (!isDone()) {
+         step();
+         if (debug) System.out.println("GenAlg best fitness: " + getBestFitness());
+      }
 
-      while (!terminate) {
-         List<T> newPopulation = new ArrayList<T>();
+      T best = getBest();
+      System.out.println("Best fitness: " + getBestFitness());
+      if (debug) System.out.printf("Fitness evaluations: %d, saved: %d\n",
+            evaluationCount, savedEvaluationCount);
 
-         // Generate a new population using tournament and crossover.
-         for (int index = (elitism) ? 1 : 0; index < populationSize; ++index) {
-            T left = runTournament(population);
-            T right = runTournament(population);
-            while (left.equals(right)) right = runTournament(population);
-            newPopulation.add(adapter.crossover(left, right));
-         }
+      // Let the population be collected.
+      population = null;
+      fitness = null;
+      fitnessCache = new IdentityHashMap<T, Double>();
+      return best;
+   }
 
-         // Mutate population.
-         adapter.mutatePopulation(mutationRate, newPopulation);
+   /**
+    * Generates and scores the initial population.
+    */
+   void initialize() {
+      population = generatePopulation();
+      fitness = calcFitness(population);
+      bestIndex = getBestIndex(fitness);
+      generationCounter = 0;
+   }
+
+   /**
+    * Checks whether the best individual is good enough or the generation
+    * cap has been reached.
+    * @return whether the algorithm is done
+    */
+   boolean isDone() {
+      return Double.compare(getBestFitness(), acceptableFitness) >= 0 ||
+            (generationCap > 0 && generationCounter >= generationCap);
+   }
+
+   /**
+    * Replaces the population with the next generation.
+    */
+   void step() {
+      int childCount = (elitism) ? populationSize - 1 : populationSize;
+      int[] lefts = new int[childCount];
+      int[] rights = new int[childCount];
+      boolean[] mutations = new boolean[childCount];
+      long[] seeds = new long[childCount];
+
+      // Select parents using tournaments, and decide on mutations.
+      for (int index = 0; index < childCount; ++index) {
+         lefts[index] = runTournament(fitness);
+         rights[index] = runTournament(fitness);
+         while (population.get(lefts[index]).equals(population.get(rights[index])))
+            rights[index] = runTournament(fitness);
+         mutations[index] = Double.compare(random.nextDouble(), mutationRate) < 0;
+         seeds[index] = random.nextLong();
+      }
 
-         // Keep best if elitism is true.
-         if (elitism) {
-            newPopulation.add(best);
+      // Cross over and mutate.
+      List<T> newPopulation = buildChildren(population, lefts, rights, mutations, seeds);
+
+      // Keep best if elitism is true.
+      if (elitism) {
+         newPopulation.add(getBest());
+      }
+
+      // Move population over and find the best.
+      population = newPopulation;
+      fitness = calcFitness(population);
+      bestIndex = getBestIndex(fitness);
+      ++generationCounter;
+   }
+
+   /**
+    * Gets the best member of the current population.
+    * @return best member
+    */
+   T getBest() {
+      return population.get(bestIndex);
+   }
+
+   /**
+    * Gets the fitness of the best member of the current population.
+    * @return best fitness
+    */
+   double getBestFitness() {
+      return fitness[bestIndex];
+   }
+
+   /**
+    * Gets the fittest members of the current population, best first.
+    * @param count number of members
+    * @return fittest members
+    */
+   List<T> getFittest(int count) {
+      List<T> fittest = new ArrayList<T>();
+      for (int index : rankIndices(count, true)) fittest.add(population.get(index));
+      return fittest;
+   }
+
+   /**
+    * Replaces the least fit members of the current population with
+    * individuals from elsewhere, which must not be changed afterwards.
+    * The best member is never replaced.
+    * @param individuals incoming individuals
+    * @param individualFitness fitness of each incoming individual
+    */
+   void replaceLeastFit(List<T> individuals, double[] individualFitness) {
+      int[] worst = rankIndices(Math.min(individuals.size(), population.size() - 1), false);
+      for (int i = 0; i < worst.length; ++i) {
+         fitnessCache.remove(population.get(worst[i]));
+         population.set(worst[i], individuals.get(i));
+         fitness[worst[i]] = individualFitness[i];
+         fitnessCache.put(individuals.get(i), individualFitness[i]);
+      }
+      bestIndex = getBestIndex(fitness);
+   }
+
+   /**
+    * Gets the fitness of the fittest members of the current population.
+    * @param count number of members
+    * @return fitness of the fittest members, best first
+    */
+   double[] getFittestFitness(int count) {
+      int[] indices = rankIndices(count, true);
+      double[] result = new double[indices.length];
+      for (int i = 0; i < indices.length; ++i) result[i] = fitness[indices[i]];
+      return result;
+   }
+
+   /**
+    * Ranks the current population by fitness.
+    * Ties go to the earliest member.  When ranking the least fit, the
+    * best member is left out.
+    * @param count number of indices to return
+    * @param best whether to rank the fittest rather than the least fit
+    * @return member indices
+    */
+   private int[] rankIndices(int count, boolean best) {
+      count = Math.min(count, population.size());
+      boolean[] taken = new boolean[population.size()];
+      if (!best) taken[bestIndex] = true;
+
+      int[] indices = new int[count];
+      for (int i = 0; i < count; ++i) {
+         int chosen = -1;
+         for (int index = 0; index < fitness.length; ++index) {
+            if (taken[index]) continue;
+            if (chosen < 0 ||
+                  (best && Double.compare(fitness[index], fitness[chosen]) > 0) ||
+                  (!best && Double.compare(fitness[index], fitness[chosen]) < 0))
+               chosen = index;
          }
+         taken[chosen] = true;
+         indices[i] = chosen;
+      }
+      return indices;
+   }
+
+   /**
+    * Generates the initial population.
+    * @return population
+    */
+   private List<T> generatePopulation() {
+      List<Callable<T>> tasks = new ArrayList<Callable<T>>();
+      for (int index = 0; index < populationSize; ++index) {
+         final long seed = random.nextLong();
+         tasks.add(new Callable<T>() {
+            @Override
+            public T call() {
+               return adapter.generateIndividual(new Random(seed));
+            }
+         });
+      }
+      return runAll(tasks);
+   }
 
-         // Get the best from the new population.
-         best = adapter.getBest(newPopulation);
-         bestFitness = adapter.calcFitness(best);
+   /**
+    * Builds the children of a generation.
+    * @param population parent population
+    * @param lefts left parent of each child
+    * @param rights right parent of each child
+    * @param mutations whether each child is mutated
+    * @param seeds random seed of each child
+    * @return children
+    */
+   private List<T> buildChildren(final List<T> population, int[] lefts, int[] rights,
+                                 boolean[] mutations, long[] seeds) {
+      List<Callable<T>> tasks = new ArrayList<Callable<T>>();
+      for (int index = 0; index < lefts.length; ++index) {
+         final T left = population.get(lefts[index]);
+         final T right = population.get(rights[index]);
+         final boolean mutate = mutations[index];
+         final long seed = seeds[index];
 
-         // Move population over.
-         population = newPopulation;
+         tasks.add(new Callable<T>() {
+            @Override
+            public T call() {
+               Random childRandom = new Random(seed);
+               T child = adapter.crossover(left, right, childRandom);
+               if (mutate) adapter.mutate(child, childRandom);
+               return child;
+            }
+         });
+      }
+      return runAll(tasks);
+   }
 
-         // Terminate if best is good enough or if we have exceeded
-         // the population cap.
-         ++generationCounter;
-         terminate = generationCounter == generationCap ||
-               Double.compare(bestFitness, acceptableFitness) >= 0;
+   /**
+    * Calculates the fitness of each member of a population, scoring only
+    * individuals that have not been scored before.
+    * @param population population
+    * @return fitness of each member
+    */
+   private double[] calcFitness(List<T> population) {
+      Map<T, Double> cache = new IdentityHashMap<T, Double>();
+      List<T> unscored = new ArrayList<T>();
+      for (T individual : population) {
+         Double known = fitnessCache.get(individual);
+         if (known != null) {
+            cache.put(individual, known);
+            ++savedEvaluationCount;
+         } else if (cache.containsKey(individual)) {
+            ++savedEvaluationCount;
+         } else {
+            // Placeholder so that repeats are only scored once.
+            cache.put(individual, null);
+            unscored.add(individual);
+         }
+      }
 
-         if (debug) System.out.println("GenAlg best fitness: " + bestFitness);
+      List<Callable<Double>> tasks = new ArrayList<Callable<Double>>();
+      for (final T individual : unscored) {
+         tasks.add(new Callable<Double>() {
+            @Override
+            public Double call() {
+               return adapter.calcFitness(individual);
+            }
+         });
+      }
+      List<Double> results = runAll(tasks);
+      evaluationCount += results.size();
+      for (int index = 0; index < results.size(); ++index) {
+         cache.put(unscored.get(index), results.get(index));
       }
 
-      System.out.println("Best fitness: " + bestFitness);
+      // Only keep the current population, so that the rest can be collected.
+      fitnessCache = cache;
 
+      double[] fitness = new double[population.size()];
+      for (int index = 0; index < fitness.length; ++index) {
+         fitness[index] = cache.get(population.get(index));
+      }
+      return fitness;
+   }
+
+   /**
+    * Runs tasks on the pool, or one after another if there is none.
+    * @param tasks tasks to run
+    * @return results, in task order
+    */
+   private <R> List<R> runAll(List<Callable<R>> tasks) {
+      List<R> results = new ArrayList<R>(tasks.size());
+      try {
+         if (pool == null) {
+            for (Callable<R> task : tasks) results.add(task.call());
+         } else {
+            for (Future<R> future : pool.invokeAll(tasks)) results.add(future.get());
+         }
+      } catch (Exception e) {
+         throw new RuntimeException("Genetic algorithm task failed!", e);
+      }
+      return results;
+   }
+
+   /**
+    * Gets the index of the fittest member of a population.
+    * Ties go to the earliest member.
+    * @param fitness fitness of each member
+    * @return index of the best member
+    */
+   private static int getBestIndex(double[] fitness) {
+      int best = 0;
+      for (int index = 1; index < fitness.length; ++index) {
+         if (Double.compare(fitness[index], fitness[best]) > 0) best = index;
+      }
       return best;
    }
 
    /**
     * Runs a tournament on a population.
-    * @param population source population
-    * @return tournament winner
+    * @param fitness fitness of each member of the source population
+    * @return index of the tournament winner
     */
-   private T runTournament(List<T> population)  {
-      List<T> tournamentPopulation = new ArrayList<T>();
-      for (int i = 0; i < tournamentSize; ++i) {
-         tournamentPopulation.add(adapter.getRandom(population));
+   private int runTournament(double[] fitness)  {
+      int winner = random.nextInt(fitness.length);
+      for (int i = 1; i < tournamentSize; ++i) {
+         int entrant = random.nextInt(fitness.length);
+         if (Double.compare(fitness[entrant], fitness[winner]) > 0) winner = entrant;
       }
-      return adapter.getBest(tournamentPopulation);
+      return winner;
    }
 }
@@ -0,0 +1,211 @@
+package model.geneticAlgorithm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Island model genetic algorithm.
+ * Runs several genetic algorithms side by side, each on its own thread
+ * with its own population and random source.  Every few generations the
+ * islands stop, and the fittest individuals of each island replace the
+ * least fit of the next island around a ring.  Islands evolve apart
+ * between migrations, which keeps more diversity than one large population.
+ *
+ * The adapter is shared by every island, so it must support concurrent
+ * calls, and individuals must not be changed once they are built since
+ * migrants end up in more than one island.
+ */
+public class IslandGeneticAlgorithm<T> {
+   /** Individual adapter. */
+   private GeneticAdapter<T> adapter;
+   /** Number of islands. */
+   private int islandCount;
+   /** Population size of each island. */
+   private int populationSize = 25;
+   /** Tournament size. */
+   private int tournamentSize = 5;
+   /** Individual mutation rate. */
+   private double mutationRate = 0.015;
+   /** Elitism flag. */
+   private boolean elitism = true;
+   /** Cap for generations.
+    * 0 runs the algorithm until an ideal solution is found. */
+   private int generationCap = 0;
+   /** Acceptable fitness for algorithm termination. */
+   private double acceptableFitness = 1.0;
+   /** Generations between migrations. */
+   private int migrationInterval = 10;
+   /** Number of individuals each island sends at each migration. */
+   private int migrationCount = 2;
+   /** Random source for seeding the islands. */
+   private Random random = new Random();
+
+   public IslandGeneticAlgorithm(GeneticAdapter<T> adapter, int islandCount) {
+      if (islandCount < 1)
+         throw new RuntimeException("Island genetic algorithm needs at least one island!");
+      this.adapter = adapter;
+      this.islandCount = islandCount;
+   }
+
+   public void setPopulationSize(int size) {
+      this.populationSize = size;
+   }
+
+   public void setTournamentSize(int size) {
+      this.tournamentSize = size;
+   }
+
+   public void setMutationRate(double rate) {
+      this.mutationRate = rate;
+   }
+
+   public void setElitism(boolean elitism) {
+      this.elitism = elitism;
+   }
+
+   public void setGenerationCap(int cap) {
+      this.generationCap = cap;
+   }
+
+   public void setAcceptableFitness(double fitness) {
+      this.acceptableFitness = fitness;
+   }
+
+   public void setMigrationInterval(int generations) {
+      this.migrationInterval = generations;
+   }
+
+   public void setMigrationCount(int count) {
+      this.migrationCount = count;
+   }
+
+   /**
+    * Seeds the islands so that runs can be reproduced.
+    * @param seed random seed
+    */
+   public void setSeed(long seed) {
+      this.random = new Random(seed);
+   }
+
+   /**
+    * Runs the islands until one finds an acceptable individual or the
+    * generation cap is reached.
+    * @return winner
+    */
+   public T run() {
+      final List<GeneticAlgorithm<T>> islands = new ArrayList<GeneticAlgorithm<T>>();
+      for (int i = 0; i < islandCount; ++i) {
+         GeneticAlgorithm<T> island = new GeneticAlgorithm<T>(adapter);
+         island.setPopulationSize(populationSize);
+         island.setTournamentSize(tournamentSize);
+         island.setMutationRate(mutationRate);
+         island.setElitism(elitism);
+         island.setAcceptableFitness(acceptableFitness);
+         island.setSeed(random.nextLong());
+         islands.add(island);
+      }
+
+      ExecutorService threads = Executors.newFixedThreadPool(islandCount);
+      try {
+         // Generate each island's population on its own thread.
+         List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+         for (final GeneticAlgorithm<T> island : islands) {
+            tasks.add(new Callable<Void>() {
+               @Override
+               public Void call() {
+                  island.initialize();
+                  return null;
+               }
+            });
+         }
+         runAll(threads, tasks);
+
+         int generation = 0;
+         while (!isDone(islands, generation)) {
+            final int generations = (generationCap > 0) ?
+                  Math.min(migrationInterval, generationCap - generation) : migrationInterval;
+
+            // Evolve each island apart until the next migration.
+            tasks.clear();
+            for (final GeneticAlgorithm<T> island : islands) {
+               tasks.add(new Callable<Void>() {
+                  @Override
+                  public Void call() {
+                     for (int i = 0; i < generations && !island.isDone(); ++i) island.step();
+                     return null;
+                  }
+               });
+            }
+            runAll(threads, tasks);
+            generation += generations;
+
+            migrate(islands);
+         }
+
+         GeneticAlgorithm<T> best = islands.get(0);
+         for (GeneticAlgorithm<T> island : islands) {
+            if (Double.compare(island.getBestFitness(), best.getBestFitness()) > 0)
+               best = island;
+         }
+         System.out.println("Best fitness: " + best.getBestFitness());
+         return best.getBest();
+      } finally {
+         threads.shutdown();
+      }
+   }
+
+   /**
+    * Checks whether an island has an acceptable individual or the
+    * generation cap has been reached.
+    * @param islands islands
+    * @param generation generations run so far
+    * @return whether the algorithm is done
+    */
+   private boolean isDone(List<GeneticAlgorithm<T>> islands, int generation) {
+      if (generationCap > 0 && generation >= generationCap) return true;
+      for (GeneticAlgorithm<T> island : islands) {
+         if (Double.compare(island.getBestFitness(), acceptableFitness) >= 0) return true;
+      }
+      return false;
+   }
+
+   /**
+    * Sends the fittest individuals of each island to the next island,
+    * replacing its least fit.
+    * @param islands islands
+    */
+   private void migrate(List<GeneticAlgorithm<T>> islands) {
+      if (islands.size() < 2 || migrationCount < 1) return;
+
+      // Pick every island's emigrants before any island changes.
+      List<List<T>> emigrants = new ArrayList<List<T>>();
+      List<double[]> emigrantFitness = new ArrayList<double[]>();
+      for (GeneticAlgorithm<T> island : islands) {
+         emigrants.add(island.getFittest(migrationCount));
+         emigrantFitness.add(island.getFittestFitness(migrationCount));
+      }
+
+      for (int i = 0; i < islands.size(); ++i) {
+         int destination = (i + 1) % islands.size();
+         islands.get(destination).replaceLeastFit(emigrants.get(i), emigrantFitness.get(i));
+      }
+   }
+
+   /**
+    * Runs one task per island and waits for all of them.
+    * @param threads island threads
+    * @param tasks tasks to run
+    */
+   private static void runAll(ExecutorService threads, List<Callable<Void>> tasks) {
+      try {
+         for (Future<Void> future : threads.invokeAll(tasks)) future.get();
+      } catch (Exception e) {
+         throw new RuntimeException("Island task failed!", e);
+      }
+   }
+}
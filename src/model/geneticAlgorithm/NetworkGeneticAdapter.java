@@ -1,11 +1,13 @@
 package model.geneticAlgorithm;
 
 import model.network.Network;
+import model.network.NeuronGraph;
 import model.network.parameters.Parameters;
 import model.network.memory.Memory;
 import model.network.schema.Schema;
 
 import java.util.List;
+import java.util.Random;
 
 /**
  * Created by gpdavis on 6/7/15.
@@ -41,6 +43,22 @@ public class NetworkGeneticAdapter extends GeneticAdapter<Network> {
       return null;
    }
 
+   /**
+    * Generates an individual with the neuron graph random source seeded
+    * from the given one.
+    * @param random random source
+    * @return randomly generated individual
+    */
+   @Override
+   public Network generateIndividual(Random random) {
+      NeuronGraph.setRandomSeed(random.nextLong());
+      try {
+         return generateIndividual();
+      } finally {
+         NeuronGraph.clearRandomSeed();
+      }
+   }
+
    @Override
    public double calcFitness(Network individual) {
       int correct = 0;
@@ -76,8 +94,36 @@ public class NetworkGeneticAdapter extends GeneticAdapter<Network> {
       return child;
    }
 
+   /**
+    * Crosses over and trains a child with the neuron graph random source
+    * seeded from the given one.
+    * @param left left parent
+    * @param right right parent
+    * @param random random source
+    * @return child individual
+    */
+   @Override
+   public Network crossover(Network left, Network right, Random random) {
+      NeuronGraph.setRandomSeed(random.nextLong());
+      try {
+         return crossover(left, right);
+      } finally {
+         NeuronGraph.clearRandomSeed();
+      }
+   }
+
    @Override
    public void mutate(Network individual) {
       individual.mutate();
    }
+
+   @Override
+   public void mutate(Network individual, Random random) {
+      NeuronGraph.setRandomSeed(random.nextLong());
+      try {
+         individual.mutate();
+      } finally {
+         NeuronGraph.clearRandomSeed();
+      }
+   }
 }
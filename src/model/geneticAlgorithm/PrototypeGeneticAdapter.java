@@ -22,11 +22,16 @@ public class PrototypeGeneticAdapter extends GeneticAdapter<double[]> {
 
    @Override
    public double[] generateIndividual() {
+      return generateIndividual(rand);
+   }
+
+   @Override
+   public double[] generateIndividual(Random random) {
       try {
          double[] inputVector = new double[network.schema.inputSize];
 
          for (int i = 0; i < inputVector.length; ++i) {
-            inputVector[i] = rand.nextDouble();
+            inputVector[i] = random.nextDouble();
          }
          return inputVector;
       } catch (Exception e) {
@@ -68,14 +73,19 @@ public class PrototypeGeneticAdapter extends GeneticAdapter<double[]> {
 
    @Override
    public void mutate(double[] individual) {
+      mutate(individual, rand);
+   }
+
+   @Override
+   public void mutate(double[] individual, Random random) {
       final double kMutationSigma = 0.3;
 
       for (int i = 0; i < individual.length; ++i) {
-         double sigma = (2 * kMutationSigma * rand.nextDouble()) - kMutationSigma;
+         double sigma = (2 * kMutationSigma * random.nextDouble()) - kMutationSigma;
          double newVal = individual[i] + sigma;
          while (Double.compare(newVal, 1.0) > 0 ||
                Double.compare(newVal, 0.0) < 0) {
-            sigma = (2 * kMutationSigma * rand.nextDouble()) - kMutationSigma;
+            sigma = (2 * kMutationSigma * random.nextDouble()) - kMutationSigma;
             newVal = individual[i] + sigma;
          }
          individual[i] = newVal;
@@ -0,0 +1,49 @@
+package model.network;
+
+import model.network.schema.Schema;
+
+/**
+ * Results of querying a network with a batch of inputs.
+ */
+public class BatchQueryResult {
+   /** Index of the winning classification for each input. */
+   public final int[] classIndices;
+
+   /** Raw output vector for each input. */
+   public final double[][] scores;
+
+   /** Schema of the queried network. */
+   private final Schema schema;
+
+   /**
+    * Constructor.
+    * @param schema schema of the queried network
+    * @param scores raw output vectors
+    */
+   public BatchQueryResult(Schema schema, double[][] scores) throws Exception {
+      this.schema = schema;
+      this.scores = scores;
+      this.classIndices = new int[scores.length];
+
+      for (int row = 0; row < scores.length; ++row) {
+         classIndices[row] = schema.translateOutputIndex(scores[row]);
+      }
+   }
+
+   /**
+    * Gets the number of inputs in the batch.
+    * @return batch size
+    */
+   public int size() {
+      return scores.length;
+   }
+
+   /**
+    * Gets the winning classification for an input.
+    * @param row input index
+    * @return output classification
+    */
+   public Object getClassification(int row) {
+      return schema.classifications[classIndices[row]];
+   }
+}
@@ -0,0 +1,82 @@
+package model.network;
+
+import model.network.memory.Memory;
+
+import java.util.List;
+
+/**
+ * Nonlinear conjugate gradient trainer.
+ * Each search direction combines the new steepest descent direction with
+ * the previous direction (Polak-Ribiere, restarting whenever the
+ * combination would stop descending).  Needs less memory than L-BFGS.
+ */
+public class ConjugateGradientTrainer extends FullBatchTrainer {
+   /** Weight given to the previous direction. */
+   private double beta;
+   /** Whether there is a previous direction to build on. */
+   private boolean hasDirection;
+   /** Length of the last accepted step along its direction. */
+   private double lastStep;
+
+   public ConjugateGradientTrainer(Network network, List<Memory> trainingMemory,
+                                   List<Memory> testMemory) throws Exception {
+      super(network, trainingMemory, testMemory);
+   }
+
+   /**
+    * Calculates the conjugate direction.
+    * @param lossGradient loss gradient at the current weights
+    * @param direction search direction, holding the previous direction
+    */
+   @Override
+   protected void calcDirection(double[] lossGradient, double[] direction) {
+      if (!hasDirection) {
+         for (int i = 0; i < direction.length; ++i) direction[i] = -lossGradient[i];
+      } else {
+         for (int i = 0; i < direction.length; ++i) {
+            direction[i] = beta * direction[i] - lossGradient[i];
+         }
+      }
+      hasDirection = true;
+   }
+
+   /**
+    * Calculates the Polak-Ribiere weight of the previous direction.
+    * @param weightChange change in weights
+    * @param gradientChange change in loss gradient
+    * @param lossGradient loss gradient at the new weights
+    */
+   @Override
+   protected void onStep(double[] weightChange, double[] gradientChange, double[] lossGradient) {
+      // Recover the old gradient's squared norm from the new gradient and its change.
+      double newNorm = dot(lossGradient, lossGradient);
+      double oldNorm = newNorm - 2 * dot(lossGradient, gradientChange) +
+            dot(gradientChange, gradientChange);
+
+      beta = (oldNorm > 0.0) ? Math.max(0.0, dot(lossGradient, gradientChange) / oldNorm) : 0.0;
+      lastStep = Math.sqrt(dot(weightChange, weightChange));
+   }
+
+   @Override
+   protected void resetHistory() {
+      beta = 0.0;
+      hasDirection = false;
+      lastStep = 0.0;
+   }
+
+   /**
+    * Tries a step that would change the loss by as much as the last one
+    * if the slope stayed the same, doubled to let the search grow.
+    * @param lossGradient loss gradient at the current weights
+    * @param direction search direction
+    * @return initial step length
+    */
+   @Override
+   protected double getInitialStep(double[] lossGradient, double[] direction) {
+      double directionNorm = Math.sqrt(dot(direction, direction));
+      if (lastStep > 0.0 && directionNorm > 0.0) {
+         return 2.0 * lastStep / directionNorm;
+      }
+      return Math.min(1.0, 1.0 / directionNorm);
+   }
+}
@@ -0,0 +1,213 @@
+package model.network;
+
+import model.network.activation.ActivationFunction;
+import model.network.activation.Identity;
+import model.network.parameters.Parameters;
+import model.network.schema.Schema;
+
+/**
+ * Layer layout and layer walks shared by the dense engines.
+ * The walks come in double precision, as used by the dense neuron graph,
+ * its int8 quantization and the prototype synthesizer, and in single
+ * precision, as used by the float neuron graph.
+ *
+ * Each non-input layer has a row-major weight matrix, one row per neuron,
+ * and a bias vector.  A flat parameter vector holds each layer's weights
+ * followed by its biases, from the first hidden layer to the output layer.
+ */
+final class DenseLayers {
+   private DenseLayers() { }
+
+   /**
+    * Gets the layer sizes of a graph, from input layer to output layer.
+    * @param schema input/output schema
+    * @param parameters network parameters
+    * @return layer sizes
+    */
+   static int[] getLayerSizes(Schema schema, Parameters parameters) {
+      Integer[] hiddenLayerDepths = (Integer[])
+            parameters.getParameter(Parameters.kHiddenLayerDepths).getValue();
+
+      // Input layer, hidden layers, output layer.
+      int[] layerSizes = new int[hiddenLayerDepths.length + 2];
+      layerSizes[0] = schema.inputSize;
+      for (int layerIndex = 0; layerIndex < hiddenLayerDepths.length; ++layerIndex) {
+         layerSizes[layerIndex + 1] = hiddenLayerDepths[layerIndex];
+      }
+      layerSizes[layerSizes.length - 1] = schema.outputSize;
+      return layerSizes;
+   }
+
+   /**
+    * Splits a graph's flat parameter vector into weight and bias layers.
+    * @param graph neuron graph to copy
+    * @param layerSizes layer sizes the graph was built with
+    * @param weights weight matrix of each non-input layer, filled in
+    * @param biases bias vector of each non-input layer, filled in
+    */
+   static void splitWeights(NeuronGraph graph, int[] layerSizes,
+                            double[][] weights, double[][] biases) {
+      double[] parameterVector = new double[graph.getParameterCount()];
+      graph.getWeights(parameterVector);
+
+      int index = 0;
+      for (int layerIndex = 0; layerIndex < weights.length; ++layerIndex) {
+         int outSize = layerSizes[layerIndex + 1];
+         weights[layerIndex] = new double[outSize * layerSizes[layerIndex]];
+         biases[layerIndex] = new double[outSize];
+
+         System.arraycopy(parameterVector, index, weights[layerIndex], 0,
+               weights[layerIndex].length);
+         index += weights[layerIndex].length;
+         System.arraycopy(parameterVector, index, biases[layerIndex], 0, outSize);
+         index += outSize;
+      }
+
+      if (index != parameterVector.length)
+         throw new RuntimeException("Neuron graph does not match parameters!");
+   }
+
+   /**
+    * Runs the forward pass from the input layer activations, leaving each
+    * layer's output in its activation buffer.
+    * A softmax output layer passes its net inputs through its activation
+    * function unchanged and is then normalized as a whole.
+    * @param weights weight matrix of each non-input layer
+    * @param biases bias vector of each non-input layer
+    * @param function activation function shared by every neuron
+    * @param softmaxOutput whether the output layer is a softmax
+    * @param activations output buffer of each layer, input layer filled in
+    * @return output layer activation buffer
+    */
+   static double[] forward(double[][] weights, double[][] biases,
+                           ActivationFunction function, boolean softmaxOutput,
+                           double[][] activations) {
+      for (int layerIndex = 0; layerIndex < weights.length; ++layerIndex) {
+         double[] in = activations[layerIndex];
+         double[] out = activations[layerIndex + 1];
+         double[] layerWeights = weights[layerIndex];
+         double[] layerBiases = biases[layerIndex];
+         ActivationFunction layerFunction =
+               (softmaxOutput && layerIndex == weights.length - 1) ?
+                     Identity.instance : function;
+         int inSize = in.length;
+
+         for (int row = 0, offset = 0; row < out.length; ++row, offset += inSize) {
+            // Calculate net for activation function.
+            double x = Kernels.dot(in, 0, layerWeights, offset, inSize) + layerBiases[row];
+
+            out[row] = layerFunction.calculate(x);
+         }
+      }
+
+      double[] output = activations[activations.length - 1];
+      if (softmaxOutput) Kernels.softmax(output, 0, output.length);
+      return output;
+   }
+
+   /**
+    * Runs the forward pass on single precision layers.
+    * @see #forward(double[][], double[][], ActivationFunction, boolean, double[][])
+    * @param weights weight matrix of each non-input layer
+    * @param biases bias vector of each non-input layer
+    * @param function activation function shared by every neuron
+    * @param softmaxOutput whether the output layer is a softmax
+    * @param activations output buffer of each layer, input layer filled in
+    * @return output layer activation buffer
+    */
+   static float[] forward(float[][] weights, float[][] biases,
+                          ActivationFunction function, boolean softmaxOutput,
+                          float[][] activations) {
+      for (int layerIndex = 0; layerIndex < weights.length; ++layerIndex) {
+         float[] in = activations[layerIndex];
+         float[] out = activations[layerIndex + 1];
+         float[] layerWeights = weights[layerIndex];
+         float[] layerBiases = biases[layerIndex];
+         ActivationFunction layerFunction =
+               (softmaxOutput && layerIndex == weights.length - 1) ?
+                     Identity.instance : function;
+         int inSize = in.length;
+
+         for (int row = 0, offset = 0; row < out.length; ++row, offset += inSize) {
+            // Calculate net for activation function.
+            float x = Kernels.dot(in, 0, layerWeights, offset, inSize) + layerBiases[row];
+
+            out[row] = (float) layerFunction.calculate(x);
+         }
+      }
+
+      float[] output = activations[activations.length - 1];
+      if (softmaxOutput) Kernels.softmax(output, 0, output.length);
+      return output;
+   }
+
+   /**
+    * Backpropagates output layer errors through the weights, leaving the
+    * error of every lower layer in its error buffer.
+    * Hidden layer errors are scaled by the activation function's
+    * derivative; input layer errors are the raw gradient of the inputs.
+    * @param weights weight matrix of each non-input layer
+    * @param function activation function shared by every neuron
+    * @param activations output buffer of each layer from the forward pass
+    * @param errors error buffer of each layer, output layer filled in
+    * @param toInputs whether to continue down to the input layer,
+    *                 which has no weights to train
+    */
+   static void backward(double[][] weights, ActivationFunction function,
+                        double[][] activations, double[][] errors, boolean toInputs) {
+      int lastLayer = toInputs ? 0 : 1;
+      for (int layerIndex = weights.length - 1; layerIndex >= lastLayer; --layerIndex) {
+         double[] in = activations[layerIndex];
+         double[] sigmas = errors[layerIndex + 1];
+         double[] prevSigmas = errors[layerIndex];
+         double[] layerWeights = weights[layerIndex];
+         int inSize = in.length;
+
+         for (int col = 0; col < inSize; ++col) prevSigmas[col] = 0.0;
+
+         for (int row = 0, offset = 0; row < sigmas.length; ++row, offset += inSize) {
+            Kernels.addScaled(sigmas[row], layerWeights, offset, prevSigmas, 0, inSize);
+         }
+
+         if (layerIndex > 0) {
+            for (int col = 0; col < inSize; ++col) {
+               prevSigmas[col] *= function.calculateDerivative(in[col]);
+            }
+         }
+      }
+   }
+
+   /**
+    * Backpropagates output layer errors through single precision layers.
+    * @see #backward(double[][], ActivationFunction, double[][], double[][], boolean)
+    * @param weights weight matrix of each non-input layer
+    * @param function activation function shared by every neuron
+    * @param activations output buffer of each layer from the forward pass
+    * @param errors error buffer of each layer, output layer filled in
+    * @param toInputs whether to continue down to the input layer,
+    *                 which has no weights to train
+    */
+   static void backward(float[][] weights, ActivationFunction function,
+                        float[][] activations, float[][] errors, boolean toInputs) {
+      int lastLayer = toInputs ? 0 : 1;
+      for (int layerIndex = weights.length - 1; layerIndex >= lastLayer; --layerIndex) {
+         float[] in = activations[layerIndex];
+         float[] sigmas = errors[layerIndex + 1];
+         float[] prevSigmas = errors[layerIndex];
+         float[] layerWeights = weights[layerIndex];
+         int inSize = in.length;
+
+         for (int col = 0; col < inSize; ++col) prevSigmas[col] = 0.0f;
+
+         for (int row = 0, offset = 0; row < sigmas.length; ++row, offset += inSize) {
+            Kernels.addScaled(sigmas[row], layerWeights, offset, prevSigmas, 0, inSize);
+         }
+
+         if (layerIndex > 0) {
+            for (int col = 0; col < inSize; ++col) {
+               prevSigmas[col] *= (float) function.calculateDerivative(in[col]);
+            }
+         }
+      }
+   }
+}
@@ -0,0 +1,357 @@
+package model.network;
+
+import model.network.activation.ActivationFunction;
+import model.network.memory.Memory;
+import model.network.parameters.Parameters;
+import model.network.schema.Schema;
+
+/**
+ * Graph of neural network neurons stored as dense layers.
+ * Each layer keeps its weights in one contiguous row-major matrix
+ * (one row per neuron, one column per input) plus a bias vector, and
+ * the forward and backward passes are loops over those arrays.
+ */
+public class DenseNeuronGraph extends LayeredNeuronGraph<double[]> {
+   /**
+    * Constructor.
+    * @param schema input/output schema
+    * @param parameters network parameters
+    */
+   public DenseNeuronGraph(Schema schema, Parameters parameters) {
+      super(schema, parameters);
+   }
+
+   /**
+    * Copy constructor.
+    * @param source graph to copy
+    * @param shareWeights whether to share the weight arrays until either
+    *                     graph changes them, rather than copying them now
+    */
+   private DenseNeuronGraph(DenseNeuronGraph source, boolean shareWeights) {
+      super(source, shareWeights);
+   }
+
+   @Override
+   protected double[][] createLayers(int count) {
+      return new double[count][];
+   }
+
+   @Override
+   protected double[] createLayer(int length) {
+      return new double[length];
+   }
+
+   @Override
+   protected double[] copyLayer(double[] layer) {
+      return layer.clone();
+   }
+
+   @Override
+   protected double getValue(double[] layer, int index) {
+      return layer[index];
+   }
+
+   @Override
+   protected void setValue(double[] layer, int index, double value) {
+      layer[index] = value;
+   }
+
+   @Override
+   protected LayeredNeuronGraph<double[]> copy(boolean shareWeights) {
+      return new DenseNeuronGraph(this, shareWeights);
+   }
+
+   @Override
+   protected LayeredNeuronGraph<double[]> createChild(Parameters params) {
+      return new DenseNeuronGraph(schema, params);
+   }
+
+   /**
+    * Fires the neural network into an output buffer without allocating.
+    * @param input input signals
+    * @param output output signals
+    */
+   @Override
+   public void fire(double[] input, double[] output) {
+      double[] result = forward(input, getWorkspace());
+      System.arraycopy(result, 0, output, 0, result.length);
+   }
+
+   /**
+    * Runs the forward pass, leaving each layer's output in the
+    * workspace activation buffers.
+    * @param input input signals
+    * @param work scratch buffers
+    * @return output layer activation buffer
+    */
+   private double[] forward(double[] input, Workspace<double[]> work) {
+      // Validate input size.
+      if (input.length != layerSizes[0])
+         throw new RuntimeException("Network fired with improper input!");
+
+      double[][] activations = work.activations;
+      System.arraycopy(input, 0, activations[0], 0, input.length);
+      return DenseLayers.forward(weights, biases, activationFunction, softmaxOutput, activations);
+   }
+
+   /**
+    * Fires the neural network on a batch of inputs.
+    * Each layer is computed as one matrix-matrix product over the whole
+    * batch, so every weight row is loaded once per block of inputs.
+    * @param inputs input signals, one row per input
+    * @return output signals, one row per input
+    */
+   @Override
+   public double[][] fireBatch(double[][] inputs) {
+      int batchSize = inputs.length;
+
+      // Pack inputs into one row-major matrix.
+      int inSize = layerSizes[0];
+      double[] in = new double[batchSize * inSize];
+      for (int row = 0; row < batchSize; ++row) {
+         // Validate input size.
+         if (inputs[row].length != inSize)
+            throw new RuntimeException("Network fired with improper input!");
+         System.arraycopy(inputs[row], 0, in, row * inSize, inSize);
+      }
+
+      for (int layerIndex = 0; layerIndex < weights.length; ++layerIndex) {
+         double[] out = new double[batchSize * layerSizes[layerIndex + 1]];
+         multiplyLayer(layerIndex, in, out, batchSize);
+         in = out;
+      }
+
+      // Unpack outputs.
+      int outSize = layerSizes[layerSizes.length - 1];
+      double[][] outputs = new double[batchSize][outSize];
+      for (int row = 0; row < batchSize; ++row) {
+         System.arraycopy(in, row * outSize, outputs[row], 0, outSize);
+         if (softmaxOutput) Kernels.softmax(outputs[row], 0, outSize);
+      }
+      return outputs;
+   }
+
+   /**
+    * Computes a layer's activations for a batch of inputs.
+    * Inputs are processed four at a time so that each weight loaded is
+    * used for four dot products.
+    * @param layerIndex weight layer index
+    * @param in input matrix, one row per input
+    * @param out output matrix, one row per input
+    * @param batchSize number of inputs
+    */
+   private void multiplyLayer(int layerIndex, double[] in, double[] out, int batchSize) {
+      double[] layerWeights = weights[layerIndex];
+      double[] layerBiases = biases[layerIndex];
+      ActivationFunction function = getLayerFunction(layerIndex);
+      int inSize = layerSizes[layerIndex];
+      int outSize = layerSizes[layerIndex + 1];
+
+      int row = 0;
+      for (; row + 4 <= batchSize; row += 4) {
+         int in0 = row * inSize;
+         int in1 = in0 + inSize;
+         int in2 = in1 + inSize;
+         int in3 = in2 + inSize;
+         int out0 = row * outSize;
+
+         for (int neuron = 0, offset = 0; neuron < outSize; ++neuron, offset += inSize) {
+            double x0 = 0.0, x1 = 0.0, x2 = 0.0, x3 = 0.0;
+            for (int col = 0; col < inSize; ++col) {
+               double weight = layerWeights[offset + col];
+               x0 += in[in0 + col] * weight;
+               x1 += in[in1 + col] * weight;
+               x2 += in[in2 + col] * weight;
+               x3 += in[in3 + col] * weight;
+            }
+            double bias = layerBiases[neuron];
+            out[out0 + neuron] = function.calculate(x0 + bias);
+            out[out0 + outSize + neuron] = function.calculate(x1 + bias);
+            out[out0 + 2 * outSize + neuron] = function.calculate(x2 + bias);
+            out[out0 + 3 * outSize + neuron] = function.calculate(x3 + bias);
+         }
+      }
+
+      // Remaining inputs.
+      for (; row < batchSize; ++row) {
+         int inStart = row * inSize;
+         int outStart = row * outSize;
+
+         for (int neuron = 0, offset = 0; neuron < outSize; ++neuron, offset += inSize) {
+            double x = 0.0;
+            for (int col = 0; col < inSize; ++col) {
+               x += in[inStart + col] * layerWeights[offset + col];
+            }
+            out[outStart + neuron] = function.calculate(x + layerBiases[neuron]);
+         }
+      }
+   }
+
+   /**
+    * Teaches the network a memory using backpropagation.
+    * @param memory memory to learn from
+    */
+   @Override
+   public void backpropagate(Memory memory) throws Exception {
+      Workspace<double[]> work = beginUpdate();
+      try {
+         double[][] weightLayers = weights;
+         double[][] biasLayers = biases;
+         double[][] activations = work.activations;
+         double[][] errorSigmas = work.errorSigmas;
+         calcErrorSigmas(memory, work);
+
+         // Update weights.
+         for (int layerIndex = 0; layerIndex < weightLayers.length; ++layerIndex) {
+            double[] in = activations[layerIndex];
+            double[] sigmas = errorSigmas[layerIndex + 1];
+            double[] layerWeights = weightLayers[layerIndex];
+            double[] layerBiases = biasLayers[layerIndex];
+            int inSize = in.length;
+
+            for (int row = 0, offset = 0; row < sigmas.length; ++row, offset += inSize) {
+               double delta = learningConstant * sigmas[row];
+               Kernels.addScaled(delta, in, 0, layerWeights, offset, inSize);
+               layerBiases[row] += delta;
+            }
+         }
+      } finally {
+         endUpdate(work);
+      }
+   }
+
+   /**
+    * Fires the network on a memory and backpropagates the output error,
+    * leaving the error sigma of every non-input neuron in the workspace
+    * error buffers.  Weights are not modified.
+    * @param memory memory to learn from
+    * @param work scratch buffers
+    */
+   private void calcErrorSigmas(Memory memory, Workspace<double[]> work) throws Exception {
+      double[][] activations = work.activations;
+      double[][] errorSigmas = work.errorSigmas;
+
+      // Fire network and gather output.
+      double[] output = forward(memory.inputVector, work);
+
+      // Output layer error sigmas.
+      double[] outSigmas = errorSigmas[errorSigmas.length - 1];
+      calcBPError(output, schema.getOutputIndex(memory.output), outSigmas);
+      // With softmax and cross-entropy loss the error is already the
+      // gradient of the net input, so there is no derivative to apply.
+      if (!softmaxOutput) {
+         for (int i = 0; i < output.length; ++i) {
+            outSigmas[i] *= activationFunction.calculateDerivative(output[i]);
+         }
+      }
+
+      // Walk backwards through the hidden layers.
+      // The input layer has no weights, so it needs no error.
+      DenseLayers.backward(weights, activationFunction, activations, errorSigmas, false);
+   }
+
+   /**
+    * Adds the gradient of a memory to a gradient vector.
+    * @param memory memory to learn from
+    * @param gradient gradient vector
+    * @param output output signals, or null if not needed
+    */
+   @Override
+   public void accumulateGradient(Memory memory, double[] gradient,
+                                  double[] output) throws Exception {
+      Workspace<double[]> work = getWorkspace();
+      double[][] activations = work.activations;
+      double[][] errorSigmas = work.errorSigmas;
+      calcErrorSigmas(memory, work);
+
+      if (output != null) {
+         double[] result = activations[activations.length - 1];
+         System.arraycopy(result, 0, output, 0, result.length);
+      }
+
+      int index = 0;
+      for (int layerIndex = 0; layerIndex < weights.length; ++layerIndex) {
+         double[] in = activations[layerIndex];
+         double[] sigmas = errorSigmas[layerIndex + 1];
+         int inSize = in.length;
+
+         for (int row = 0; row < sigmas.length; ++row, index += inSize) {
+            Kernels.addScaled(sigmas[row], in, 0, gradient, index, inSize);
+         }
+         for (int row = 0; row < sigmas.length; ++row) {
+            gradient[index++] += sigmas[row];
+         }
+      }
+   }
+
+   /**
+    * Adds a scaled gradient vector to the weights and biases.
+    * @param gradient gradient vector
+    * @param scale gradient scale
+    */
+   @Override
+   public void applyGradient(double[] gradient, double scale) {
+      Workspace<double[]> work = beginUpdate();
+      try {
+         double[][] weightLayers = weights;
+         double[][] biasLayers = biases;
+         int index = 0;
+         for (int layerIndex = 0; layerIndex < weightLayers.length; ++layerIndex) {
+            double[] layerWeights = weightLayers[layerIndex];
+            double[] layerBiases = biasLayers[layerIndex];
+
+            for (int i = 0; i < layerWeights.length; ++i) {
+               layerWeights[i] += scale * gradient[index++];
+            }
+            for (int i = 0; i < layerBiases.length; ++i) {
+               layerBiases[i] += scale * gradient[index++];
+            }
+         }
+      } finally {
+         endUpdate(work);
+      }
+   }
+
+   /**
+    * Copies the weights and biases into a vector.
+    * @param destination parameter vector
+    */
+   @Override
+   public void getWeights(double[] destination) {
+      int index = 0;
+      for (int layerIndex = 0; layerIndex < weights.length; ++layerIndex) {
+         double[] layerWeights = weights[layerIndex];
+         double[] layerBiases = biases[layerIndex];
+
+         System.arraycopy(layerWeights, 0, destination, index, layerWeights.length);
+         index += layerWeights.length;
+         System.arraycopy(layerBiases, 0, destination, index, layerBiases.length);
+         index += layerBiases.length;
+      }
+   }
+
+   /**
+    * Sets the weights and biases from a vector.
+    * @param source parameter vector
+    */
+   @Override
+   public void setWeights(double[] source) {
+      Workspace<double[]> work = beginUpdate();
+      try {
+         double[][] weightLayers = weights;
+         double[][] biasLayers = biases;
+         int index = 0;
+         for (int layerIndex = 0; layerIndex < weightLayers.length; ++layerIndex) {
+            double[] layerWeights = weightLayers[layerIndex];
+            double[] layerBiases = biasLayers[layerIndex];
+
+            System.arraycopy(source, index, layerWeights, 0, layerWeights.length);
+            index += layerWeights.length;
+            System.arraycopy(source, index, layerBiases, 0, layerBiases.length);
+            index += layerBiases.length;
+         }
+      } finally {
+         endUpdate(work);
+      }
+   }
+}
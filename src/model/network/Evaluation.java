@@ -0,0 +1,128 @@
+package model.network;
+
+import model.network.schema.Schema;
+
+/**
+ * Results of evaluating a network on a set of memories: total error,
+ * number classified correctly, and a confusion matrix.
+ */
+public class Evaluation {
+   /** Schema of the evaluated network. */
+   private final Schema schema;
+
+   /**
+    * Confusion matrix, indexed by expected classification and then by
+    * the classification the network chose.
+    */
+   private final int[][] confusion;
+
+   /** Sum of the errors of each memory. */
+   private double totalError;
+
+   /** Number of memories classified correctly. */
+   private int correct;
+
+   /** Number of memories evaluated. */
+   private int size;
+
+   /**
+    * Constructor.
+    * @param schema schema of the evaluated network
+    */
+   public Evaluation(Schema schema) {
+      this.schema = schema;
+      this.confusion = new int[schema.outputSize][schema.outputSize];
+   }
+
+   /**
+    * Records the result of one memory.
+    * @param expectedIndex expected classification index
+    * @param actualIndex classification index the network chose
+    * @param error error of the network's output
+    */
+   void add(int expectedIndex, int actualIndex, double error) {
+      ++confusion[expectedIndex][actualIndex];
+      if (expectedIndex == actualIndex) ++correct;
+      totalError += error;
+      ++size;
+   }
+
+   /**
+    * Adds the results of another evaluation into this one.
+    * @param other evaluation of other memories
+    */
+   void merge(Evaluation other) {
+      for (int row = 0; row < confusion.length; ++row) {
+         for (int col = 0; col < confusion.length; ++col) {
+            confusion[row][col] += other.confusion[row][col];
+         }
+      }
+      correct += other.correct;
+      totalError += other.totalError;
+      size += other.size;
+   }
+
+   /**
+    * Gets the sum of the errors of each memory.
+    * @return total error
+    */
+   public double getTotalError() {
+      return totalError;
+   }
+
+   /**
+    * Gets the percentage of memories classified correctly.
+    * @return percentage correct
+    */
+   public double getPercentCorrect() {
+      return (size == 0) ? 0.0 : 100.0 * correct / size;
+   }
+
+   /**
+    * Gets the number of memories evaluated.
+    * @return number of memories
+    */
+   public int size() {
+      return size;
+   }
+
+   /**
+    * Gets the number of memories of one classification that the network
+    * put in another.
+    * @param expected expected classification
+    * @param actual classification the network chose
+    * @return number of memories
+    * @throws Exception if a classification is not in the schema
+    */
+   public int getCount(Object expected, Object actual) throws Exception {
+      return confusion[schema.getOutputIndex(expected)][schema.getOutputIndex(actual)];
+   }
+
+   /**
+    * Returns a copy of the confusion matrix, indexed by expected
+    * classification index and then by chosen classification index.
+    * @return confusion matrix
+    */
+   public int[][] getConfusionMatrix() {
+      int[][] copy = new int[confusion.length][];
+      for (int row = 0; row < confusion.length; ++row) {
+         copy[row] = confusion[row].clone();
+      }
+      return copy;
+   }
+
+   @Override
+   public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append(String.format("Total error: %f\nPercent correct: %f\n",
+            totalError, getPercentCorrect()));
+      for (int row = 0; row < confusion.length; ++row) {
+         sb.append(schema.classifications[row]).append(":");
+         for (int col = 0; col < confusion.length; ++col) {
+            sb.append(" ").append(confusion[row][col]);
+         }
+         sb.append("\n");
+      }
+      return sb.toString();
+   }
+}
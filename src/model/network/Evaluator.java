@@ -0,0 +1,142 @@
+package model.network;
+
+import model.network.memory.Memory;
+import model.network.schema.Schema;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates a neuron graph on a set of memories.
+ * Each memory is fired once, and its output gives the error, whether it
+ * was classified correctly and its confusion matrix entry together.
+ * Large sets are split into shards evaluated in parallel, which relies on
+ * firing being safe from several threads at once.  An evaluator itself
+ * should only be used by one thread.
+ */
+public class Evaluator {
+   /** Smallest number of memories worth splitting across threads. */
+   private static final int kMinParallelSize = 1024;
+
+   /** Smallest probability used in cross-entropy, to keep it finite. */
+   private static final double kMinProbability = 1e-15;
+
+   /** Schema of the evaluated networks. */
+   private final Schema schema;
+
+   /** Whether the networks have a softmax output layer. */
+   private final boolean softmaxOutput;
+
+   /** Buffer outputs are fired into by the calling thread. */
+   private double[] outputBuffer;
+
+   /**
+    * Constructor.
+    * @param schema schema of the evaluated networks
+    * @param softmaxOutput whether the networks have a softmax output layer
+    */
+   public Evaluator(Schema schema, boolean softmaxOutput) {
+      this.schema = schema;
+      this.softmaxOutput = softmaxOutput;
+   }
+
+   /**
+    * Evaluates a neuron graph on the calling thread.
+    * @param graph neuron graph
+    * @param memories memories to evaluate
+    * @return evaluation
+    * @throws Exception if a memory does not fit the schema
+    */
+   public Evaluation evaluate(NeuronGraph graph, List<Memory> memories) throws Exception {
+      if (outputBuffer == null) outputBuffer = new double[schema.outputSize];
+      Evaluation evaluation = new Evaluation(schema);
+      evaluate(graph, memories, 0, memories.size(), outputBuffer, evaluation);
+      return evaluation;
+   }
+
+   /**
+    * Evaluates a neuron graph, splitting large sets across worker threads.
+    * @param graph neuron graph
+    * @param memories memories to evaluate
+    * @param workers worker pool, or null to use the calling thread
+    * @param shardCount number of shards to split into
+    * @return evaluation
+    * @throws Exception if a memory does not fit the schema
+    */
+   public Evaluation evaluate(final NeuronGraph graph, final List<Memory> memories,
+                              ExecutorService workers, int shardCount) throws Exception {
+      if (workers == null || shardCount < 2 || memories.size() < kMinParallelSize)
+         return evaluate(graph, memories);
+
+      List<Future<Evaluation>> futures = new ArrayList<Future<Evaluation>>();
+      int shardSize = (memories.size() + shardCount - 1) / shardCount;
+
+      for (int shard = 0; shard < shardCount; ++shard) {
+         final int start = shard * shardSize;
+         final int end = Math.min(start + shardSize, memories.size());
+         if (start >= end) break;
+
+         futures.add(workers.submit(new Callable<Evaluation>() {
+            @Override
+            public Evaluation call() throws Exception {
+               Evaluation evaluation = new Evaluation(schema);
+               evaluate(graph, memories, start, end,
+                     new double[schema.outputSize], evaluation);
+               return evaluation;
+            }
+         }));
+      }
+
+      // Reduce shard evaluations.
+      Evaluation evaluation = new Evaluation(schema);
+      for (Future<Evaluation> future : futures) evaluation.merge(future.get());
+      return evaluation;
+   }
+
+   /**
+    * Evaluates a range of memories into an evaluation.
+    * @param graph neuron graph
+    * @param memories memories to evaluate
+    * @param start first memory index
+    * @param end memory index after the last memory
+    * @param output buffer to fire into
+    * @param evaluation evaluation to add results to
+    */
+   private void evaluate(NeuronGraph graph, List<Memory> memories, int start, int end,
+                         double[] output, Evaluation evaluation) throws Exception {
+      for (int i = start; i < end; ++i) {
+         Memory memory = memories.get(i);
+         graph.fire(memory.inputVector, output);
+
+         int expectedIndex = schema.getOutputIndex(memory.output);
+         evaluation.add(expectedIndex, schema.translateOutputIndex(output),
+               calcError(output, expectedIndex));
+      }
+   }
+
+   /**
+    * Calculates the error of a network output.
+    * Uses sum of quadratic deviations, or cross-entropy for softmax output.
+    * @param actual network output
+    * @param expectedIndex expected classification index
+    * @return total error
+    */
+   public double calcError(double[] actual, int expectedIndex) {
+      if (softmaxOutput) {
+         // Cross-entropy of a one-hot expected output is the negative log
+         // probability of the expected class.
+         return -Math.log(Math.max(actual[expectedIndex], kMinProbability));
+      }
+
+      // Calculate test error for each output neuron.
+      double totalError = 0.0;
+      for (int i = 0; i < actual.length; ++i) {
+         double expected = (i == expectedIndex) ? 1.0 : 0.0;
+         totalError += 0.5 * (expected - actual[i]) * (expected - actual[i]);
+      }
+      return totalError;
+   }
+}
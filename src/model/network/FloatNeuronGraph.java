@@ -0,0 +1,274 @@
+package model.network;
+
+import model.network.memory.Memory;
+import model.network.parameters.Parameters;
+import model.network.schema.Schema;
+
+/**
+ * Graph of neural network neurons stored as single precision dense layers.
+ * Same layout as the dense graph, but weights, biases and activations are
+ * floats, which halves their memory and bandwidth.  Inputs are converted
+ * to floats on entry and outputs back to doubles on exit.
+ */
+public class FloatNeuronGraph extends LayeredNeuronGraph<float[]> {
+   /**
+    * Constructor.
+    * @param schema input/output schema
+    * @param parameters network parameters
+    */
+   public FloatNeuronGraph(Schema schema, Parameters parameters) {
+      super(schema, parameters);
+   }
+
+   /**
+    * Copy constructor.
+    * @param source graph to copy
+    * @param shareWeights whether to share the weight arrays until either
+    *                     graph changes them, rather than copying them now
+    */
+   private FloatNeuronGraph(FloatNeuronGraph source, boolean shareWeights) {
+      super(source, shareWeights);
+   }
+
+   @Override
+   protected float[][] createLayers(int count) {
+      return new float[count][];
+   }
+
+   @Override
+   protected float[] createLayer(int length) {
+      return new float[length];
+   }
+
+   @Override
+   protected float[] copyLayer(float[] layer) {
+      return layer.clone();
+   }
+
+   @Override
+   protected double getValue(float[] layer, int index) {
+      return layer[index];
+   }
+
+   @Override
+   protected void setValue(float[] layer, int index, double value) {
+      layer[index] = (float) value;
+   }
+
+   @Override
+   protected LayeredNeuronGraph<float[]> copy(boolean shareWeights) {
+      return new FloatNeuronGraph(this, shareWeights);
+   }
+
+   @Override
+   protected LayeredNeuronGraph<float[]> createChild(Parameters params) {
+      return new FloatNeuronGraph(schema, params);
+   }
+
+   /**
+    * Fires the neural network into an output buffer without allocating.
+    * @param input input signals
+    * @param output output signals
+    */
+   @Override
+   public void fire(double[] input, double[] output) {
+      float[] result = forward(input, getWorkspace());
+      for (int i = 0; i < result.length; ++i) output[i] = result[i];
+   }
+
+   /**
+    * Runs the forward pass, leaving each layer's output in the
+    * workspace activation buffers.
+    * @param input input signals
+    * @param work scratch buffers
+    * @return output layer activation buffer
+    */
+   private float[] forward(double[] input, Workspace<float[]> work) {
+      // Validate input size.
+      if (input.length != layerSizes[0])
+         throw new RuntimeException("Network fired with improper input!");
+
+      float[][] activations = work.activations;
+      float[] inputLayer = activations[0];
+      for (int i = 0; i < input.length; ++i) inputLayer[i] = (float) input[i];
+      return DenseLayers.forward(weights, biases, activationFunction, softmaxOutput, activations);
+   }
+
+   /**
+    * Teaches the network a memory using backpropagation.
+    * @param memory memory to learn from
+    */
+   @Override
+   public void backpropagate(Memory memory) throws Exception {
+      Workspace<float[]> work = beginUpdate();
+      try {
+         float[][] weightLayers = weights;
+         float[][] biasLayers = biases;
+         float rate = (float) learningConstant;
+         float[][] activations = work.activations;
+         float[][] errorSigmas = work.errorSigmas;
+         calcErrorSigmas(memory, work);
+
+         // Update weights.
+         for (int layerIndex = 0; layerIndex < weightLayers.length; ++layerIndex) {
+            float[] in = activations[layerIndex];
+            float[] sigmas = errorSigmas[layerIndex + 1];
+            float[] layerWeights = weightLayers[layerIndex];
+            float[] layerBiases = biasLayers[layerIndex];
+            int inSize = in.length;
+
+            for (int row = 0, offset = 0; row < sigmas.length; ++row, offset += inSize) {
+               float delta = rate * sigmas[row];
+               Kernels.addScaled(delta, in, 0, layerWeights, offset, inSize);
+               layerBiases[row] += delta;
+            }
+         }
+      } finally {
+         endUpdate(work);
+      }
+   }
+
+   /**
+    * Fires the network on a memory and backpropagates the output error,
+    * leaving the error sigma of every non-input neuron in the workspace
+    * error buffers.  Weights are not modified.
+    * @param memory memory to learn from
+    * @param work scratch buffers
+    */
+   private void calcErrorSigmas(Memory memory, Workspace<float[]> work) throws Exception {
+      float[][] activations = work.activations;
+      float[][] errorSigmas = work.errorSigmas;
+
+      // Fire network and gather output.
+      float[] output = forward(memory.inputVector, work);
+      int expectedIndex = schema.getOutputIndex(memory.output);
+
+      // Output layer error sigmas.
+      // Uses expected - actual so that error represents direction of gradient descent.
+      // With softmax and cross-entropy loss the error is already the
+      // gradient of the net input, so there is no derivative to apply.
+      float[] outSigmas = errorSigmas[errorSigmas.length - 1];
+      for (int i = 0; i < output.length; ++i) {
+         double expected = (i == expectedIndex) ? 1.0 : 0.0;
+         double derivative = softmaxOutput ?
+               1.0 : activationFunction.calculateDerivative(output[i]);
+         outSigmas[i] = (float) ((expected - output[i]) * derivative);
+      }
+
+      // Walk backwards through the hidden layers.
+      // The input layer has no weights, so it needs no error.
+      DenseLayers.backward(weights, activationFunction, activations, errorSigmas, false);
+   }
+
+   /**
+    * Adds the gradient of a memory to a gradient vector.
+    * @param memory memory to learn from
+    * @param gradient gradient vector
+    * @param output output signals, or null if not needed
+    */
+   @Override
+   public void accumulateGradient(Memory memory, double[] gradient,
+                                  double[] output) throws Exception {
+      Workspace<float[]> work = getWorkspace();
+      float[][] activations = work.activations;
+      float[][] errorSigmas = work.errorSigmas;
+      calcErrorSigmas(memory, work);
+
+      if (output != null) {
+         float[] result = activations[activations.length - 1];
+         for (int i = 0; i < result.length; ++i) output[i] = result[i];
+      }
+
+      int index = 0;
+      for (int layerIndex = 0; layerIndex < weights.length; ++layerIndex) {
+         float[] in = activations[layerIndex];
+         float[] sigmas = errorSigmas[layerIndex + 1];
+         int inSize = in.length;
+
+         for (int row = 0; row < sigmas.length; ++row, index += inSize) {
+            float sigma = sigmas[row];
+            for (int col = 0; col < inSize; ++col) {
+               gradient[index + col] += sigma * in[col];
+            }
+         }
+         for (int row = 0; row < sigmas.length; ++row) {
+            gradient[index++] += sigmas[row];
+         }
+      }
+   }
+
+   /**
+    * Adds a scaled gradient vector to the weights and biases.
+    * @param gradient gradient vector
+    * @param scale gradient scale
+    */
+   @Override
+   public void applyGradient(double[] gradient, double scale) {
+      Workspace<float[]> work = beginUpdate();
+      try {
+         float[][] weightLayers = weights;
+         float[][] biasLayers = biases;
+         int index = 0;
+         for (int layerIndex = 0; layerIndex < weightLayers.length; ++layerIndex) {
+            float[] layerWeights = weightLayers[layerIndex];
+            float[] layerBiases = biasLayers[layerIndex];
+
+            for (int i = 0; i < layerWeights.length; ++i) {
+               layerWeights[i] += (float) (scale * gradient[index++]);
+            }
+            for (int i = 0; i < layerBiases.length; ++i) {
+               layerBiases[i] += (float) (scale * gradient[index++]);
+            }
+         }
+      } finally {
+         endUpdate(work);
+      }
+   }
+
+   /**
+    * Copies the weights and biases into a vector.
+    * @param destination parameter vector
+    */
+   @Override
+   public void getWeights(double[] destination) {
+      int index = 0;
+      for (int layerIndex = 0; layerIndex < weights.length; ++layerIndex) {
+         float[] layerWeights = weights[layerIndex];
+         float[] layerBiases = biases[layerIndex];
+
+         for (int i = 0; i < layerWeights.length; ++i) {
+            destination[index++] = layerWeights[i];
+         }
+         for (int i = 0; i < layerBiases.length; ++i) {
+            destination[index++] = layerBiases[i];
+         }
+      }
+   }
+
+   /**
+    * Sets the weights and biases from a vector.
+    * @param source parameter vector
+    */
+   @Override
+   public void setWeights(double[] source) {
+      Workspace<float[]> work = beginUpdate();
+      try {
+         float[][] weightLayers = weights;
+         float[][] biasLayers = biases;
+         int index = 0;
+         for (int layerIndex = 0; layerIndex < weightLayers.length; ++layerIndex) {
+            float[] layerWeights = weightLayers[layerIndex];
+            float[] layerBiases = biasLayers[layerIndex];
+
+            for (int i = 0; i < layerWeights.length; ++i) {
+               layerWeights[i] = (float) source[index++];
+            }
+            for (int i = 0; i < layerBiases.length; ++i) {
+               layerBiases[i] = (float) source[index++];
+            }
+         }
+      } finally {
+         endUpdate(work);
+      }
+   }
+}
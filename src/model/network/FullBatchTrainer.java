@@ -0,0 +1,205 @@
+package model.network;
+
+import model.network.memory.Memory;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Base class for trainers that minimize the loss over the whole training
+ * set at once.  Each epoch picks a search direction from the full-batch
+ * gradient and moves the weights along it with a backtracking line search,
+ * so small networks converge in tens of epochs rather than thousands.
+ * The batch size, thread count and optimizer parameters are ignored.
+ */
+public abstract class FullBatchTrainer extends NetworkTrainer {
+   /** Sufficient decrease constant of the line search. */
+   private static final double kSufficientDecrease = 1e-4;
+
+   /** Most step halvings tried before the line search gives up. */
+   private static final int kMaxLineSearchSteps = 30;
+
+   /** Current weights. */
+   private double[] weights;
+   /** Loss gradient at the current weights. */
+   private double[] lossGradient;
+   /** Search direction. */
+   private double[] direction;
+   /** Weights being tried by the line search. */
+   private double[] trialWeights;
+   /** Loss gradient at the trial weights. */
+   private double[] trialGradient;
+   /** Weight change of the last step. */
+   private double[] weightChange;
+   /** Gradient change of the last step. */
+   private double[] gradientChange;
+
+   /** Loss at the current weights. */
+   private double loss;
+   /** Whether the loss and gradient match the graph's weights. */
+   private boolean evaluated;
+
+   /** Output buffer for loss evaluation. */
+   private transient double[] outputBuffer;
+
+   public FullBatchTrainer(Network network, List<Memory> trainingMemory,
+                           List<Memory> testMemory) throws Exception {
+      super(network, trainingMemory, testMemory);
+   }
+
+   /**
+    * Calculates the search direction.
+    * @param lossGradient loss gradient at the current weights
+    * @param direction search direction, holding the previous direction
+    */
+   protected abstract void calcDirection(double[] lossGradient, double[] direction);
+
+   /**
+    * Records an accepted step.
+    * @param weightChange change in weights
+    * @param gradientChange change in loss gradient
+    * @param lossGradient loss gradient at the new weights
+    */
+   protected abstract void onStep(double[] weightChange, double[] gradientChange,
+                                  double[] lossGradient);
+
+   /**
+    * Discards search history, falling back to steepest descent.
+    */
+   protected abstract void resetHistory();
+
+   /**
+    * Gets the first step length the line search tries.
+    * @param lossGradient loss gradient at the current weights
+    * @param direction search direction
+    * @return initial step length
+    */
+   protected abstract double getInitialStep(double[] lossGradient, double[] direction);
+
+   /**
+    * Starts from the graph's current weights, which may have been
+    * changed since the last training run.
+    */
+   @Override
+   public void train() throws Exception {
+      evaluated = false;
+      resetHistory();
+      super.train();
+   }
+
+   /**
+    * Runs one line search along a new search direction.
+    */
+   @Override
+   protected void trainEpoch() throws Exception {
+      NeuronGraph neuronGraph = network.neuronGraph;
+      int size = neuronGraph.getParameterCount();
+
+      if (weights == null || weights.length != size) {
+         weights = new double[size];
+         lossGradient = new double[size];
+         direction = new double[size];
+         trialWeights = new double[size];
+         trialGradient = new double[size];
+         weightChange = new double[size];
+         gradientChange = new double[size];
+         evaluated = false;
+         resetHistory();
+      }
+
+      if (!evaluated) {
+         neuronGraph.getWeights(weights);
+         loss = evaluate(neuronGraph, weights, lossGradient);
+         evaluated = true;
+      }
+
+      calcDirection(lossGradient, direction);
+      double slope = dot(lossGradient, direction);
+
+      // Fall back to steepest descent if the direction does not descend.
+      if (!(slope < 0.0)) {
+         resetHistory();
+         for (int i = 0; i < size; ++i) direction[i] = -lossGradient[i];
+         slope = -dot(lossGradient, lossGradient);
+         if (!(slope < 0.0)) return;
+      }
+
+      double step = getInitialStep(lossGradient, direction);
+      for (int attempt = 0; attempt < kMaxLineSearchSteps; ++attempt, step *= 0.5) {
+         for (int i = 0; i < size; ++i) {
+            trialWeights[i] = weights[i] + step * direction[i];
+         }
+         double trialLoss = evaluate(neuronGraph, trialWeights, trialGradient);
+
+         if (trialLoss <= loss + kSufficientDecrease * step * slope) {
+            // Accept the step; the graph already holds the trial weights.
+            for (int i = 0; i < size; ++i) {
+               weightChange[i] = trialWeights[i] - weights[i];
+               gradientChange[i] = trialGradient[i] - lossGradient[i];
+            }
+
+            double[] swap = weights;
+            weights = trialWeights;
+            trialWeights = swap;
+            swap = lossGradient;
+            lossGradient = trialGradient;
+            trialGradient = swap;
+            loss = trialLoss;
+
+            onStep(weightChange, gradientChange, lossGradient);
+            return;
+         }
+      }
+
+      // No acceptable step; restore the weights and start over.
+      neuronGraph.setWeights(weights);
+      resetHistory();
+   }
+
+   /**
+    * Discards the search state along with the old weights.
+    */
+   @Override
+   protected void onReset() {
+      super.onReset();
+      evaluated = false;
+      resetHistory();
+   }
+
+   /**
+    * Sets the graph's weights and calculates the mean loss and its
+    * gradient over the training memory.
+    * @param neuronGraph neuron graph
+    * @param point weights to evaluate
+    * @param gradient loss gradient
+    * @return mean loss
+    */
+   private double evaluate(NeuronGraph neuronGraph, double[] point,
+                           double[] gradient) throws Exception {
+      neuronGraph.setWeights(point);
+      Arrays.fill(gradient, 0.0);
+      if (outputBuffer == null) outputBuffer = new double[network.schema.outputSize];
+
+      double totalLoss = 0.0;
+      for (int i = 0; i < trainingMemory.size(); ++i) {
+         Memory memory = trainingMemory.get(i);
+         neuronGraph.accumulateGradient(memory, gradient, outputBuffer);
+         totalLoss += calcError(outputBuffer, memory.output);
+      }
+
+      // Accumulated gradients point downhill; the loss gradient points up.
+      double scale = -1.0 / trainingMemory.size();
+      for (int i = 0; i < gradient.length; ++i) gradient[i] *= scale;
+      return totalLoss / trainingMemory.size();
+   }
+
+   /**
+    * Calculates the dot product of two vectors.
+    * @param a first vector
+    * @param b second vector
+    * @return dot product
+    */
+   protected static double dot(double[] a, double[] b) {
+      return Kernels.dot(a, 0, b, 0, a.length);
+   }
+}
@@ -0,0 +1,69 @@
+package model.network;
+
+import model.network.memory.Memory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous neural network trainer.
+ * Each training thread pulls memories from the training set and
+ * backpropagates them straight into the shared weights without locks
+ * (Hogwild style).  Conflicting updates are rare for small, sparse
+ * networks, so they are simply allowed to overwrite each other.
+ * Taking a copy-on-write clone or closing an off-heap graph meanwhile
+ * does not lock the updates either; both wait for the updates under way.
+ * The batch size and optimizer parameters are ignored; every memory
+ * updates the weights with plain gradient descent.
+ */
+public class HogwildTrainer extends NetworkTrainer {
+   /** Number of memories a thread pulls at a time. */
+   private static final int kChunkSize = 64;
+
+   public HogwildTrainer(Network network, List<Memory> trainingMemory,
+                         List<Memory> testMemory) throws Exception {
+      super(network, trainingMemory, testMemory);
+   }
+
+   /**
+    * Runs one asynchronous pass over the training memory.
+    * Falls back to serial training if the neuron graph cannot be
+    * backpropagated from several threads.
+    */
+   @Override
+   protected void trainEpoch() throws Exception {
+      final NeuronGraph neuronGraph = network.neuronGraph;
+
+      if (workers == null || !neuronGraph.supportsConcurrentBackpropagation()) {
+         for (int i = 0; i < trainingMemory.size(); ++i) {
+            neuronGraph.backpropagate(trainingMemory.get(i));
+         }
+         return;
+      }
+
+      final AtomicInteger next = new AtomicInteger(0);
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+      for (int thread = 0; thread < threadCount; ++thread) {
+         futures.add(workers.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+               int start;
+               while ((start = next.getAndAdd(kChunkSize)) < trainingMemory.size()) {
+                  int end = Math.min(start + kChunkSize, trainingMemory.size());
+                  for (int i = start; i < end; ++i) {
+                     neuronGraph.backpropagate(trainingMemory.get(i));
+                  }
+               }
+               return null;
+            }
+         }));
+      }
+
+      // Wait for the threads to finish the epoch.
+      for (Future<Void> future : futures) future.get();
+   }
+}
@@ -0,0 +1,168 @@
+package model.network;
+
+/**
+ * Inner loop kernels shared by the dense neuron graph engines.
+ *
+ * Dot products keep four independent partial sums so that consecutive
+ * multiply-adds do not wait on each other; a single running sum makes the
+ * loop bound by floating point add latency, and the JIT may not reorder it.
+ * The loop walks a single index so that array bounds checks can be hoisted.
+ * The update kernels have no loop-carried dependency and are written so
+ * that the JIT can unroll and vectorize them.
+ */
+public final class Kernels {
+   private Kernels() { }
+
+   /**
+    * Computes the dot product of two vector slices.
+    * @param a first vector
+    * @param aOffset start of the first slice
+    * @param b second vector
+    * @param bOffset start of the second slice
+    * @param length slice length
+    * @return dot product
+    */
+   public static double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+      double sum0 = 0.0, sum1 = 0.0, sum2 = 0.0, sum3 = 0.0;
+      int shift = bOffset - aOffset;
+      int end = aOffset + length;
+
+      int i = aOffset;
+      for (; i <= end - 4; i += 4) {
+         int j = i + shift;
+         sum0 += a[i] * b[j];
+         sum1 += a[i + 1] * b[j + 1];
+         sum2 += a[i + 2] * b[j + 2];
+         sum3 += a[i + 3] * b[j + 3];
+      }
+      for (; i < end; ++i) {
+         sum0 += a[i] * b[i + shift];
+      }
+      return (sum0 + sum1) + (sum2 + sum3);
+   }
+
+   /**
+    * Computes the dot product of two single precision vector slices.
+    * @param a first vector
+    * @param aOffset start of the first slice
+    * @param b second vector
+    * @param bOffset start of the second slice
+    * @param length slice length
+    * @return dot product
+    */
+   public static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+      float sum0 = 0.0f, sum1 = 0.0f, sum2 = 0.0f, sum3 = 0.0f;
+      int shift = bOffset - aOffset;
+      int end = aOffset + length;
+
+      int i = aOffset;
+      for (; i <= end - 4; i += 4) {
+         int j = i + shift;
+         sum0 += a[i] * b[j];
+         sum1 += a[i + 1] * b[j + 1];
+         sum2 += a[i + 2] * b[j + 2];
+         sum3 += a[i + 3] * b[j + 3];
+      }
+      for (; i < end; ++i) {
+         sum0 += a[i] * b[i + shift];
+      }
+      return (sum0 + sum1) + (sum2 + sum3);
+   }
+
+   /**
+    * Computes the integer dot product of two int8 vector slices.
+    * Integer addition is associative, so the JIT is free to split this
+    * single running sum into vector lanes itself.
+    * Products are accumulated in ints, which cannot overflow for slices
+    * shorter than 2^31 / 127^2, about 133,000 values.
+    * @param a first vector
+    * @param aOffset start of the first slice
+    * @param b second vector
+    * @param bOffset start of the second slice
+    * @param length slice length
+    * @return dot product
+    */
+   public static int dot(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+      int sum = 0;
+      int shift = bOffset - aOffset;
+      int end = aOffset + length;
+
+      for (int i = aOffset; i < end; ++i) {
+         sum += a[i] * b[i + shift];
+      }
+      return sum;
+   }
+
+   /**
+    * Adds a scaled vector slice to another vector slice.
+    * Used for weight updates, gradient accumulation and error propagation.
+    * @param scale scale of x
+    * @param x added vector
+    * @param xOffset start of the added slice
+    * @param y updated vector
+    * @param yOffset start of the updated slice
+    * @param length slice length
+    */
+   public static void addScaled(double scale, double[] x, int xOffset,
+                                double[] y, int yOffset, int length) {
+      for (int i = 0; i < length; ++i) {
+         y[yOffset + i] += scale * x[xOffset + i];
+      }
+   }
+
+   /**
+    * Adds a scaled single precision vector slice to another vector slice.
+    * @param scale scale of x
+    * @param x added vector
+    * @param xOffset start of the added slice
+    * @param y updated vector
+    * @param yOffset start of the updated slice
+    * @param length slice length
+    */
+   public static void addScaled(float scale, float[] x, int xOffset,
+                                float[] y, int yOffset, int length) {
+      for (int i = 0; i < length; ++i) {
+         y[yOffset + i] += scale * x[xOffset + i];
+      }
+   }
+
+   /**
+    * Replaces a vector slice with its softmax, normalizing it into
+    * probabilities.  The largest value is subtracted before exponentiating
+    * so that large inputs cannot overflow.
+    * @param values vector
+    * @param offset start of the slice
+    * @param length slice length
+    */
+   public static void softmax(double[] values, int offset, int length) {
+      int end = offset + length;
+      double max = Double.NEGATIVE_INFINITY;
+      for (int i = offset; i < end; ++i) max = Math.max(max, values[i]);
+
+      double sum = 0.0;
+      for (int i = offset; i < end; ++i) {
+         values[i] = Math.exp(values[i] - max);
+         sum += values[i];
+      }
+      for (int i = offset; i < end; ++i) values[i] /= sum;
+   }
+
+   /**
+    * Replaces a single precision vector slice with its softmax.
+    * @param values vector
+    * @param offset start of the slice
+    * @param length slice length
+    */
+   public static void softmax(float[] values, int offset, int length) {
+      int end = offset + length;
+      float max = Float.NEGATIVE_INFINITY;
+      for (int i = offset; i < end; ++i) max = Math.max(max, values[i]);
+
+      float sum = 0.0f;
+      for (int i = offset; i < end; ++i) {
+         values[i] = (float) Math.exp(values[i] - max);
+         sum += values[i];
+      }
+      for (int i = offset; i < end; ++i) values[i] /= sum;
+   }
+}
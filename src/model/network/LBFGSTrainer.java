@@ -0,0 +1,121 @@
+package model.network;
+
+import model.network.memory.Memory;
+
+import java.util.List;
+
+/**
+ * Limited-memory BFGS trainer.
+ * Builds an estimate of the inverse Hessian from the last few steps and
+ * their gradient changes, and searches along the resulting quasi-Newton
+ * direction over the whole training set.
+ */
+public class LBFGSTrainer extends FullBatchTrainer {
+   /** Number of past steps remembered. */
+   private static final int kHistorySize = 10;
+
+   /** Smallest curvature for a step to be remembered. */
+   private static final double kMinCurvature = 1e-10;
+
+   /** Remembered weight changes, used as a ring buffer. */
+   private double[][] weightChanges;
+   /** Remembered gradient changes, used as a ring buffer. */
+   private double[][] gradientChanges;
+   /** Reciprocal curvature of each remembered step. */
+   private double[] rho;
+   /** Two-loop recursion coefficients. */
+   private double[] alpha;
+   /** Ring buffer index of the oldest remembered step. */
+   private int historyStart;
+   /** Number of remembered steps. */
+   private int historyCount;
+
+   public LBFGSTrainer(Network network, List<Memory> trainingMemory,
+                       List<Memory> testMemory) throws Exception {
+      super(network, trainingMemory, testMemory);
+   }
+
+   /**
+    * Calculates the quasi-Newton direction with the two-loop recursion.
+    * @param lossGradient loss gradient at the current weights
+    * @param direction search direction
+    */
+   @Override
+   protected void calcDirection(double[] lossGradient, double[] direction) {
+      int size = lossGradient.length;
+      for (int i = 0; i < size; ++i) direction[i] = -lossGradient[i];
+      if (historyCount == 0) return;
+
+      // Newest to oldest.
+      for (int k = historyCount - 1; k >= 0; --k) {
+         int index = (historyStart + k) % kHistorySize;
+         alpha[index] = rho[index] * dot(weightChanges[index], direction);
+         Kernels.addScaled(-alpha[index], gradientChanges[index], 0, direction, 0, size);
+      }
+
+      // Scale by the curvature of the newest step.
+      int newest = (historyStart + historyCount - 1) % kHistorySize;
+      double[] y = gradientChanges[newest];
+      double gamma = 1.0 / (rho[newest] * dot(y, y));
+      for (int i = 0; i < size; ++i) direction[i] *= gamma;
+
+      // Oldest to newest.
+      for (int k = 0; k < historyCount; ++k) {
+         int index = (historyStart + k) % kHistorySize;
+         double beta = rho[index] * dot(gradientChanges[index], direction);
+         Kernels.addScaled(alpha[index] - beta, weightChanges[index], 0, direction, 0, size);
+      }
+   }
+
+   /**
+    * Remembers a step if it has positive curvature.
+    * @param weightChange change in weights
+    * @param gradientChange change in loss gradient
+    * @param lossGradient loss gradient at the new weights
+    */
+   @Override
+   protected void onStep(double[] weightChange, double[] gradientChange, double[] lossGradient) {
+      double curvature = dot(weightChange, gradientChange);
+      if (curvature <= kMinCurvature) return;
+
+      int size = weightChange.length;
+      if (weightChanges == null || weightChanges[0].length != size) {
+         weightChanges = new double[kHistorySize][size];
+         gradientChanges = new double[kHistorySize][size];
+      }
+
+      int index;
+      if (historyCount < kHistorySize) {
+         index = (historyStart + historyCount) % kHistorySize;
+         ++historyCount;
+      } else {
+         index = historyStart;
+         historyStart = (historyStart + 1) % kHistorySize;
+      }
+
+      System.arraycopy(weightChange, 0, weightChanges[index], 0, size);
+      System.arraycopy(gradientChange, 0, gradientChanges[index], 0, size);
+      rho[index] = 1.0 / curvature;
+   }
+
+   @Override
+   protected void resetHistory() {
+      rho = new double[kHistorySize];
+      alpha = new double[kHistorySize];
+      historyStart = 0;
+      historyCount = 0;
+   }
+
+   /**
+    * Tries the full quasi-Newton step, or a unit length steepest descent
+    * step before any curvature is known.
+    * @param lossGradient loss gradient at the current weights
+    * @param direction search direction
+    * @return initial step length
+    */
+   @Override
+   protected double getInitialStep(double[] lossGradient, double[] direction) {
+      if (historyCount > 0) return 1.0;
+      return Math.min(1.0, 1.0 / Math.sqrt(dot(direction, direction)));
+   }
+}
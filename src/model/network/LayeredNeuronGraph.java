@@ -0,0 +1,535 @@
+package model.network;
+
+import model.network.activation.ActivationFunction;
+import model.network.activation.Identity;
+import model.network.parameters.BooleanParameter;
+import model.network.parameters.ClassParameter;
+import model.network.parameters.Parameters;
+import model.network.schema.Schema;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Graph of neural network neurons stored as dense layers of one numeric
+ * type.  Holds the layer storage, copy-on-write sharing and per-thread
+ * workspaces, along with everything that does not depend on the numeric
+ * type: building, resetting, mutating, crossing over and printing.
+ * Subclasses supply the typed layer arrays and the forward, backward and
+ * update kernels that loop over them.
+ *
+ * Each non-input layer has a row-major weight matrix, one row per neuron,
+ * and a bias vector, laid out as described in DenseLayers.
+ * @param <L> layer array type, such as double[] or float[]
+ */
+public abstract class LayeredNeuronGraph<L> extends NeuronGraph {
+   /** Layer sizes, from input layer to output layer. */
+   protected int[] layerSizes;
+
+   /** Weight matrices of each non-input layer. */
+   protected L[] weights;
+
+   /** Bias vectors of each non-input layer. */
+   protected L[] biases;
+
+   /** Learning constant. */
+   protected double learningConstant;
+
+   /** Activation function shared by every neuron. */
+   protected ActivationFunction activationFunction;
+
+   /** Whether the output layer is a softmax trained with cross-entropy. */
+   protected boolean softmaxOutput;
+
+   /**
+    * Whether the weight and bias arrays may be shared with a copy-on-write
+    * clone.  Shared arrays are copied before they are first changed.
+    */
+   private transient volatile boolean sharedWeights;
+
+   /**
+    * Lock held while cloning and while copying shared arrays, so that a
+    * clone never shares arrays that are being replaced.  Also guards the
+    * workspace list.  Updates never take it unless the arrays are shared.
+    */
+   private transient Object copyLock;
+
+   /**
+    * Per-thread scratch buffers.
+    * Keeping the buffers per thread lets several threads fire the graph
+    * or compute gradients at once as long as no thread changes weights.
+    */
+   private transient ThreadLocal<Workspace<L>> workspace;
+
+   /** Workspace of every thread that has used the graph, for clones to check. */
+   private transient List<Workspace<L>> workspaces;
+
+   /**
+    * Activation and error buffers for one pass through the graph.
+    * @param <L> layer array type
+    */
+   protected static final class Workspace<L> {
+      /** Outputs of each layer. */
+      final L[] activations;
+      /** Error sigmas of each layer for backpropagation. */
+      final L[] errorSigmas;
+      /** Thread the workspace belongs to. */
+      final Thread owner = Thread.currentThread();
+      /**
+       * Number of update starts and ends by the owning thread, odd while
+       * an update is under way.  Only the owner writes it.
+       */
+      volatile int updateSequence;
+
+      Workspace(LayeredNeuronGraph<L> graph) {
+         int[] layerSizes = graph.layerSizes;
+         activations = graph.createLayers(layerSizes.length);
+         errorSigmas = graph.createLayers(layerSizes.length);
+         for (int layerIndex = 0; layerIndex < layerSizes.length; ++layerIndex) {
+            activations[layerIndex] = graph.createLayer(layerSizes[layerIndex]);
+            errorSigmas[layerIndex] = graph.createLayer(layerSizes[layerIndex]);
+         }
+      }
+   }
+
+   /**
+    * Constructor.
+    * @param schema input/output schema
+    * @param parameters network parameters
+    */
+   protected LayeredNeuronGraph(Schema schema, Parameters parameters) {
+      super(schema, parameters);
+   }
+
+   /**
+    * Copy constructor.
+    * Structure and settings are shared, since they never change after
+    * the graph is built.
+    * @param source graph to copy
+    * @param shareWeights whether to share the weight arrays until either
+    *                     graph changes them, rather than copying them now
+    */
+   protected LayeredNeuronGraph(LayeredNeuronGraph<L> source, boolean shareWeights) {
+      super(source.schema);
+      this.layerSizes = source.layerSizes;
+      this.learningConstant = source.learningConstant;
+      this.activationFunction = source.activationFunction;
+      this.softmaxOutput = source.softmaxOutput;
+
+      // Marking the source shared sends every later update of it through
+      // the copy lock, so once the updates already under way finish no
+      // thread writes to its arrays until the lock is released.  The clone
+      // pays for this wait; updates themselves never lock.
+      synchronized (source.copyLock) {
+         boolean wasShared = source.sharedWeights;
+         source.sharedWeights = true;
+         source.awaitUpdates();
+
+         if (shareWeights) {
+            this.weights = source.weights;
+            this.biases = source.biases;
+            this.sharedWeights = true;
+         } else {
+            this.weights = copyLayers(source.weights);
+            this.biases = copyLayers(source.biases);
+            source.sharedWeights = wasShared;
+         }
+      }
+      createTransientState();
+   }
+
+   /**
+    * Creates an array of layer arrays.
+    * @param count number of layers
+    * @return array of empty layer slots
+    */
+   protected abstract L[] createLayers(int count);
+
+   /**
+    * Creates a zeroed layer array.
+    * @param length number of values
+    * @return layer array
+    */
+   protected abstract L createLayer(int length);
+
+   /**
+    * Copies a layer array.
+    * @param layer layer array
+    * @return copied layer array
+    */
+   protected abstract L copyLayer(L layer);
+
+   /**
+    * Gets one value of a layer array.
+    * @param layer layer array
+    * @param index value index
+    * @return value
+    */
+   protected abstract double getValue(L layer, int index);
+
+   /**
+    * Sets one value of a layer array.
+    * @param layer layer array
+    * @param index value index
+    * @param value new value
+    */
+   protected abstract void setValue(L layer, int index, double value);
+
+   /**
+    * Copies the graph.
+    * @param shareWeights whether to share the weight arrays until either
+    *                     graph changes them
+    * @return copied graph
+    */
+   protected abstract LayeredNeuronGraph<L> copy(boolean shareWeights);
+
+   /**
+    * Creates an untrained graph of the same type, for crossover.
+    * @param params child parameters
+    * @return new graph
+    */
+   protected abstract LayeredNeuronGraph<L> createChild(Parameters params);
+
+   /**
+    * Builds the neuron graph.
+    * @param schema input/output schema
+    * @param parameters network parameters
+    */
+   @Override
+   public void build(Schema schema, Parameters parameters) {
+      this.schema = schema;
+      this.learningConstant = (Double)
+            parameters.getParameter(Parameters.kLearningConstant).getValue();
+      this.activationFunction = (ActivationFunction)
+            ((ClassParameter) parameters.getParameter(Parameters.kActivationFunction)).getSharedInstance();
+      this.softmaxOutput = ((BooleanParameter)
+            parameters.getParameter(Parameters.kSoftmaxOutput)).getValue();
+
+      layerSizes = DenseLayers.getLayerSizes(schema, parameters);
+
+      weights = createLayers(layerSizes.length - 1);
+      biases = createLayers(layerSizes.length - 1);
+      for (int layerIndex = 0; layerIndex < weights.length; ++layerIndex) {
+         weights[layerIndex] = createLayer(layerSizes[layerIndex + 1] * layerSizes[layerIndex]);
+         biases[layerIndex] = createLayer(layerSizes[layerIndex + 1]);
+      }
+
+      createTransientState();
+      reset();
+   }
+
+   /**
+    * Gets the activation function applied by a layer's neurons.
+    * A softmax output layer passes its net inputs through, to be
+    * normalized as a whole.
+    * @param layerIndex weight layer index
+    * @return activation function
+    */
+   protected ActivationFunction getLayerFunction(int layerIndex) {
+      return (softmaxOutput && layerIndex == layerSizes.length - 2) ?
+            Identity.instance : activationFunction;
+   }
+
+   /**
+    * Sets up the copy lock and the per-thread scratch buffers.
+    */
+   private void createTransientState() {
+      copyLock = new Object();
+      workspaces = new ArrayList<Workspace<L>>();
+      workspace = new ThreadLocal<Workspace<L>>() {
+         @Override
+         protected Workspace<L> initialValue() {
+            Workspace<L> work = new Workspace<L>(LayeredNeuronGraph.this);
+            synchronized (copyLock) {
+               // Threads that have ended can no longer be updating.
+               Iterator<Workspace<L>> iterator = workspaces.iterator();
+               while (iterator.hasNext()) {
+                  if (!iterator.next().owner.isAlive()) iterator.remove();
+               }
+               workspaces.add(work);
+            }
+            return work;
+         }
+      };
+   }
+
+   /**
+    * Restores the transient state after deserialization.
+    * @param in object input stream
+    */
+   private void readObject(ObjectInputStream in)
+         throws IOException, ClassNotFoundException {
+      in.defaultReadObject();
+      createTransientState();
+   }
+
+   /**
+    * Gets the calling thread's scratch buffers.
+    * @return workspace
+    */
+   protected final Workspace<L> getWorkspace() {
+      return workspace.get();
+   }
+
+   /**
+    * Sets the learning constant used by backpropagate.
+    * @param learningConstant new learning constant
+    */
+   @Override
+   public void setLearningConstant(double learningConstant) {
+      this.learningConstant = learningConstant;
+   }
+
+   /**
+    * Copies the weights and biases directly rather than by serialization.
+    * @return cloned graph
+    */
+   @Override
+   public NeuronGraph clone() {
+      return copy(false);
+   }
+
+   /**
+    * Clones the graph sharing the weight arrays until either graph
+    * trains, mutates, resets or has its weights set.
+    * @return cloned graph
+    */
+   @Override
+   public NeuronGraph copyOnWriteClone() {
+      return copy(true);
+   }
+
+   /**
+    * Starts changing the weights.  Marks the calling thread as updating,
+    * which costs one volatile write and no lock, then copies the arrays
+    * first if they are shared with a copy-on-write clone.  Until
+    * endUpdate is called, a clone being taken waits for the update, so
+    * the arrays read after this call are the ones every write of the
+    * update must go to.
+    * @return calling thread's scratch buffers
+    */
+   protected final Workspace<L> beginUpdate() {
+      Workspace<L> work = workspace.get();
+      work.updateSequence = work.updateSequence + 1;
+
+      while (sharedWeights) {
+         // Stop updating while waiting on the copy lock, since a clone
+         // holding it may be waiting for this thread's update to end.
+         work.updateSequence = work.updateSequence + 1;
+         synchronized (copyLock) {
+            if (sharedWeights) {
+               weights = copyLayers(weights);
+               biases = copyLayers(biases);
+               sharedWeights = false;
+            }
+         }
+         work.updateSequence = work.updateSequence + 1;
+      }
+      return work;
+   }
+
+   /**
+    * Finishes changing the weights.
+    * @param work scratch buffers returned by beginUpdate
+    */
+   protected final void endUpdate(Workspace<L> work) {
+      work.updateSequence = work.updateSequence + 1;
+   }
+
+   /**
+    * Waits for every update that is under way to end.
+    * Called with the copy lock held, after marking the arrays shared, so
+    * updates that start meanwhile wait for the lock instead of writing.
+    */
+   private void awaitUpdates() {
+      for (Workspace<L> work : workspaces) {
+         int sequence = work.updateSequence;
+         if ((sequence & 1) == 0) continue;
+         while (work.updateSequence == sequence) Thread.yield();
+      }
+   }
+
+   /**
+    * Copies each layer of a weight or bias set.
+    * @param layers layer arrays
+    * @return copied layer arrays
+    */
+   private L[] copyLayers(L[] layers) {
+      L[] copy = createLayers(layers.length);
+      for (int layerIndex = 0; layerIndex < layers.length; ++layerIndex) {
+         copy[layerIndex] = copyLayer(layers[layerIndex]);
+      }
+      return copy;
+   }
+
+   /**
+    * Resets the network by randomizing each neuron's weights.
+    */
+   @Override
+   public void reset() {
+      Workspace<L> work = beginUpdate();
+      try {
+         L[] weightLayers = weights;
+         L[] biasLayers = biases;
+         Random rand = getRandom();
+
+         for (int layerIndex = 0; layerIndex < weightLayers.length; ++layerIndex) {
+            L layerWeights = weightLayers[layerIndex];
+            L layerBiases = biasLayers[layerIndex];
+            int outSize = layerSizes[layerIndex + 1];
+
+            for (int i = 0; i < outSize * layerSizes[layerIndex]; ++i)
+               setValue(layerWeights, i, rand.nextDouble() * 2 - 1);
+            for (int i = 0; i < outSize; ++i)
+               setValue(layerBiases, i, rand.nextDouble() * 2 - 1);
+         }
+      } finally {
+         endUpdate(work);
+      }
+   }
+
+   /**
+    * Fires the neural network and returns output.
+    * @param input input signals
+    * @return output signals
+    */
+   @Override
+   public double[] fire(double[] input) {
+      double[] output = new double[layerSizes[layerSizes.length - 1]];
+      fire(input, output);
+      return output;
+   }
+
+   /**
+    * Backpropagation only shares the weight arrays between threads,
+    * so concurrent calls race on the weights but never corrupt the graph.
+    * Updates take no lock; copy-on-write clones taken meanwhile wait for
+    * the updates under way, so they still see whole updates only.
+    * @return true
+    */
+   @Override
+   public boolean supportsConcurrentBackpropagation() {
+      return true;
+   }
+
+   /**
+    * Gets the number of weights and biases in the graph.
+    * @return parameter count
+    */
+   @Override
+   public int getParameterCount() {
+      int count = 0;
+      for (int layerIndex = 1; layerIndex < layerSizes.length; ++layerIndex) {
+         count += layerSizes[layerIndex] * (layerSizes[layerIndex - 1] + 1);
+      }
+      return count;
+   }
+
+   /**
+    * Crosses this graph over with another graph of the same type.
+    * Each child weight and bias is taken from the left parent, the right
+    * parent, or the average of both.
+    * @param other right parent
+    * @param params child parameters
+    * @return child graph
+    */
+   @Override
+   @SuppressWarnings("unchecked")
+   protected NeuronGraph crossover(NeuronGraph other, Parameters params) {
+      LayeredNeuronGraph<L> right = (LayeredNeuronGraph<L>) other;
+      LayeredNeuronGraph<L> child = createChild(params);
+      Random rand = getRandom();
+
+      for (int layerIndex = 0; layerIndex < child.weights.length; ++layerIndex) {
+         int outSize = layerSizes[layerIndex + 1];
+         crossLayer(weights[layerIndex], right.weights[layerIndex], child.weights[layerIndex],
+               outSize * layerSizes[layerIndex], rand);
+         crossLayer(biases[layerIndex], right.biases[layerIndex], child.biases[layerIndex],
+               outSize, rand);
+      }
+
+      return child;
+   }
+
+   /**
+    * Crosses one weight or bias layer over into a child's layer.
+    * @param left left parent's layer
+    * @param right right parent's layer
+    * @param child child's layer
+    * @param length number of values
+    * @param rand random number generator
+    */
+   private void crossLayer(L left, L right, L child, int length, Random rand) {
+      for (int i = 0; i < length; ++i) {
+         setValue(child, i, crossValues(getValue(left, i), getValue(right, i), rand));
+      }
+   }
+
+   /**
+    * Mutates the neuron graph.
+    */
+   @Override
+   public void mutate() {
+      // Likelihood of mutating neuron.
+      final double kNeuronMutationRate = 0.5;
+      // Likelihood of mutating weight.
+      final double kWeightMutationRate = 0.5;
+      // Bounds of weight mutation.
+      final double kMutationBounds = 0.1;
+
+      Random rand = getRandom();
+
+      Workspace<L> work = beginUpdate();
+      try {
+         L[] weightLayers = weights;
+         L[] biasLayers = biases;
+
+         for (int layerIndex = 0; layerIndex < weightLayers.length; ++layerIndex) {
+            L layerWeights = weightLayers[layerIndex];
+            L layerBiases = biasLayers[layerIndex];
+            int inSize = layerSizes[layerIndex];
+            int outSize = layerSizes[layerIndex + 1];
+
+            for (int row = 0, offset = 0; row < outSize; ++row, offset += inSize) {
+               // Mutate neuron according to mutation rate.
+               if (Double.compare(rand.nextDouble(), kNeuronMutationRate) >= 0) continue;
+
+               for (int col = 0; col < inSize; ++col) {
+                  if (Double.compare(rand.nextDouble(), kWeightMutationRate) < 0) {
+                     // Generate a sigma between -kMutationBounds and +kMutationBounds.
+                     setValue(layerWeights, offset + col, getValue(layerWeights, offset + col) +
+                           (rand.nextDouble() * (2 * kMutationBounds) - kMutationBounds));
+                  }
+               }
+               setValue(layerBiases, row, getValue(layerBiases, row) +
+                     (rand.nextDouble() * (2 * kMutationBounds) - kMutationBounds));
+            }
+         }
+      } finally {
+         endUpdate(work);
+      }
+   }
+
+   @Override
+   public String toString() {
+      StringBuilder sb = new StringBuilder("Network\n");
+
+      for (int layerIndex = 0; layerIndex < weights.length; ++layerIndex) {
+         sb.append("  LAYER\n");
+         L layerWeights = weights[layerIndex];
+         int inSize = layerSizes[layerIndex];
+
+         for (int row = 0, offset = 0; row < layerSizes[layerIndex + 1]; ++row, offset += inSize) {
+            for (int col = 0; col < inSize; ++col) {
+               sb.append(getValue(layerWeights, offset + col) + "\n");
+            }
+            sb.append("\n");
+         }
+      }
+      return sb.toString();
+   }
+}
@@ -0,0 +1,440 @@
+package model.network;
+
+import model.network.memory.Memory;
+import model.network.parameters.BooleanParameter;
+import model.network.parameters.Parameters;
+import model.network.schema.Schema;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Graph of neural network neurons linked together as Neuron objects.
+ */
+public class LinkedNeuronGraph extends NeuronGraph {
+   /** Network neuron layers. */
+   private ArrayList<Neuron[]> layers;
+
+   /** Neuron input layer. */
+   private Neuron[] inputLayer;
+
+   /** Neuron output layer. */
+   private Neuron[] outputLayer;
+
+   /**
+    * Constructor.
+    * @param schema input/output schema
+    * @param parameters network parameters
+    */
+   public LinkedNeuronGraph(Schema schema, Parameters parameters) {
+      super(schema, parameters);
+   }
+
+   /**
+    * Builds the neuron graph.
+    * Each neuron applies its own activation function, so a softmax
+    * output layer is not supported.
+    * @param schema input/output schema
+    * @param parameters network parameters
+    */
+   @Override
+   public void build(Schema schema, Parameters parameters) {
+      if (((BooleanParameter) parameters.getParameter(Parameters.kSoftmaxOutput)).getValue())
+         throw new RuntimeException("Linked neuron graphs do not support softmax output!");
+
+      this.schema = schema;
+      layers = new ArrayList<Neuron[]>();
+
+      // Build input layer.
+      inputLayer = new Neuron[schema.inputSize];
+      for (int index = 0; index < inputLayer.length; ++index) {
+         inputLayer[index] = new Neuron(parameters);
+      }
+      layers.add(inputLayer);
+
+      Neuron[] prevLayer = inputLayer;
+
+      Integer[] hiddenLayerDepths = (Integer[])
+            parameters.getParameter(Parameters.kHiddenLayerDepths).getValue();
+
+      // Build hidden layers.
+      for (int layerIndex = 0; layerIndex < hiddenLayerDepths.length; ++layerIndex) {
+         // Build a layer.
+         Neuron[] currLayer = new Neuron[hiddenLayerDepths[layerIndex]];
+
+         // Hook layer up to previous layer.
+         for (int currIndex = 0; currIndex < currLayer.length; ++currIndex) {
+            currLayer[currIndex] = new Neuron(parameters);
+            for (int prevIndex = 0; prevIndex < prevLayer.length; ++prevIndex) {
+               // Hook up input from previous layer.
+               // Tell current neuron to expect input from previous.
+               currLayer[currIndex].addInputNeuron(prevLayer[prevIndex]);
+               // Tell previous neuron to notify current neuron.
+               prevLayer[prevIndex].addOutputNeuron(currLayer[currIndex]);
+            }
+            // Randomize neuron.
+            currLayer[currIndex].randomize();
+         }
+         layers.add(currLayer);
+
+         prevLayer = currLayer;
+      }
+
+      // Build output layer.
+      outputLayer = new Neuron[schema.outputSize];
+
+      // Hook layer up to previous layer.
+      for (int outIndex = 0; outIndex < outputLayer.length; ++outIndex) {
+         outputLayer[outIndex] = new Neuron(parameters);
+         for (int prevIndex = 0; prevIndex < prevLayer.length; ++prevIndex) {
+            // Hook up input from previous layer.
+            // Tell current neuron to expect input from previous.
+            outputLayer[outIndex].addInputNeuron(prevLayer[prevIndex]);
+            // Tell previous neuron to notify current neuron.
+            prevLayer[prevIndex].addOutputNeuron(outputLayer[outIndex]);
+         }
+         // Randomize neuron.
+         outputLayer[outIndex].randomize();
+      }
+      layers.add(outputLayer);
+   }
+
+   /**
+    * Resets the network by randomizing each neuron's weights.
+    */
+   @Override
+   public void reset() {
+      for (Neuron[] layer : layers) {
+         for (Neuron neuron : layer)
+            neuron.randomize();
+      }
+   }
+
+   /**
+    * Sets the learning constant of every neuron.
+    * @param learningConstant new learning constant
+    */
+   @Override
+   public void setLearningConstant(double learningConstant) {
+      for (Neuron[] layer : layers) {
+         for (Neuron neuron : layer)
+            neuron.setLearningConstant(learningConstant);
+      }
+   }
+
+   /**
+    * Fires the neural network and returns output.
+    * Neuron state is left untouched.
+    * @param input input signals
+    * @return output signals
+    */
+   @Override
+   public double[] fire(double[] input) {
+      double[][] outputs = forward(input);
+      return outputs[outputs.length - 1];
+   }
+
+   /**
+    * Fires the neurons and returns output.
+    * Each neuron keeps its inputs and output for backpropagation.
+    * @param input input signals
+    * @return output signals
+    */
+   private double[] fireNeurons(double[] input) {
+      // Validate input size.
+      if (input.length != inputLayer.length)
+         throw new RuntimeException("Network fired with improper input!");
+
+      double[] output = new double[outputLayer.length];
+
+      for (int inputIndex = 0; inputIndex < inputLayer.length; ++inputIndex) {
+         inputLayer[inputIndex].fire(input[inputIndex]);
+      }
+
+      for (int outputIndex = 0; outputIndex < outputLayer.length; ++outputIndex) {
+         output[outputIndex] = outputLayer[outputIndex].getOutput();
+      }
+
+      return output;
+   }
+
+   /**
+    * Teaches the network a memory using backpropagation.
+    * @param memory memory to learn from
+    */
+   @Override
+   public void backpropagate(Memory memory) throws Exception {
+      // Fire network and gather output.
+      double[] output = fireNeurons(memory.inputVector);
+      double[] errors = calcBPError(output, schema.encodeOutput(memory.output));
+
+      // Backpropagate to output layer using calcBPError.
+      for (int index = 0; index < outputLayer.length; ++index) {
+         outputLayer[index].backPropagate(errors[index]);
+      }
+   }
+
+   /**
+    * Gets the number of weights and biases in the graph.
+    * @return parameter count
+    */
+   @Override
+   public int getParameterCount() {
+      int count = 0;
+      for (int layerIndex = 1; layerIndex < layers.size(); ++layerIndex) {
+         count += layers.get(layerIndex).length * (layers.get(layerIndex - 1).length + 1);
+      }
+      return count;
+   }
+
+   /**
+    * Runs the forward pass without touching neuron state, so several
+    * threads may run it at once while no weights change.
+    * @param input input signals
+    * @return outputs of each layer
+    */
+   private double[][] forward(double[] input) {
+      // Validate input size.
+      if (input.length != inputLayer.length)
+         throw new RuntimeException("Network fired with improper input!");
+
+      double[][] outputs = new double[layers.size()][];
+      outputs[0] = input;
+
+      for (int layerIndex = 1; layerIndex < layers.size(); ++layerIndex) {
+         Neuron[] currLayer = layers.get(layerIndex);
+         Neuron[] prevLayer = layers.get(layerIndex - 1);
+         double[] in = outputs[layerIndex - 1];
+         double[] out = new double[currLayer.length];
+
+         for (int currIndex = 0; currIndex < currLayer.length; ++currIndex) {
+            Neuron neuron = currLayer[currIndex];
+            Map<Neuron, Double> weights = neuron.getWeights();
+
+            // Calculate net for activation function.
+            double x = 0.0;
+            for (int prevIndex = 0; prevIndex < prevLayer.length; ++prevIndex) {
+               x += in[prevIndex] * weights.get(prevLayer[prevIndex]);
+            }
+            x += neuron.getBias();
+
+            out[currIndex] = neuron.getActivationFunction().calculate(x);
+         }
+         outputs[layerIndex] = out;
+      }
+      return outputs;
+   }
+
+   /**
+    * Adds the gradient of a memory to a gradient vector.
+    * @param memory memory to learn from
+    * @param gradient gradient vector
+    * @param output output signals, or null if not needed
+    */
+   @Override
+   public void accumulateGradient(Memory memory, double[] gradient,
+                                  double[] output) throws Exception {
+      // Fire network and gather output.
+      double[][] outputs = forward(memory.inputVector);
+      double[] result = outputs[outputs.length - 1];
+      double[] errors = calcBPError(result, schema.encodeOutput(memory.output));
+      if (output != null) System.arraycopy(result, 0, output, 0, result.length);
+
+      // Output layer error sigmas.
+      double[] sigmas = new double[outputLayer.length];
+      for (int index = 0; index < outputLayer.length; ++index) {
+         sigmas[index] = errors[index] *
+               outputLayer[index].getActivationFunction().calculateDerivative(result[index]);
+      }
+
+      // Walk backwards, filling in the gradient from the end of the vector.
+      int end = gradient.length;
+      for (int layerIndex = layers.size() - 1; layerIndex > 0; --layerIndex) {
+         Neuron[] currLayer = layers.get(layerIndex);
+         Neuron[] prevLayer = layers.get(layerIndex - 1);
+         double[] in = outputs[layerIndex - 1];
+         double[] prevSigmas = new double[prevLayer.length];
+
+         int biasIndex = end - currLayer.length;
+         int weightIndex = biasIndex - currLayer.length * prevLayer.length;
+         end = weightIndex;
+
+         for (int currIndex = 0; currIndex < currLayer.length; ++currIndex) {
+            Map<Neuron, Double> weights = currLayer[currIndex].getWeights();
+            double sigma = sigmas[currIndex];
+
+            for (int prevIndex = 0; prevIndex < prevLayer.length; ++prevIndex) {
+               gradient[weightIndex++] += sigma * in[prevIndex];
+               prevSigmas[prevIndex] += sigma * weights.get(prevLayer[prevIndex]);
+            }
+            gradient[biasIndex + currIndex] += sigma;
+         }
+
+         for (int prevIndex = 0; prevIndex < prevLayer.length; ++prevIndex) {
+            prevSigmas[prevIndex] *=
+                  prevLayer[prevIndex].getActivationFunction().calculateDerivative(in[prevIndex]);
+         }
+         sigmas = prevSigmas;
+      }
+   }
+
+   /**
+    * Adds a scaled gradient vector to the weights and biases.
+    * @param gradient gradient vector
+    * @param scale gradient scale
+    */
+   @Override
+   public void applyGradient(double[] gradient, double scale) {
+      int index = 0;
+      for (int layerIndex = 1; layerIndex < layers.size(); ++layerIndex) {
+         Neuron[] currLayer = layers.get(layerIndex);
+         Neuron[] prevLayer = layers.get(layerIndex - 1);
+
+         for (Neuron neuron : currLayer) {
+            for (Neuron prevNeuron : prevLayer) {
+               neuron.adjustWeight(prevNeuron, scale * gradient[index++]);
+            }
+         }
+         for (Neuron neuron : currLayer) {
+            neuron.adjustBias(scale * gradient[index++]);
+         }
+      }
+   }
+
+   /**
+    * Copies the weights and biases into a vector.
+    * @param destination parameter vector
+    */
+   @Override
+   public void getWeights(double[] destination) {
+      int index = 0;
+      for (int layerIndex = 1; layerIndex < layers.size(); ++layerIndex) {
+         Neuron[] currLayer = layers.get(layerIndex);
+         Neuron[] prevLayer = layers.get(layerIndex - 1);
+
+         for (Neuron neuron : currLayer) {
+            Map<Neuron, Double> weights = neuron.getWeights();
+            for (Neuron prevNeuron : prevLayer) {
+               destination[index++] = weights.get(prevNeuron);
+            }
+         }
+         for (Neuron neuron : currLayer) {
+            destination[index++] = neuron.getBias();
+         }
+      }
+   }
+
+   /**
+    * Sets the weights and biases from a vector.
+    * @param source parameter vector
+    */
+   @Override
+   public void setWeights(double[] source) {
+      int index = 0;
+      for (int layerIndex = 1; layerIndex < layers.size(); ++layerIndex) {
+         Neuron[] currLayer = layers.get(layerIndex);
+         Neuron[] prevLayer = layers.get(layerIndex - 1);
+
+         for (Neuron neuron : currLayer) {
+            for (Neuron prevNeuron : prevLayer) {
+               neuron.setWeight(prevNeuron, source[index++]);
+            }
+         }
+         for (Neuron neuron : currLayer) {
+            neuron.setBias(source[index++]);
+         }
+      }
+   }
+
+   /**
+    * Crosses this graph over with another linked neuron graph.
+    * @param other right parent
+    * @param params child parameters
+    * @return child graph
+    */
+   @Override
+   protected NeuronGraph crossover(NeuronGraph other, Parameters params) {
+      LinkedNeuronGraph left = this;
+      LinkedNeuronGraph right = (LinkedNeuronGraph) other;
+      LinkedNeuronGraph child = new LinkedNeuronGraph(left.schema, params);
+      Random rand = getRandom();
+
+      Neuron[] leftPrevLayer = left.inputLayer;
+      Neuron[] rightPrevLayer = right.inputLayer;
+      Neuron[] childPrevLayer = child.inputLayer;
+
+
+      // Mutate all layers except input layer.
+      for (int layerIndex = 1; layerIndex < child.layers.size(); ++layerIndex) {
+         Neuron[] leftCurrLayer = left.layers.get(layerIndex);
+         Neuron[] rightCurrLayer = right.layers.get(layerIndex);
+         Neuron[] childCurrLayer = child.layers.get(layerIndex);
+
+         // For each current layer neuron...
+         for (int neuronIndex = 0; neuronIndex < childCurrLayer.length; ++neuronIndex) {
+            Neuron leftNeuron = leftCurrLayer[neuronIndex];
+            Neuron rightNeuron = rightCurrLayer[neuronIndex];
+            Neuron childNeuron = childCurrLayer[neuronIndex];
+
+            Map<Neuron, Double> leftWeights = leftNeuron.getWeights();
+            Map<Neuron, Double> rightWeights = rightNeuron.getWeights();
+            Map<Neuron, Double> childWeights = childNeuron.getWeights();
+
+            // Take either left parent weight, right parent weight, or average weight.
+            for (int prevIndex = 0; prevIndex < childPrevLayer.length; ++prevIndex) {
+               double leftWeight = leftWeights.get(leftPrevLayer[prevIndex]);
+               double rightWeight = rightWeights.get(rightPrevLayer[prevIndex]);
+               childWeights.put(childPrevLayer[prevIndex],
+                     crossValues(leftWeight, rightWeight, rand));
+            }
+         }
+
+         // Biases come after the layer's weights, as in the weight vector.
+         for (int neuronIndex = 0; neuronIndex < childCurrLayer.length; ++neuronIndex) {
+            childCurrLayer[neuronIndex].setBias(crossValues(
+                  leftCurrLayer[neuronIndex].getBias(), rightCurrLayer[neuronIndex].getBias(), rand));
+         }
+
+         leftPrevLayer = leftCurrLayer;
+         rightPrevLayer = rightCurrLayer;
+         childPrevLayer = childCurrLayer;
+      }
+
+      return child;
+   }
+
+   /**
+    * Mutates the neuron graph.
+    */
+   @Override
+   public void mutate() {
+      // Likelihood of mutating neuron.
+      final double kNeuronMutationRate = 0.5;
+
+      Random rand = getRandom();
+
+      // Mutate all layers except input layer.
+      for (int layerIndex = 1; layerIndex < layers.size(); ++layerIndex) {
+         for (Neuron neuron : layers.get(layerIndex)) {
+            // Mutate neuron according to mutation rate.
+            if (Double.compare(rand.nextDouble(), kNeuronMutationRate) < 0) {
+               neuron.mutate();
+            }
+         }
+      }
+   }
+
+   @Override
+   public String toString() {
+      StringBuilder sb = new StringBuilder("Network\n");
+
+      for (Neuron[] layer : layers) {
+         sb.append("  LAYER\n");
+         for (int i = 0; i < layer.length; ++i) {
+            sb.append(layer[i] + "\n");
+         }
+      }
+      return sb.toString();
+   }
+}
@@ -10,11 +10,33 @@ import model.network.schema.*;
 import java.io.*;
 import java.lang.reflect.Constructor;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Represents a neural network.
  */
 public class Network implements Serializable {
+   /**
+    * Listener for newly generated prototypes.
+    */
+   public interface PrototypeListener {
+      /**
+       * Called on the prototype generator thread when a new prototype set
+       * has been published.
+       * @param network network whose prototypes changed
+       */
+      void onPrototypesGenerated(Network network);
+   }
+
+   /** Prototype generator that runs gradient ascent on the inputs. */
+   public static final String kGradientPrototypes = "Gradient";
+   /** Prototype generator that runs a genetic algorithm. */
+   public static final String kGeneticPrototypes = "Genetic";
+
    /** Network neuron graph. */
    NeuronGraph neuronGraph;
 
@@ -27,8 +49,48 @@ public class Network implements Serializable {
    /** Memory of inputs and output test cases. */
    MemoryModule memoryModule;
 
-   /** Prototype map. */
-   private Map<Object, Memory> prototypes;
+   /**
+    * Background executor for prototype generation.
+    * A single daemon thread, so that networks queue rather than compete
+    * and an outstanding search never keeps the application alive.
+    */
+   private static final ExecutorService prototypeExecutor =
+         Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+               Thread thread = new Thread(runnable, "Prototype generator");
+               thread.setDaemon(true);
+               return thread;
+            }
+         });
+
+   /** Prototype map, replaced whole when a new set is generated. */
+   private volatile Map<Object, Memory> prototypes;
+
+   /** Number of times the neuron graph has been trained or rebuilt. */
+   private int graphVersion;
+
+   /** Graph version the prototypes were generated for. */
+   private int prototypeVersion;
+
+   /** Prototype generation in progress, if any. */
+   private transient Future<?> pendingPrototypes;
+
+   /**
+    * Whether prototypes have been requested or listened for.  Until then
+    * no snapshots are taken, so networks that never show prototypes, such
+    * as genetic algorithm individuals, train and mutate without copying.
+    */
+   private transient boolean prototypesWanted;
+
+   /** Neuron graph weights as of the last graph version. */
+   private transient double[] snapshotWeights;
+
+   /** Parameters as of the last graph version. */
+   private transient Parameters snapshotParameters;
+
+   /** Listeners for newly generated prototypes. */
+   private transient List<PrototypeListener> prototypeListeners;
 
    /** Network name; */
    public String name;
@@ -52,14 +114,67 @@ public class Network implements Serializable {
       this.name = name;
       this.schema = schema;
       this.parameters = params;
-      this.neuronGraph = new NeuronGraph(schema, params);
-      this.prototypes = new LinkedHashMap<Object, Memory>();
-      generatePrototypes();
+      this.neuronGraph = NeuronGraph.create(schema, params);
+      this.prototypes = Collections.emptyMap();
+      this.prototypeVersion = -1;
+      this.prototypeListeners = new CopyOnWriteArrayList<PrototypeListener>();
 
       buildMemoryModule((Class)
             params.getParameter(Parameters.kMemoryModule).getValue());
    }
 
+   /**
+    * Snapshot constructor.
+    * Builds a network without memories around a copy of given weights,
+    * for prototype generation.
+    * @param source network to snapshot
+    * @param weights neuron graph weights
+    * @param params network parameters
+    */
+   private Network(Network source, double[] weights, Parameters params) {
+      this.name = source.name;
+      this.schema = source.schema;
+      this.parameters = params;
+      this.neuronGraph = NeuronGraph.create(schema, params);
+      this.neuronGraph.setWeights(weights);
+      this.prototypes = Collections.emptyMap();
+      this.prototypeVersion = -1;
+      this.prototypeListeners = new CopyOnWriteArrayList<PrototypeListener>();
+   }
+
+   /**
+    * Copy constructor.
+    * @param source network to copy
+    * @param neuronGraph copy of the source's neuron graph
+    */
+   private Network(Network source, NeuronGraph neuronGraph) {
+      this.name = source.name;
+      this.schema = source.schema;
+      this.parameters = source.parameters.clone();
+      this.neuronGraph = neuronGraph;
+      this.prototypes = source.prototypes;
+      synchronized (source) {
+         this.graphVersion = source.graphVersion;
+         this.prototypeVersion = source.prototypeVersion;
+         this.prototypesWanted = source.prototypesWanted;
+         this.snapshotWeights = source.snapshotWeights;
+         this.snapshotParameters = source.snapshotParameters;
+      }
+      this.prototypeListeners = new CopyOnWriteArrayList<PrototypeListener>();
+      this.memoryModule = source.memoryModule.clone();
+   }
+
+   /**
+    * Restores transient state after deserialization.
+    * @param in object input stream
+    * @throws IOException if reading fails
+    * @throws ClassNotFoundException if a class cannot be found
+    */
+   private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+      in.defaultReadObject();
+      this.prototypeListeners = new CopyOnWriteArrayList<PrototypeListener>();
+   }
+
    /**
     * Returns a copy of this network's parameters.
     * @return network parameters
@@ -73,8 +188,11 @@ public class Network implements Serializable {
     * @param params network parameters
     */
    public void setParameters(Parameters params) {
+      NeuronGraph oldGraph = this.neuronGraph;
       this.parameters = params;
-      this.neuronGraph.build(schema, params);
+      this.neuronGraph = NeuronGraph.create(schema, params);
+      oldGraph.close();
+      invalidatePrototypes();
       buildMemoryModule((Class)
             params.getParameter(Parameters.kMemoryModule).getValue());
    }
@@ -154,6 +272,8 @@ public class Network implements Serializable {
 
    /**
     * Queries the network given an input object.
+    * Safe to call from several threads at once, as long as the network
+    * is not trained or mutated meanwhile.  Train a clone instead.
     * @param in input object
     * @return output object
     * @throws Exception if the input does not fit the network schema
@@ -162,6 +282,48 @@ public class Network implements Serializable {
       return schema.translateOutput(neuronGraph.fire(schema.encodeInput(in)));
    }
 
+   /**
+    * Queries the network with a batch of input vectors.
+    * @param inputs input vectors, one row per input
+    * @return classification indices and raw outputs
+    * @throws Exception if an input does not fit the network schema
+    */
+   public BatchQueryResult queryBatch(double[][] inputs) throws Exception {
+      return new BatchQueryResult(schema, neuronGraph.fireBatch(inputs));
+   }
+
+   /**
+    * Queries the network with a batch of input objects.
+    * @param inputs input objects
+    * @return classification indices and raw outputs
+    * @throws Exception if an input does not fit the network schema
+    */
+   public BatchQueryResult queryBatch(List<?> inputs) throws Exception {
+      double[][] inputVectors = new double[inputs.size()][];
+      for (int row = 0; row < inputVectors.length; ++row) {
+         inputVectors[row] = schema.encodeInput(inputs.get(row));
+      }
+      return queryBatch(inputVectors);
+   }
+
+   /**
+    * Builds an int8 inference copy of the trained neuron graph.
+    * Input scales are calibrated on the network's memories.
+    * @return quantized neuron graph
+    */
+   public QuantizedNeuronGraph quantize() {
+      return new QuantizedNeuronGraph(neuronGraph, schema, parameters,
+            memoryModule.getAllMemories());
+   }
+
+   /**
+    * Builds a prototype synthesizer for the trained neuron graph.
+    * @return prototype synthesizer
+    */
+   public PrototypeSynthesizer createPrototypeSynthesizer() {
+      return new PrototypeSynthesizer(neuronGraph, schema, parameters);
+   }
+
    /**
     * Trains this network using its memory module.
     */
@@ -184,9 +346,9 @@ public class Network implements Serializable {
     */
    public void train(List<Memory> trainingSet, List<Memory> testSet) throws Exception {
       try {
-         new NetworkTrainer(this, trainingSet, testSet).train();
+         NetworkTrainer.create(this, trainingSet, testSet).train();
          memoryModule.onTrain();
-         generatePrototypes();
+         invalidatePrototypes();
       } catch (Exception e) {
          e.printStackTrace();
          System.err.println("Network has corrupt memories!");
@@ -194,30 +356,167 @@ public class Network implements Serializable {
    }
 
    /**
-    * Uses a genetic algorithm to generate prototypes for
-    * each output classification.
+    * Marks the prototypes as out of date with the neuron graph.
+    * Call only once the graph has settled, after training or rebuilding,
+    * since this snapshots its weights for the next generation once
+    * prototypes are wanted.
+    * They are regenerated the next time they are requested, or right away
+    * if anyone is listening for them.
+    */
+   private void invalidatePrototypes() {
+      synchronized (this) {
+         ++graphVersion;
+         takeSnapshot();
+      }
+      if (!prototypeListeners.isEmpty()) requestPrototypes();
+   }
+
+   /**
+    * Snapshots the neuron graph weights and parameters for prototype
+    * generation.  Prototypes are only ever generated from the last
+    * snapshot, so requesting them never reads a graph mid-update.
+    * Does nothing until prototypes are wanted.
+    */
+   private synchronized void takeSnapshot() {
+      if (!prototypesWanted) return;
+
+      double[] weights = new double[neuronGraph.getParameterCount()];
+      neuronGraph.getWeights(weights);
+      snapshotWeights = weights;
+      snapshotParameters = parameters.clone();
+   }
+
+   /**
+    * Starts taking snapshots for prototype generation, beginning with one
+    * of the graph as it stands.
+    */
+   private synchronized void wantPrototypes() {
+      if (prototypesWanted) return;
+      prototypesWanted = true;
+      takeSnapshot();
+   }
+
+   /**
+    * Starts generating prototypes in the background if they are out of
+    * date and no generation is already running.
+    * The search runs on a network rebuilt from the last snapshot, so this
+    * network may keep training meanwhile.
+    * @return prototype generation in progress, or null if up to date
+    */
+   private synchronized Future<?> requestPrototypes() {
+      wantPrototypes();
+      if (pendingPrototypes == null && prototypeVersion != graphVersion) {
+         final double[] weights = snapshotWeights;
+         final Parameters params = snapshotParameters;
+         final int version = graphVersion;
+         pendingPrototypes = prototypeExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+               Map<Object, Memory> generated = null;
+               Network snapshot = null;
+               try {
+                  snapshot = new Network(Network.this, weights, params);
+                  generated = snapshot.generatePrototypes();
+               } finally {
+                  if (snapshot != null) snapshot.neuronGraph.close();
+                  onPrototypesGenerated(generated, version);
+               }
+            }
+         });
+      }
+      return pendingPrototypes;
+   }
+
+   /**
+    * Publishes a generated prototype set and notifies listeners.
+    * @param generated generated prototypes, or null if generation failed
+    * @param version graph version they were generated for
     */
-   private void generatePrototypes() {
-      for (Object classification : schema.getOutputClassifications()) {
+   private void onPrototypesGenerated(Map<Object, Memory> generated, int version) {
+      synchronized (this) {
+         pendingPrototypes = null;
+         if (generated == null) return;
+         prototypes = generated;
+         prototypeVersion = version;
+      }
+      for (PrototypeListener listener : prototypeListeners) {
+         listener.onPrototypesGenerated(this);
+      }
+   }
+
+   /**
+    * Adds a listener for newly generated prototypes.
+    * @param listener listener to add
+    */
+   public void addPrototypeListener(PrototypeListener listener) {
+      wantPrototypes();
+      prototypeListeners.add(listener);
+   }
+
+   /**
+    * Removes a listener for newly generated prototypes.
+    * @param listener listener to remove
+    */
+   public void removePrototypeListener(PrototypeListener listener) {
+      prototypeListeners.remove(listener);
+   }
+
+   /**
+    * Generates a prototype for each output classification with the
+    * prototype generator named in the parameters.
+    * @return prototype map
+    */
+   Map<Object, Memory> generatePrototypes() {
+      boolean genetic = kGeneticPrototypes.equals(
+            parameters.getParameter(Parameters.kPrototypeGenerator).getValue());
+      PrototypeSynthesizer synthesizer = genetic ? null : createPrototypeSynthesizer();
+
+      Map<Object, Memory> generated = new LinkedHashMap<Object, Memory>();
+      Object[] classifications = schema.getOutputClassifications();
+      for (int index = 0; index < classifications.length; ++index) {
+         Object classification = classifications[index];
          try {
-            GeneticAlgorithm<double[]> alg = new GeneticAlgorithm<double[]>(
-                  new PrototypeGeneticAdapter(this, classification));
-            alg.setPopulationSize(1000);
-            alg.setGenerationCap(25);
-            alg.setMutationRate(0.1);
-            alg.setAcceptableFitness(-0.001);
-            prototypes.put(classification, schema.createMemory(alg.run(), classification));
+            double[] prototype;
+            if (genetic) {
+               GeneticAlgorithm<double[]> alg = new GeneticAlgorithm<double[]>(
+                     new PrototypeGeneticAdapter(this, classification));
+               alg.setPopulationSize(1000);
+               alg.setGenerationCap(25);
+               alg.setMutationRate(0.1);
+               alg.setAcceptableFitness(-0.001);
+               prototype = alg.run();
+            } else {
+               prototype = synthesizer.synthesize(index, NeuronGraph.getRandom());
+            }
+            generated.put(classification, schema.createMemory(prototype, classification));
          } catch (Exception e) {
             e.printStackTrace();
          }
       }
+      return Collections.unmodifiableMap(generated);
    }
 
    /**
-    * Gets a collection of classification prototypes.
+    * Gets a collection of classification prototypes without waiting.
+    * If the network has trained since they were generated, new prototypes
+    * are generated in the background and the previous set is returned
+    * meanwhile, which is empty until the first set is ready.
     * @return prototypes
     */
    public Collection<Memory> getPrototypes() {
+      requestPrototypes();
+      return prototypes.values();
+   }
+
+   /**
+    * Gets a collection of classification prototypes, waiting for them to
+    * be generated if they are out of date.
+    * @return prototypes
+    * @throws Exception if prototype generation fails
+    */
+   public Collection<Memory> awaitPrototypes() throws Exception {
+      Future<?> pending = requestPrototypes();
+      if (pending != null) pending.get();
       return prototypes.values();
    }
 
@@ -234,8 +533,11 @@ public class Network implements Serializable {
       Parameters crossoverParameters = left.parameters;
 
       Network child = new Network("Child", left.schema, left.parameters);
+      NeuronGraph builtGraph = child.neuronGraph;
       child.neuronGraph =
          NeuronGraph.crossover(left.neuronGraph, right.neuronGraph, crossoverParameters);
+      builtGraph.close();
+      child.invalidatePrototypes();
       return child;
    }
 
@@ -244,26 +546,26 @@ public class Network implements Serializable {
     */
    public void mutate() {
       neuronGraph.mutate();
+      invalidatePrototypes();
    }
 
    /**
     * Clones this network.
+    * The neuron graph and memory module are copied directly, and the
+    * schema and memories, which never change, are shared.
     * @return cloned network
     */
    public Network clone() {
-      try {
-         ByteArrayOutputStream baos = new ByteArrayOutputStream();
-         ObjectOutputStream oos = new ObjectOutputStream(baos);
-         oos.writeObject(this);
-
-         ByteArrayInputStream bais = new ByteArrayInputStream(baos.toByteArray());
-         ObjectInputStream ois = new ObjectInputStream(bais);
-         return (Network) ois.readObject();
-      } catch (IOException e) {
-         return null;
-      } catch (ClassNotFoundException e) {
-         return null;
-      }
+      return new Network(this, neuronGraph.clone());
+   }
+
+   /**
+    * Clones this network sharing its neuron graph weights until either
+    * network trains or mutates.
+    * @return cloned network
+    */
+   public Network copyOnWriteClone() {
+      return new Network(this, neuronGraph.copyOnWriteClone());
    }
 
    /**
@@ -1,21 +1,83 @@
 package model.network;
 
 import model.network.memory.Memory;
+import model.network.optimizer.Optimizer;
+import model.network.optimizer.SGD;
+import model.network.parameters.BooleanParameter;
+import model.network.parameters.ClassParameter;
 import model.network.parameters.Parameters;
+import model.network.schedule.LearningRateSchedule;
 
 import java.io.*;
-import java.util.HashMap;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Neural network trainer.
+ * Subclasses may override how each epoch teaches the network.
  */
 public class NetworkTrainer implements Serializable {
-   private Network network;
-   private List<Memory> trainingMemory;
-   private List<Memory> testMemory;
-   private Map<Object, double[]> outputVectors;
+   /** Restart mode that randomizes the weights of a stale network. */
+   public static final String kResetRestart = "Reset";
+   /** Restart mode that perturbs the best weights found so far. */
+   public static final String kPerturbRestart = "Perturb Best";
+
+   protected Network network;
+   protected List<Memory> trainingMemory;
+   protected List<Memory> testMemory;
+   /** Evaluates the network on the test set. */
+   private transient Evaluator evaluator;
+
+   /** Whether the network has a softmax output layer. */
+   protected boolean softmaxOutput;
+
+   /** Number of memories per weight update. */
+   protected int batchSize;
+   /** Learning constant. */
+   protected double learningConstant;
+   /** Learning rate of the current epoch. */
+   protected double learningRate;
+   /** Learning rate schedule. */
+   protected LearningRateSchedule schedule;
+   /** Epochs since training started or restarted. */
+   private int scheduleEpoch;
+
+   /** Whether stale networks restart from the best weights. */
+   private boolean perturbRestart;
+   /** Standard deviation of restart noise. */
+   private double restartNoise;
+
+   /** Snapshot of the best weights found so far. */
+   private double[] bestWeights;
+   /** Buffer restart weights are built in. */
+   private double[] restartWeights;
+   /** Gradient accumulated over a batch. */
+   private double[] gradient;
+   /** Weight update rule. */
+   protected Optimizer optimizer;
+
+   /** Number of training threads. */
+   protected int threadCount;
+   /** Worker pool for multithreaded training. */
+   protected transient ExecutorService workers;
+   /** Gradients accumulated by each worker. */
+   private double[][] shardGradients;
+   /** Whether training threads were found unused for lack of batches. */
+   private boolean warnedSerial;
+
+   /** Number of epochs the last training run took. */
+   private int epochCount;
+   /** Number of memories trained on. */
+   private long trainedCount;
+   /** Time spent training in nanoseconds. */
+   private long trainingTime;
 
    public NetworkTrainer(Network network, List<Memory> trainingMemory,
                          List<Memory> testMemory) throws Exception {
@@ -23,16 +85,63 @@ public class NetworkTrainer implements Serializable {
       this.testMemory = testMemory;
       this.network = network;
 
-      this.outputVectors = new HashMap<Object, double[]>();
+      this.batchSize = (Integer)
+            network.parameters.getParameter(Parameters.kBatchSize).getValue();
+      this.learningConstant = (Double)
+            network.parameters.getParameter(Parameters.kLearningConstant).getValue();
+      this.threadCount = (Integer)
+            network.parameters.getParameter(Parameters.kTrainingThreads).getValue();
+      this.softmaxOutput = ((BooleanParameter)
+            network.parameters.getParameter(Parameters.kSoftmaxOutput)).getValue();
+      this.optimizer = (Optimizer)
+            ((ClassParameter) network.parameters.getParameter(Parameters.kOptimizer)).instantiate();
+      this.schedule = (LearningRateSchedule)
+            ((ClassParameter) network.parameters.getParameter(Parameters.kLearningRateSchedule)).instantiate();
+      this.learningRate = learningConstant;
+
+      this.perturbRestart = kPerturbRestart.equals(
+            network.parameters.getParameter(Parameters.kRestartMode).getValue());
+      this.restartNoise = (Double)
+            network.parameters.getParameter(Parameters.kRestartNoise).getValue();
+   }
 
-      for (Object classification : network.schema.getOutputClassifications())
-         outputVectors.put(classification, network.schema.encodeOutput(classification));
+   /**
+    * Creates a trainer of the class selected in the network's parameters.
+    * @param network network to train
+    * @param trainingMemory training set
+    * @param testMemory test set
+    * @return network trainer
+    */
+   public static NetworkTrainer create(Network network, List<Memory> trainingMemory,
+                                       List<Memory> testMemory) throws Exception {
+      Class trainerClass = (Class)
+            ((ClassParameter) network.parameters.getParameter(Parameters.kTrainer)).getValue();
+
+      Constructor constructor =
+            trainerClass.getConstructor(Network.class, List.class, List.class);
+      return (NetworkTrainer) constructor.newInstance(network, trainingMemory, testMemory);
    }
 
    /**
     * Trains the network with its memories.
+    * Starts the worker pool for multithreaded training if necessary.
     */
    public void train() throws Exception {
+      if (threadCount > 1)
+         workers = Executors.newFixedThreadPool(threadCount);
+
+      try {
+         runTraining();
+      } finally {
+         if (workers != null) workers.shutdown();
+         workers = null;
+      }
+   }
+
+   /**
+    * Teaches the network until its test results are acceptable.
+    */
+   private void runTraining() throws Exception {
       final boolean debug = false;
 
       if (trainingMemory.size() == 0 || testMemory.size() == 0) {
@@ -40,19 +149,25 @@ public class NetworkTrainer implements Serializable {
          return;
       }
 
-      NeuronGraph bestGraph = network.neuronGraph.clone();
+      // Snapshot weights rather than cloning the whole graph.
+      int parameterCount = network.neuronGraph.getParameterCount();
+      if (bestWeights == null || bestWeights.length != parameterCount)
+         bestWeights = new double[parameterCount];
+      network.neuronGraph.getWeights(bestWeights);
 
       // Counter for master reset.
       int masterCounter = 0;
       int staleCounter = 0;
 
+      Evaluation evaluation = evaluate(testMemory);
+
       // Test Error.
       double prevError;
-      double testError = calcTotalTestError(testMemory);
+      double testError = evaluation.getTotalError();
 
       // Percentage of tests passed.
       double prevPercent;
-      double percentCorrect = calcPercentCorrect(testMemory);
+      double percentCorrect = evaluation.getPercentCorrect();
       double bestPercent = percentCorrect;
 
       if (true) {
@@ -79,21 +194,26 @@ public class NetworkTrainer implements Serializable {
             (testError > acceptableTestError ||
             percentCorrect < acceptablePercentCorrect)) {
          // Teach the network using the tests.
-         for (int i = 0; i < trainingMemory.size(); ++i) {
-            network.neuronGraph.backpropagate(trainingMemory.get(i));
-         }
+         learningRate = schedule.getRate(learningConstant, scheduleEpoch++);
+         network.neuronGraph.setLearningConstant(learningRate);
+
+         long epochStart = System.nanoTime();
+         trainEpoch();
+         trainingTime += System.nanoTime() - epochStart;
+         trainedCount += trainingMemory.size();
 
          // Calculate error and percentage correct.
          prevError = testError;
          prevPercent = percentCorrect;
 
-         testError = calcTotalTestError(testMemory);
-         percentCorrect = calcPercentCorrect(testMemory);
+         evaluation = evaluate(testMemory);
+         testError = evaluation.getTotalError();
+         percentCorrect = evaluation.getPercentCorrect();
 
          // Keep track of best.
          if (percentCorrect > bestPercent) {
             bestPercent = percentCorrect;
-            bestGraph = network.neuronGraph.clone();
+            network.neuronGraph.getWeights(bestWeights);
             if (debug) System.out.println("Best: " + bestPercent);
          } else if (Double.compare(bestPercent, percentCorrect) != 0) {
             //if (debug) System.out.print(".");
@@ -106,9 +226,13 @@ public class NetworkTrainer implements Serializable {
 
             if (++staleCounter == staleThreshold) {
                staleCounter = 0;
-               network.neuronGraph.reset();
-               testError = calcTotalTestError(testMemory);
-               percentCorrect = calcPercentCorrect(testMemory);
+               if (perturbRestart) perturbBest();
+               else network.neuronGraph.reset();
+               scheduleEpoch = 0;
+               onReset();
+               evaluation = evaluate(testMemory);
+               testError = evaluation.getTotalError();
+               percentCorrect = evaluation.getPercentCorrect();
                if (debug) System.out.println("\n===RESET");
             }
          } else if (debug && Double.compare(prevPercent, percentCorrect) > 0) {
@@ -123,97 +247,183 @@ public class NetworkTrainer implements Serializable {
          if (debug) System.out.printf("Test error: %.6f\n", testError);
       }
 
+      epochCount = masterCounter;
       if (masterCounter > iterationCap) {
          if (debug) System.out.printf("Passed %d iterations...\n", iterationCap);
       }
 
-      network.neuronGraph = bestGraph;
+      network.neuronGraph.setWeights(bestWeights);
+      network.neuronGraph.setLearningConstant(learningConstant);
 
       if (true) {
+         evaluation = evaluate(testMemory);
          System.out.println("Total test error after learning: " +
-               calcTotalTestError(testMemory));
+               evaluation.getTotalError());
          System.out.println("Passing percentage: %" +
-               calcPercentCorrect(testMemory));
+               evaluation.getPercentCorrect());
+         System.out.println("Epochs: " + masterCounter);
+         if (trainingTime > 0)
+            System.out.printf("Training throughput: %.0f memories/sec (%d threads)\n",
+                  trainedCount / (trainingTime / 1e9), threadCount);
          System.out.println();
       }
    }
 
    /**
-    * Calculates the total test error by summing up individual test
-    * case errors.
-    * @param tests test suite
-    * @return total test error
+    * Runs one pass over the training memory.
+    * Memories are learned one at a time unless a batch size greater than
+    * one is set, in which case gradients are accumulated over each batch
+    * and averaged into a single weight update.  With worker threads,
+    * each batch is split into shards whose gradients are computed in
+    * parallel against the same weights and summed before the update, so
+    * the number of updates per epoch does not depend on the thread count.
+    * A single memory cannot be split, so a batch size of 1 trains serially.
+    * Each update goes through the selected optimizer.
     */
-   private double calcTotalTestError(List<Memory> tests) {
-      double totalTestError = 0.0;
-      for (int i = 0; i < tests.size(); ++i) {
-         totalTestError += calcTestError(tests.get(i));
+   protected void trainEpoch() throws Exception {
+      NeuronGraph neuronGraph = network.neuronGraph;
+
+      if (batchSize == 1 && workers != null && !warnedSerial) {
+         warnedSerial = true;
+         System.err.println("Training threads split batches; " +
+               "a batch size of 1 trains on one thread!");
+      }
+
+      // Plain gradient descent on single memories is just backpropagation.
+      if (batchSize == 1 && optimizer instanceof SGD) {
+         for (int i = 0; i < trainingMemory.size(); ++i) {
+            neuronGraph.backpropagate(trainingMemory.get(i));
+         }
+         return;
+      }
+
+      if (gradient == null) gradient = new double[neuronGraph.getParameterCount()];
+
+      for (int start = 0; start < trainingMemory.size(); start += batchSize) {
+         int end = Math.min(start + batchSize, trainingMemory.size());
+
+         if (workers == null || end - start == 1) {
+            Arrays.fill(gradient, 0.0);
+            for (int i = start; i < end; ++i) {
+               neuronGraph.accumulateGradient(trainingMemory.get(i), gradient);
+            }
+         } else {
+            accumulateParallel(neuronGraph, start, end);
+         }
+
+         // Average the batch so optimizers see the same scale for any batch size.
+         if (end - start > 1) {
+            double inverse = 1.0 / (end - start);
+            for (int i = 0; i < gradient.length; ++i) gradient[i] *= inverse;
+         }
+         optimizer.step(neuronGraph, gradient, learningRate);
       }
-      return totalTestError;
    }
 
    /**
-    * Runs a test and calculates the total error.
-    * Uses sum of quadratic deviations.
-    * @param test test to calculate error for
-    * @return total error
+    * Gets the number of epochs the last training run took.
+    * @return epoch count
     */
-   private double calcTestError(Memory test) {
-      double totalError = 0.0;
-      try {
-         // Get quadratic deviations for each output neuron
-         double[] errors = calcError(network.neuronGraph.fire(test.inputVector),
-               test.output);
+   public int getEpochCount() {
+      return epochCount;
+   }
 
-         // Total deviations.
-         for (int i = 0; i < errors.length; ++i) {
-            totalError += errors[i];
-         }
-      } catch (Exception e) {
-         System.err.println("Memory does not match network schema!");
-         e.printStackTrace();
+   /**
+    * Restarts a stale network from the best weights found so far, with
+    * Gaussian noise added to move it off the point it got stuck near.
+    */
+   private void perturbBest() {
+      if (restartWeights == null || restartWeights.length != bestWeights.length)
+         restartWeights = new double[bestWeights.length];
+
+      Random rand = NeuronGraph.getRandom();
+      for (int i = 0; i < bestWeights.length; ++i) {
+         restartWeights[i] = bestWeights[i] + restartNoise * rand.nextGaussian();
       }
-      return totalError;
+      network.neuronGraph.setWeights(restartWeights);
    }
 
    /**
-    * Calculates the error of the network given actual and expected output.
-    * Uses quadratic deviation.
-    * @param actual network output
-    * @param expected expected output
-    * @return errors
+    * Called after the network is reset for being stale, so that any
+    * state built up from the old weights can be discarded.
     */
-   private double[] calcError(double[] actual, Object expected) throws Exception {
-      double[] errors = new double[actual.length];
-      double[] expectedVector = outputVectors.get(expected);
-
-      // Calculate test error for each output neuron.
-      for (int i = 0; i < actual.length; ++i) {
-         errors[i] = 0.5 *
-               (expectedVector[i] - actual[i]) *
-               (expectedVector[i] - actual[i]);
+   protected void onReset() {
+      optimizer.reset();
+   }
+
+   /**
+    * Accumulates the gradient of a range of training memories by
+    * splitting it into one shard per worker.
+    * @param neuronGraph neuron graph to compute gradients for
+    * @param start first memory index
+    * @param end memory index after the last memory
+    */
+   private void accumulateParallel(final NeuronGraph neuronGraph,
+                                   int start, int end) throws Exception {
+      if (shardGradients == null)
+         shardGradients = new double[threadCount][gradient.length];
+
+      List<Future<Void>> futures = new ArrayList<Future<Void>>();
+      int shardSize = (end - start + threadCount - 1) / threadCount;
+
+      for (int shard = 0; shard < threadCount; ++shard) {
+         final int shardStart = start + shard * shardSize;
+         final int shardEnd = Math.min(shardStart + shardSize, end);
+         final double[] shardGradient = shardGradients[shard];
+
+         Arrays.fill(shardGradient, 0.0);
+         if (shardStart >= shardEnd) continue;
+
+         futures.add(workers.submit(new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+               for (int i = shardStart; i < shardEnd; ++i) {
+                  neuronGraph.accumulateGradient(trainingMemory.get(i), shardGradient);
+               }
+               return null;
+            }
+         }));
+      }
+
+      // Wait for the workers to finish.
+      for (Future<Void> future : futures) future.get();
+
+      // Reduce shard gradients.
+      Arrays.fill(gradient, 0.0);
+      for (double[] shardGradient : shardGradients) {
+         for (int i = 0; i < gradient.length; ++i) {
+            gradient[i] += shardGradient[i];
+         }
       }
-      return errors;
    }
 
+   /**
+    * Evaluates the network on a test suite in a single pass, splitting
+    * large suites across the worker threads.
+    * @param tests test suite
+    * @return evaluation
+    */
+   private Evaluation evaluate(List<Memory> tests) throws Exception {
+      return getEvaluator().evaluate(network.neuronGraph, tests, workers, threadCount);
+   }
 
    /**
-    * Calculates the percentage of test cases passed.
-    * @return percentage of tests passed
+    * Gets the test set evaluator, creating it on first use.
+    * @return evaluator
     */
-   private double calcPercentCorrect(List<Memory> tests) {
-      int correct = 0;
-
-      // Run each test.
-      for (int i = 0; i < tests.size(); ++i) {
-         try {
-            Memory test = tests.get(i);
-            double[] outVector = network.neuronGraph.fire(test.inputVector);
-
-            Object out = network.schema.translateOutput(outVector);
-            if (out.equals(test.output)) ++correct;
-         } catch (Exception e) { e.printStackTrace(); }
-      }
-      return 100.0 * (double) correct / tests.size();
+   private Evaluator getEvaluator() {
+      if (evaluator == null) evaluator = new Evaluator(network.schema, softmaxOutput);
+      return evaluator;
+   }
+
+   /**
+    * Calculates the error of the network given actual and expected output.
+    * Uses sum of quadratic deviations, or cross-entropy for softmax output.
+    * @param actual network output
+    * @param expected expected output
+    * @return total error
+    */
+   protected double calcError(double[] actual, Object expected) throws Exception {
+      return getEvaluator().calcError(actual, network.schema.getOutputIndex(expected));
    }
 }
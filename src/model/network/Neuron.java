@@ -51,7 +51,7 @@ public class Neuron implements Serializable {
       this.numInputs = 0;
       this.learningConstant = (Double)params.getParameter(Parameters.kLearningConstant).getValue();
       this.activationFunction = (ActivationFunction)
-            ((ClassParameter)params.getParameter(Parameters.kActivationFunction)).instantiate();
+            ((ClassParameter)params.getParameter(Parameters.kActivationFunction)).getSharedInstance();
       this.weights = new LinkedHashMap<Neuron, Double>();
       this.inputs = new LinkedHashMap<Neuron, Double>();
       this.outputNeurons = new ArrayList<Neuron>();
@@ -72,7 +72,7 @@ public class Neuron implements Serializable {
     * Randomizes the weights and bias.
     */
    public void randomize() {
-      Random rand = new Random();
+      Random rand = NeuronGraph.getRandom();
       for (Neuron key : weights.keySet()) {
          weights.put(key, rand.nextDouble() * 2 - 1);
       }
@@ -143,6 +143,56 @@ public class Neuron implements Serializable {
       return output;
    }
 
+   /**
+    * Getter for activation function.
+    * @return activation function
+    */
+   public ActivationFunction getActivationFunction() {
+      return activationFunction;
+   }
+
+   /**
+    * Sets the weight of an input neuron.
+    * @param neuron input neuron
+    * @param weight new weight
+    */
+   public void setWeight(Neuron neuron, double weight) {
+      weights.put(neuron, weight);
+   }
+
+   /**
+    * Setter for learning constant.
+    * @param learningConstant new learning constant
+    */
+   public void setLearningConstant(double learningConstant) {
+      this.learningConstant = learningConstant;
+   }
+
+   /**
+    * Setter for bias.
+    * @param bias new bias
+    */
+   public void setBias(double bias) {
+      this.bias = bias;
+   }
+
+   /**
+    * Adds a delta to the weight of an input neuron.
+    * @param neuron input neuron
+    * @param delta weight delta
+    */
+   public void adjustWeight(Neuron neuron, double delta) {
+      weights.put(neuron, weights.get(neuron) + delta);
+   }
+
+   /**
+    * Adds a delta to the bias.
+    * @param delta bias delta
+    */
+   public void adjustBias(double delta) {
+      bias += delta;
+   }
+
    /**
     * Mutates this neuron.
     * Used for genetic algorithm.
@@ -153,7 +203,7 @@ public class Neuron implements Serializable {
       // Bounds of weight mutation.
       final double kMutationBounds = 0.1;
 
-      Random rand = new Random();
+      Random rand = NeuronGraph.getRandom();
 
       // Mutate neuron.
       for (Neuron key : weights.keySet()) {
@@ -1,29 +1,57 @@
 package model.network;
 
 import model.network.memory.Memory;
+import model.network.parameters.ClassParameter;
 import model.network.parameters.Parameters;
 import model.network.schema.Schema;
 
 import java.io.*;
-import java.util.ArrayList;
-import java.util.Map;
+import java.lang.reflect.Constructor;
 import java.util.Random;
 
 /**
  * Graph of neural network neurons.
+ * Subclasses provide the storage and the forward and backward passes.
+ * The concrete class is selected with the neuron graph parameter.
  */
-public class NeuronGraph implements Serializable {
-   /** Network neuron layers. */
-   private ArrayList<Neuron[]> layers;
+public abstract class NeuronGraph implements Serializable {
+   /** Network schema. */
+   protected Schema schema;
 
-   /** Neuron input layer. */
-   private Neuron[] inputLayer;
+   /**
+    * Random source of each thread for initializing, mutating and crossing
+    * over graphs.  Seeding it makes those operations reproducible.
+    */
+   private static final ThreadLocal<Random> random = new ThreadLocal<Random>() {
+      @Override
+      protected Random initialValue() {
+         return new Random();
+      }
+   };
 
-   /** Neuron output layer. */
-   private Neuron[] outputLayer;
+   /**
+    * Gets the calling thread's random source.
+    * @return random source
+    */
+   public static Random getRandom() {
+      return random.get();
+   }
 
-   /** Network schema. */
-   private Schema schema;
+   /**
+    * Seeds the calling thread's random source, so that the graphs it
+    * builds, mutates and crosses over can be reproduced.
+    * @param seed random seed
+    */
+   public static void setRandomSeed(long seed) {
+      random.set(new Random(seed));
+   }
+
+   /**
+    * Returns the calling thread's random source to an unseeded one.
+    */
+   public static void clearRandomSeed() {
+      random.remove();
+   }
 
    /**
     * Constructor.
@@ -36,123 +64,211 @@ public class NeuronGraph implements Serializable {
    }
 
    /**
-    * Builds the neuron graph.
+    * Constructor for subclasses that set up their own storage.
+    * The graph is not built.
     * @param schema input/output schema
-    * @param parameters network parameters
     */
-   public void build(Schema schema, Parameters parameters) {
+   protected NeuronGraph(Schema schema) {
       this.schema = schema;
-      layers = new ArrayList<Neuron[]>();
+   }
 
-      // Build input layer.
-      inputLayer = new Neuron[schema.inputSize];
-      for (int index = 0; index < inputLayer.length; ++index) {
-         inputLayer[index] = new Neuron(parameters);
-      }
-      layers.add(inputLayer);
-
-      Neuron[] prevLayer = inputLayer;
-
-      Integer[] hiddenLayerDepths = (Integer[])
-            parameters.getParameter(Parameters.kHiddenLayerDepths).getValue();
-
-      // Build hidden layers.
-      for (int layerIndex = 0; layerIndex < hiddenLayerDepths.length; ++layerIndex) {
-         // Build a layer.
-         Neuron[] currLayer = new Neuron[hiddenLayerDepths[layerIndex]];
-
-         // Hook layer up to previous layer.
-         for (int currIndex = 0; currIndex < currLayer.length; ++currIndex) {
-            currLayer[currIndex] = new Neuron(parameters);
-            for (int prevIndex = 0; prevIndex < prevLayer.length; ++prevIndex) {
-               // Hook up input from previous layer.
-               // Tell current neuron to expect input from previous.
-               currLayer[currIndex].addInputNeuron(prevLayer[prevIndex]);
-               // Tell previous neuron to notify current neuron.
-               prevLayer[prevIndex].addOutputNeuron(currLayer[currIndex]);
-            }
-            // Randomize neuron.
-            currLayer[currIndex].randomize();
-         }
-         layers.add(currLayer);
-
-         prevLayer = currLayer;
-      }
+   /**
+    * Creates a neuron graph of the class selected in the given parameters.
+    * @param schema input/output schema
+    * @param parameters network parameters
+    * @return neuron graph
+    */
+   public static NeuronGraph create(Schema schema, Parameters parameters) {
+      Class graphClass = (Class)
+            ((ClassParameter) parameters.getParameter(Parameters.kNeuronGraph)).getValue();
 
-      // Build output layer.
-      outputLayer = new Neuron[schema.outputSize];
-
-      // Hook layer up to previous layer.
-      for (int outIndex = 0; outIndex < outputLayer.length; ++outIndex) {
-         outputLayer[outIndex] = new Neuron(parameters);
-         for (int prevIndex = 0; prevIndex < prevLayer.length; ++prevIndex) {
-            // Hook up input from previous layer.
-            // Tell current neuron to expect input from previous.
-            outputLayer[outIndex].addInputNeuron(prevLayer[prevIndex]);
-            // Tell previous neuron to notify current neuron.
-            prevLayer[prevIndex].addOutputNeuron(outputLayer[outIndex]);
-         }
-         // Randomize neuron.
-         outputLayer[outIndex].randomize();
+      try {
+         Constructor constructor =
+               graphClass.getConstructor(Schema.class, Parameters.class);
+         return (NeuronGraph) constructor.newInstance(schema, parameters);
+      } catch (Exception e) {
+         e.printStackTrace();
+         throw new RuntimeException("Could not build neuron graph!");
       }
-      layers.add(outputLayer);
    }
 
+   /**
+    * Builds the neuron graph.
+    * @param schema input/output schema
+    * @param parameters network parameters
+    */
+   public abstract void build(Schema schema, Parameters parameters);
+
    /**
     * Resets the network by randomizing each neuron's weights.
     */
-   public void reset() {
-      for (Neuron[] layer : layers) {
-         for (Neuron neuron : layer)
-            neuron.randomize();
-      }
-   }
+   public abstract void reset();
 
    /**
     * Fires the neural network and returns output.
+    * Activations are kept in per-call or per-thread buffers rather than
+    * in the graph, so several threads may fire the graph at once as long
+    * as no thread changes its weights.
     * @param input input signals
     * @return output signals
     */
-   public double[] fire(double[] input) {
-      // Validate input size.
-      if (input.length != inputLayer.length)
-         throw new RuntimeException("Network fired with improper input!");
+   public abstract double[] fire(double[] input);
 
-      double[] output = new double[outputLayer.length];
+   /**
+    * Fires the neural network into a caller supplied output buffer.
+    * Engines override this to run without allocating, so that steady
+    * state queries produce no garbage.
+    * @param input input signals
+    * @param output output signals
+    */
+   public void fire(double[] input, double[] output) {
+      double[] result = fire(input);
+      System.arraycopy(result, 0, output, 0, result.length);
+   }
 
-      for (int inputIndex = 0; inputIndex < inputLayer.length; ++inputIndex) {
-         inputLayer[inputIndex].fire(input[inputIndex]);
+   /**
+    * Fires the neural network on a batch of inputs.
+    * Like fire, this may be called from several threads at once.
+    * @param inputs input signals, one row per input
+    * @return output signals, one row per input
+    */
+   public double[][] fireBatch(double[][] inputs) {
+      double[][] outputs = new double[inputs.length][];
+      for (int row = 0; row < inputs.length; ++row) {
+         outputs[row] = fire(inputs[row]);
       }
+      return outputs;
+   }
 
-      for (int outputIndex = 0; outputIndex < outputLayer.length; ++outputIndex) {
-         output[outputIndex] = outputLayer[outputIndex].getOutput();
-      }
+   /**
+    * Teaches the network a memory using backpropagation.
+    * @param memory memory to learn from
+    */
+   public abstract void backpropagate(Memory memory) throws Exception;
 
-      return output;
+   /**
+    * Sets the learning constant used by backpropagate, so that trainers
+    * can follow a learning rate schedule.
+    * @param learningConstant new learning constant
+    */
+   public abstract void setLearningConstant(double learningConstant);
+
+   /**
+    * Checks whether backpropagate may be called from several threads at
+    * once.  Concurrent calls update the weights without locks, so updates
+    * may occasionally overwrite each other.
+    * @return whether concurrent backpropagation is supported
+    */
+   public boolean supportsConcurrentBackpropagation() {
+      return false;
    }
 
    /**
-    * Teaches the network a memory using backpropagation.
+    * Gets the number of weights and biases in the graph.
+    * This is the length of the gradient vectors used by
+    * accumulateGradient and applyGradient.
+    * @return parameter count
+    */
+   public abstract int getParameterCount();
+
+   /**
+    * Adds the gradient of a memory to a gradient vector without
+    * modifying any weights.  The gradient points in the direction of
+    * descent and is laid out layer by layer, each layer's weight matrix
+    * (one row per neuron) followed by its biases.
+    * Several threads may accumulate gradients at once, each into its own
+    * vector, as long as no thread changes the weights meanwhile.
     * @param memory memory to learn from
+    * @param gradient gradient vector
+    */
+   public void accumulateGradient(Memory memory, double[] gradient) throws Exception {
+      accumulateGradient(memory, gradient, null);
+   }
+
+   /**
+    * Adds the gradient of a memory to a gradient vector, also copying out
+    * the output its input fired.  Callers that need the loss as well as
+    * the gradient get both from one forward pass.
+    * @param memory memory to learn from
+    * @param gradient gradient vector
+    * @param output output signals, or null if not needed
+    */
+   public abstract void accumulateGradient(Memory memory, double[] gradient,
+                                           double[] output) throws Exception;
+
+   /**
+    * Adds a scaled gradient vector to the weights and biases.
+    * @param gradient gradient vector
+    * @param scale gradient scale, usually the learning constant
+    */
+   public abstract void applyGradient(double[] gradient, double scale);
+
+   /**
+    * Copies the weights and biases into a vector laid out like a gradient.
+    * @param destination vector of length getParameterCount()
+    */
+   public abstract void getWeights(double[] destination);
+
+   /**
+    * Sets the weights and biases from a vector laid out like a gradient.
+    * @param source vector of length getParameterCount()
+    */
+   public abstract void setWeights(double[] source);
+
+   /**
+    * Mutates the neuron graph.
+    */
+   public abstract void mutate();
+
+   /**
+    * Crosses this graph over with another graph of the same class.
+    * @param right right parent
+    * @param params child parameters
+    * @return child graph
+    */
+   protected abstract NeuronGraph crossover(NeuronGraph right, Parameters params);
+
+   /**
+    * Picks a child weight or bias for crossover: the left parent's, the
+    * right parent's, or the average of both, each about a third of the time.
+    * Every engine crosses weights and biases with this rule, in the order
+    * of the parameter vector, so a seeded crossover gives the same child
+    * on every engine.
+    * @param leftValue left parent's value
+    * @param rightValue right parent's value
+    * @param rand random number generator
+    * @return child's value
     */
-   public void backpropagate(Memory memory) throws Exception {
-      // Fire network and gather output.
-      double[] output = fire(memory.inputVector);
-      double[] errors = calcBPError(output, schema.encodeOutput(memory.output));
-
-      // Backpropagate to output layer using calcBPError.
-      for (int index = 0; index < outputLayer.length; ++index) {
-         outputLayer[index].backPropagate(errors[index]);
+   protected static double crossValues(double leftValue, double rightValue, Random rand) {
+      double chance = rand.nextDouble();
+      if (chance < 0.33) {
+         return leftValue;
+      } else if (chance < 0.67) {
+         return rightValue;
+      } else {
+         return (leftValue + rightValue) / 2;
       }
    }
 
+   /**
+    * Crosses over two neuron graphs.
+    * @param left left parent
+    * @param right right parent
+    * @return child graph
+    */
+   public static NeuronGraph crossover(NeuronGraph left, NeuronGraph right, Parameters params) {
+      if (!left.getClass().equals(right.getClass()))
+         throw new RuntimeException("Cannot cross over different neuron graph types!");
+      return left.crossover(right, params);
+   }
+
    /**
     * Calculates backpropagation error, which is the derivative of the error.
     * @param actual network output
     * @param expected expected output
     * @return backpropagation error
     */
-   private double[] calcBPError(double[] actual, double[] expected) {
+   protected double[] calcBPError(double[] actual, double[] expected) {
       double[] errors = new double[actual.length];
 
       // Calculate backpropagated error for each output neuron.
@@ -165,87 +281,38 @@ public class NeuronGraph implements Serializable {
    }
 
    /**
-    * Crosses over two neuron graphs.
-    * @param left left parent
-    * @param right right parent
-    * @return child graph
+    * Calculates backpropagation error into a buffer without building an
+    * expected output vector.
+    * @param actual network output
+    * @param expectedIndex index of the expected classification
+    * @param errors backpropagation error
     */
-   public static NeuronGraph crossover(NeuronGraph left, NeuronGraph right, Parameters params) {
-      NeuronGraph child = new NeuronGraph(left.schema, params);
-
-      Neuron[] leftPrevLayer = left.inputLayer;
-      Neuron[] rightPrevLayer = right.inputLayer;
-      Neuron[] childPrevLayer = child.inputLayer;
-
-
-      // Mutate all layers except input layer.
-      for (int layerIndex = 1; layerIndex < child.layers.size(); ++layerIndex) {
-         Neuron[] leftCurrLayer = left.layers.get(layerIndex);
-         Neuron[] rightCurrLayer = right.layers.get(layerIndex);
-         Neuron[] childCurrLayer = child.layers.get(layerIndex);
-
-         // For each current layer neuron...
-         for (int neuronIndex = 0; neuronIndex < childCurrLayer.length; ++neuronIndex) {
-            Neuron leftNeuron = leftCurrLayer[neuronIndex];
-            Neuron rightNeuron = rightCurrLayer[neuronIndex];
-            Neuron childNeuron = childCurrLayer[neuronIndex];
-
-            Map<Neuron, Double> leftWeights = leftNeuron.getWeights();
-            Map<Neuron, Double> rightWeights = rightNeuron.getWeights();
-            Map<Neuron, Double> childWeights = childNeuron.getWeights();
-
-            // Average weights for each previous layer neuron...
-            for (int prevIndex = 0; prevIndex < childPrevLayer.length; ++prevIndex) {
-               double leftWeight = leftWeights.get(leftPrevLayer[prevIndex]);
-               double rightWeight = rightWeights.get(rightPrevLayer[prevIndex]);
-               double average = (leftWeight + rightWeight) / 2;
-
-               double newWeight;
-
-               // Take either left parent weight, right parent weight, or average weight.
-               double rand = new Random().nextDouble();
-               if (rand < 0.33) {
-                  newWeight = leftWeight;
-               } else if (rand < 0.67) {
-                  newWeight = leftWeight;
-               } else {
-                  newWeight = average;
-               }
-
-               childWeights.put(childPrevLayer[prevIndex], newWeight);
-            }
-         }
-
-         leftPrevLayer = leftCurrLayer;
-         rightPrevLayer = rightCurrLayer;
-         childPrevLayer = childCurrLayer;
+   protected void calcBPError(double[] actual, int expectedIndex, double[] errors) {
+      for (int i = 0; i < actual.length; ++i) {
+         errors[i] = ((i == expectedIndex) ? 1.0 : 0.0) - actual[i];
       }
+   }
 
-      return child;
+   /**
+    * Releases any storage the graph holds outside of the Java heap.
+    * The graph must not be used afterwards.  Graphs stored on the heap
+    * hold nothing to release.
+    */
+   public void close() {
    }
 
    /**
-    * Mutates the neuron graph.
+    * Clones this graph sharing its weights until one of the two graphs
+    * changes them.  Engines that cannot share weights return a full clone.
+    * @return cloned graph
     */
-   public void mutate() {
-      // Likelihood of mutating neuron.
-      final double kNeuronMutationRate = 0.5;
-
-      Random rand = new Random();
-
-      // Mutate all layers except input layer.
-      for (int layerIndex = 1; layerIndex < layers.size(); ++layerIndex) {
-         for (Neuron neuron : layers.get(layerIndex)) {
-            // Mutate neuron according to mutation rate.
-            if (Double.compare(rand.nextDouble(), kNeuronMutationRate) < 0) {
-               neuron.mutate();
-            }
-         }
-      }
+   public NeuronGraph copyOnWriteClone() {
+      return clone();
    }
 
    /**
     * Clones this network.
+    * Copies through serialization unless an engine copies itself directly.
     * @return cloned network
     */
    public NeuronGraph clone() {
@@ -263,18 +330,4 @@ public class NeuronGraph implements Serializable {
          return null;
       }
    }
-
-
-   @Override
-   public String toString() {
-      StringBuilder sb = new StringBuilder("Network\n");
-
-      for (Neuron[] layer : layers) {
-         sb.append("  LAYER\n");
-         for (int i = 0; i < layer.length; ++i) {
-            sb.append(layer[i] + "\n");
-         }
-      }
-      return sb.toString();
-   }
 }
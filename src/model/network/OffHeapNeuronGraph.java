@@ -0,0 +1,820 @@
+package model.network;
+
+import model.network.activation.ActivationFunction;
+import model.network.activation.Identity;
+import model.network.memory.Memory;
+import model.network.parameters.BooleanParameter;
+import model.network.parameters.ClassParameter;
+import model.network.parameters.Parameters;
+import model.network.schema.Schema;
+
+import java.io.*;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Graph of neural network neurons stored outside of the Java heap.
+ * All weights and biases live in one direct buffer, laid out like a
+ * gradient vector, so large models add nothing to garbage collection work.
+ * The buffer may be a memory-mapped model file, which lets several
+ * processes on one host serve the same model from a single copy.
+ *
+ * The graph should be closed once it is no longer needed.  Closing flushes
+ * a writable model file and frees the buffer, or unmaps the file, at once
+ * rather than whenever the buffer is collected.  Calls already running on
+ * other threads finish first, and later calls throw an
+ * IllegalStateException.
+ */
+public class OffHeapNeuronGraph extends NeuronGraph implements Closeable {
+   /** Layer sizes, from input layer to output layer. */
+   private int[] layerSizes;
+
+   /** Store index of each non-input layer's weight matrix. */
+   private int[] weightOffsets;
+
+   /** Store index of each non-input layer's bias vector. */
+   private int[] biasOffsets;
+
+   /** Number of weights and biases. */
+   private int parameterCount;
+
+   /** Learning constant. */
+   private double learningConstant;
+
+   /** Activation function shared by every neuron. */
+   private ActivationFunction activationFunction;
+
+   /** Whether the output layer is a softmax trained with cross-entropy. */
+   private boolean softmaxOutput;
+
+   /** Weight and bias store.  Null once the graph is closed. */
+   private transient volatile DoubleBuffer store;
+
+   /** Direct or mapped buffer backing the store, freed on close. */
+   private transient volatile ByteBuffer buffer;
+
+   /** Model file mapping, if the store is backed by a file. */
+   private transient volatile MappedByteBuffer mapping;
+
+   /**
+    * Lock held while closing, so that the store is freed once.
+    * Also guards the workspace list.  Uses of the store never take it.
+    */
+   private transient Object closeLock;
+
+   /** Per-thread scratch buffers. */
+   private transient ThreadLocal<Workspace> workspace;
+
+   /** Workspace of every thread that has used the graph, for close to check. */
+   private transient List<Workspace> workspaces;
+
+   /**
+    * Activation and error buffers for one pass through the graph.
+    */
+   private static final class Workspace {
+      /** Outputs of each layer. */
+      final double[][] activations;
+      /** Error sigmas of each layer for backpropagation. */
+      final double[][] errorSigmas;
+      /** Thread the workspace belongs to. */
+      final Thread owner = Thread.currentThread();
+      /** Number of store uses under way on the owning thread.  Only the owner writes it. */
+      volatile int storeUses;
+
+      Workspace(int[] layerSizes) {
+         activations = new double[layerSizes.length][];
+         errorSigmas = new double[layerSizes.length][];
+         for (int layerIndex = 0; layerIndex < layerSizes.length; ++layerIndex) {
+            activations[layerIndex] = new double[layerSizes[layerIndex]];
+            errorSigmas[layerIndex] = new double[layerSizes[layerIndex]];
+         }
+      }
+   }
+
+   /**
+    * Constructor.
+    * Weights are randomized in a new direct buffer.
+    * @param schema input/output schema
+    * @param parameters network parameters
+    */
+   public OffHeapNeuronGraph(Schema schema, Parameters parameters) {
+      super(schema, parameters);
+   }
+
+   /**
+    * Constructor for graphs backed by a model file.
+    * @param schema input/output schema
+    * @param parameters network parameters
+    * @param mapping model file mapping
+    */
+   private OffHeapNeuronGraph(Schema schema, Parameters parameters,
+                              MappedByteBuffer mapping) throws IOException {
+      super(schema);
+      createTransientState();
+      layout(schema, parameters);
+
+      if (mapping.capacity() != (long) parameterCount * 8)
+         throw new IOException("Model file does not match network shape!");
+
+      attach(mapping);
+      this.mapping = mapping;
+   }
+
+   /**
+    * Copy constructor.
+    * Layout and settings are shared, and the weights are copied into a
+    * new direct buffer with one bulk copy.
+    * @param source graph to copy
+    */
+   private OffHeapNeuronGraph(OffHeapNeuronGraph source) {
+      super(source.schema);
+      createTransientState();
+      this.layerSizes = source.layerSizes;
+      this.weightOffsets = source.weightOffsets;
+      this.biasOffsets = source.biasOffsets;
+      this.parameterCount = source.parameterCount;
+      this.learningConstant = source.learningConstant;
+      this.activationFunction = source.activationFunction;
+      this.softmaxOutput = source.softmaxOutput;
+
+      DoubleBuffer sourceStore = source.acquireStore();
+      try {
+         DoubleBuffer values = sourceStore.duplicate();
+         values.clear();
+         attach(ByteBuffer.allocateDirect(parameterCount * 8));
+         store.put(values);
+         store.clear();
+      } finally {
+         source.releaseStore();
+      }
+   }
+
+   /**
+    * Maps a model file written by write() into a neuron graph.
+    * @param file model file
+    * @param schema input/output schema
+    * @param parameters network parameters the model was built with
+    * @param writable whether training may write to the model file
+    * @return neuron graph backed by the model file
+    * @throws IOException if the file cannot be mapped or has the wrong size
+    */
+   public static OffHeapNeuronGraph map(File file, Schema schema, Parameters parameters,
+                                        boolean writable) throws IOException {
+      RandomAccessFile raf = new RandomAccessFile(file, writable ? "rw" : "r");
+      try {
+         FileChannel channel = raf.getChannel();
+         MappedByteBuffer mapping = channel.map(
+               writable ? FileChannel.MapMode.READ_WRITE : FileChannel.MapMode.READ_ONLY,
+               0, channel.size());
+         return new OffHeapNeuronGraph(schema, parameters, mapping);
+      } finally {
+         // The mapping stays valid after the file is closed.
+         raf.close();
+      }
+   }
+
+   /**
+    * Writes the weights and biases of any neuron graph to a model file
+    * that can be mapped with map().  Values are stored in native byte order.
+    * @param graph neuron graph to write
+    * @param file model file
+    */
+   public static void write(NeuronGraph graph, File file) throws IOException {
+      double[] weights = new double[graph.getParameterCount()];
+      graph.getWeights(weights);
+
+      ByteBuffer bytes = ByteBuffer.allocate(weights.length * 8).order(ByteOrder.nativeOrder());
+      bytes.asDoubleBuffer().put(weights);
+
+      FileOutputStream fos = new FileOutputStream(file);
+      try {
+         FileChannel channel = fos.getChannel();
+         while (bytes.hasRemaining()) channel.write(bytes);
+      } finally {
+         fos.close();
+      }
+   }
+
+   /**
+    * Builds the neuron graph in a new direct buffer.
+    * @param schema input/output schema
+    * @param parameters network parameters
+    */
+   @Override
+   public void build(Schema schema, Parameters parameters) {
+      createTransientState();
+      layout(schema, parameters);
+      attach(ByteBuffer.allocateDirect(parameterCount * 8));
+      mapping = null;
+      reset();
+   }
+
+   /**
+    * Lays out the layers within the store.
+    * @param schema input/output schema
+    * @param parameters network parameters
+    */
+   private void layout(Schema schema, Parameters parameters) {
+      this.schema = schema;
+      this.learningConstant = (Double)
+            parameters.getParameter(Parameters.kLearningConstant).getValue();
+      this.activationFunction = (ActivationFunction)
+            ((ClassParameter) parameters.getParameter(Parameters.kActivationFunction)).getSharedInstance();
+      this.softmaxOutput = ((BooleanParameter)
+            parameters.getParameter(Parameters.kSoftmaxOutput)).getValue();
+
+      layerSizes = DenseLayers.getLayerSizes(schema, parameters);
+
+      weightOffsets = new int[layerSizes.length - 1];
+      biasOffsets = new int[layerSizes.length - 1];
+      parameterCount = 0;
+      for (int layerIndex = 0; layerIndex < weightOffsets.length; ++layerIndex) {
+         weightOffsets[layerIndex] = parameterCount;
+         parameterCount += layerSizes[layerIndex + 1] * layerSizes[layerIndex];
+         biasOffsets[layerIndex] = parameterCount;
+         parameterCount += layerSizes[layerIndex + 1];
+      }
+   }
+
+   /**
+    * Backs the store with a direct or mapped buffer.
+    * @param bytes buffer holding the weights and biases in native byte order
+    */
+   private void attach(ByteBuffer bytes) {
+      buffer = bytes;
+      store = bytes.order(ByteOrder.nativeOrder()).asDoubleBuffer();
+   }
+
+   /**
+    * Gets the activation function applied by a layer's neurons.
+    * A softmax output layer passes its net inputs through, to be
+    * normalized as a whole.
+    * @param layerIndex weight layer index
+    * @return activation function
+    */
+   private ActivationFunction getLayerFunction(int layerIndex) {
+      return (softmaxOutput && layerIndex == weightOffsets.length - 1) ?
+            Identity.instance : activationFunction;
+   }
+
+   /**
+    * Sets up the close lock and the per-thread scratch buffers.
+    * The buffers are created on first use, once the layout is known.
+    */
+   private void createTransientState() {
+      closeLock = new Object();
+      workspaces = new ArrayList<Workspace>();
+      workspace = new ThreadLocal<Workspace>() {
+         @Override
+         protected Workspace initialValue() {
+            Workspace work = new Workspace(layerSizes);
+            synchronized (closeLock) {
+               // Threads that have ended can no longer be using the store.
+               Iterator<Workspace> iterator = workspaces.iterator();
+               while (iterator.hasNext()) {
+                  if (!iterator.next().owner.isAlive()) iterator.remove();
+               }
+               workspaces.add(work);
+            }
+            return work;
+         }
+      };
+   }
+
+   /**
+    * Gets the store and keeps it from being freed until releaseStore is
+    * called, ensuring the graph is still open.  Marks the calling thread
+    * as using the store, which costs a volatile write and no lock; close
+    * waits for the uses under way instead.
+    * @return store
+    */
+   private DoubleBuffer acquireStore() {
+      Workspace work = workspace.get();
+      work.storeUses = work.storeUses + 1;
+      DoubleBuffer current = store;
+      if (current == null) {
+         work.storeUses = work.storeUses - 1;
+         throw new IllegalStateException("Neuron graph is closed!");
+      }
+      return current;
+   }
+
+   /**
+    * Lets the store be freed again after acquireStore.
+    */
+   private void releaseStore() {
+      Workspace work = workspace.get();
+      work.storeUses = work.storeUses - 1;
+   }
+
+   /**
+    * Copies the weights into a new direct buffer rather than by
+    * serialization.  The clone is never backed by a model file.
+    * @return cloned graph
+    */
+   @Override
+   public NeuronGraph clone() {
+      return new OffHeapNeuronGraph(this);
+   }
+
+   /**
+    * Checks whether the graph has been closed.
+    * @return whether the graph is closed
+    */
+   public boolean isClosed() {
+      return store == null;
+   }
+
+   /**
+    * Checks whether the graph is backed by a model file.
+    * @return whether the graph is mapped
+    */
+   public boolean isMapped() {
+      return mapping != null;
+   }
+
+   /**
+    * Closes the graph.
+    * Writable model files are flushed to disk, and the buffer is freed or
+    * the file unmapped once calls running on other threads finish.
+    * Closing a closed graph does nothing.
+    */
+   @Override
+   public void close() {
+      synchronized (closeLock) {
+         if (store == null) return;
+
+         // Uses that start after this fail, so only the uses already
+         // under way need to finish.
+         store = null;
+         for (Workspace work : workspaces) {
+            while (work.storeUses != 0) Thread.yield();
+         }
+
+         if (mapping != null && !mapping.isReadOnly())
+            mapping.force();
+
+         ByteBuffer released = buffer;
+         buffer = null;
+         mapping = null;
+         free(released);
+      }
+   }
+
+   /**
+    * Frees a direct or mapped buffer now rather than when it is collected.
+    * The JDK's buffer cleaner is not public API, so it is looked up
+    * reflectively; if it cannot be found the buffer is left to the garbage
+    * collector.  The buffer must not be used afterwards.
+    * @param bytes buffer to free
+    */
+   private static void free(ByteBuffer bytes) {
+      try {
+         // Java 9 and later.
+         Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+         Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+         unsafeField.setAccessible(true);
+         Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+         invokeCleaner.invoke(unsafeField.get(null), bytes);
+      } catch (NoSuchMethodException e) {
+         // Java 8.
+         try {
+            Method cleanerMethod = bytes.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(bytes);
+            if (cleaner != null) cleaner.getClass().getMethod("clean").invoke(cleaner);
+         } catch (Exception inner) {
+            // Left to the garbage collector.
+         }
+      } catch (Exception e) {
+         // Left to the garbage collector.
+      }
+   }
+
+   /**
+    * Writes the weights on the heap, since the store is transient.
+    * Deserialized graphs always use a new direct buffer.
+    * @param out object output stream
+    */
+   private void writeObject(ObjectOutputStream out) throws IOException {
+      DoubleBuffer weights = acquireStore();
+      try {
+         out.defaultWriteObject();
+         for (int i = 0; i < parameterCount; ++i) {
+            out.writeDouble(weights.get(i));
+         }
+      } finally {
+         releaseStore();
+      }
+   }
+
+   /**
+    * Reads the weights into a new direct buffer.
+    * @param in object input stream
+    */
+   private void readObject(ObjectInputStream in)
+         throws IOException, ClassNotFoundException {
+      in.defaultReadObject();
+      createTransientState();
+      attach(ByteBuffer.allocateDirect(parameterCount * 8));
+      for (int i = 0; i < parameterCount; ++i) {
+         store.put(i, in.readDouble());
+      }
+   }
+
+   /**
+    * Sets the learning constant used by backpropagate.
+    * @param learningConstant new learning constant
+    */
+   @Override
+   public void setLearningConstant(double learningConstant) {
+      this.learningConstant = learningConstant;
+   }
+
+   /**
+    * Resets the network by randomizing each neuron's weights.
+    */
+   @Override
+   public void reset() {
+      DoubleBuffer weights = acquireStore();
+      try {
+         Random rand = getRandom();
+         for (int i = 0; i < parameterCount; ++i) {
+            weights.put(i, rand.nextDouble() * 2 - 1);
+         }
+      } finally {
+         releaseStore();
+      }
+   }
+
+   /**
+    * Fires the neural network and returns output.
+    * @param input input signals
+    * @return output signals
+    */
+   @Override
+   public double[] fire(double[] input) {
+      double[] output = new double[layerSizes[layerSizes.length - 1]];
+      fire(input, output);
+      return output;
+   }
+
+   /**
+    * Fires the neural network into an output buffer without allocating.
+    * @param input input signals
+    * @param output output signals
+    */
+   @Override
+   public void fire(double[] input, double[] output) {
+      DoubleBuffer weights = acquireStore();
+      try {
+         double[] result = forward(input, weights, workspace.get());
+         System.arraycopy(result, 0, output, 0, result.length);
+      } finally {
+         releaseStore();
+      }
+   }
+
+   /**
+    * Runs the forward pass, leaving each layer's output in the
+    * workspace activation buffers.
+    * @param input input signals
+    * @param weights weight store
+    * @param work scratch buffers
+    * @return output layer activation buffer
+    */
+   private double[] forward(double[] input, DoubleBuffer weights, Workspace work) {
+      // Validate input size.
+      if (input.length != layerSizes[0])
+         throw new RuntimeException("Network fired with improper input!");
+
+      double[][] activations = work.activations;
+      System.arraycopy(input, 0, activations[0], 0, input.length);
+
+      for (int layerIndex = 0; layerIndex < weightOffsets.length; ++layerIndex) {
+         double[] in = activations[layerIndex];
+         double[] out = activations[layerIndex + 1];
+         int weightIndex = weightOffsets[layerIndex];
+         int biasIndex = biasOffsets[layerIndex];
+         ActivationFunction function = getLayerFunction(layerIndex);
+         int inSize = in.length;
+
+         for (int row = 0; row < out.length; ++row) {
+            // Calculate net for activation function.
+            double x = 0.0;
+            for (int col = 0; col < inSize; ++col) {
+               x += in[col] * weights.get(weightIndex++);
+            }
+            x += weights.get(biasIndex + row);
+
+            out[row] = function.calculate(x);
+         }
+      }
+
+      double[] output = activations[activations.length - 1];
+      if (softmaxOutput) Kernels.softmax(output, 0, output.length);
+      return output;
+   }
+
+   /**
+    * Teaches the network a memory using backpropagation.
+    * Fails with a ReadOnlyBufferException on read-only model files.
+    * @param memory memory to learn from
+    */
+   @Override
+   public void backpropagate(Memory memory) throws Exception {
+      DoubleBuffer weights = acquireStore();
+      try {
+         Workspace work = workspace.get();
+         double[][] activations = work.activations;
+         double[][] errorSigmas = work.errorSigmas;
+         calcErrorSigmas(memory, weights, work);
+
+         // Update weights.
+         for (int layerIndex = 0; layerIndex < weightOffsets.length; ++layerIndex) {
+            double[] in = activations[layerIndex];
+            double[] sigmas = errorSigmas[layerIndex + 1];
+            int weightIndex = weightOffsets[layerIndex];
+            int biasIndex = biasOffsets[layerIndex];
+            int inSize = in.length;
+
+            for (int row = 0; row < sigmas.length; ++row) {
+               double delta = learningConstant * sigmas[row];
+               for (int col = 0; col < inSize; ++col, ++weightIndex) {
+                  weights.put(weightIndex, weights.get(weightIndex) + delta * in[col]);
+               }
+               weights.put(biasIndex + row, weights.get(biasIndex + row) + delta);
+            }
+         }
+      } finally {
+         releaseStore();
+      }
+   }
+
+   /**
+    * Backpropagation only shares the store between threads,
+    * so concurrent calls race on the weights but never corrupt the graph.
+    * @return true
+    */
+   @Override
+   public boolean supportsConcurrentBackpropagation() {
+      return true;
+   }
+
+   /**
+    * Fires the network on a memory and backpropagates the output error,
+    * leaving the error sigma of every non-input neuron in the workspace
+    * error buffers.  Weights are not modified.
+    * @param memory memory to learn from
+    * @param weights weight store
+    * @param work scratch buffers
+    */
+   private void calcErrorSigmas(Memory memory, DoubleBuffer weights,
+                                Workspace work) throws Exception {
+      double[][] activations = work.activations;
+      double[][] errorSigmas = work.errorSigmas;
+
+      // Fire network and gather output.
+      double[] output = forward(memory.inputVector, weights, work);
+
+      // Output layer error sigmas.
+      double[] outSigmas = errorSigmas[errorSigmas.length - 1];
+      calcBPError(output, schema.getOutputIndex(memory.output), outSigmas);
+      // With softmax and cross-entropy loss the error is already the
+      // gradient of the net input, so there is no derivative to apply.
+      if (!softmaxOutput) {
+         for (int i = 0; i < output.length; ++i) {
+            outSigmas[i] *= activationFunction.calculateDerivative(output[i]);
+         }
+      }
+
+      // Walk backwards through the hidden layers.
+      // The input layer has no weights, so it needs no error.
+      for (int layerIndex = weightOffsets.length - 1; layerIndex > 0; --layerIndex) {
+         double[] in = activations[layerIndex];
+         double[] sigmas = errorSigmas[layerIndex + 1];
+         double[] prevSigmas = errorSigmas[layerIndex];
+         int weightIndex = weightOffsets[layerIndex];
+         int inSize = in.length;
+
+         for (int col = 0; col < inSize; ++col) prevSigmas[col] = 0.0;
+
+         for (int row = 0; row < sigmas.length; ++row) {
+            double sigma = sigmas[row];
+            for (int col = 0; col < inSize; ++col) {
+               prevSigmas[col] += sigma * weights.get(weightIndex++);
+            }
+         }
+
+         for (int col = 0; col < inSize; ++col) {
+            prevSigmas[col] *= activationFunction.calculateDerivative(in[col]);
+         }
+      }
+   }
+
+   /**
+    * Gets the number of weights and biases in the graph.
+    * @return parameter count
+    */
+   @Override
+   public int getParameterCount() {
+      return parameterCount;
+   }
+
+   /**
+    * Adds the gradient of a memory to a gradient vector.
+    * @param memory memory to learn from
+    * @param gradient gradient vector
+    * @param output output signals, or null if not needed
+    */
+   @Override
+   public void accumulateGradient(Memory memory, double[] gradient,
+                                  double[] output) throws Exception {
+      DoubleBuffer weights = acquireStore();
+      try {
+         Workspace work = workspace.get();
+         double[][] activations = work.activations;
+         double[][] errorSigmas = work.errorSigmas;
+         calcErrorSigmas(memory, weights, work);
+
+         if (output != null) {
+            double[] result = activations[activations.length - 1];
+            System.arraycopy(result, 0, output, 0, result.length);
+         }
+
+         for (int layerIndex = 0; layerIndex < weightOffsets.length; ++layerIndex) {
+            double[] in = activations[layerIndex];
+            double[] sigmas = errorSigmas[layerIndex + 1];
+            int index = weightOffsets[layerIndex];
+            int biasIndex = biasOffsets[layerIndex];
+            int inSize = in.length;
+
+            for (int row = 0; row < sigmas.length; ++row, index += inSize) {
+               double sigma = sigmas[row];
+               for (int col = 0; col < inSize; ++col) {
+                  gradient[index + col] += sigma * in[col];
+               }
+               gradient[biasIndex + row] += sigma;
+            }
+         }
+      } finally {
+         releaseStore();
+      }
+   }
+
+   /**
+    * Adds a scaled gradient vector to the weights and biases.
+    * @param gradient gradient vector
+    * @param scale gradient scale
+    */
+   @Override
+   public void applyGradient(double[] gradient, double scale) {
+      DoubleBuffer weights = acquireStore();
+      try {
+         for (int i = 0; i < parameterCount; ++i) {
+            weights.put(i, weights.get(i) + scale * gradient[i]);
+         }
+      } finally {
+         releaseStore();
+      }
+   }
+
+   /**
+    * Copies the weights and biases into a vector.
+    * @param destination parameter vector
+    */
+   @Override
+   public void getWeights(double[] destination) {
+      DoubleBuffer weights = acquireStore().duplicate();
+      try {
+         weights.clear();
+         weights.get(destination, 0, parameterCount);
+      } finally {
+         releaseStore();
+      }
+   }
+
+   /**
+    * Sets the weights and biases from a vector.
+    * @param source parameter vector
+    */
+   @Override
+   public void setWeights(double[] source) {
+      DoubleBuffer weights = acquireStore().duplicate();
+      try {
+         weights.clear();
+         weights.put(source, 0, parameterCount);
+      } finally {
+         releaseStore();
+      }
+   }
+
+   /**
+    * Crosses this graph over with another off-heap neuron graph.
+    * Each child weight is taken from the left parent, the right parent,
+    * or the average of both.  The child uses a new direct buffer.
+    * @param other right parent
+    * @param params child parameters
+    * @return child graph
+    */
+   @Override
+   protected NeuronGraph crossover(NeuronGraph other, Parameters params) {
+      OffHeapNeuronGraph right = (OffHeapNeuronGraph) other;
+      OffHeapNeuronGraph child = new OffHeapNeuronGraph(schema, params);
+      DoubleBuffer childWeights = child.store;
+      Random rand = getRandom();
+
+      DoubleBuffer leftWeights = acquireStore();
+      try {
+         DoubleBuffer rightWeights = right.acquireStore();
+         try {
+            // Each layer's biases follow its weights in the store.
+            for (int i = 0; i < parameterCount; ++i) {
+               childWeights.put(i, crossValues(leftWeights.get(i), rightWeights.get(i), rand));
+            }
+         } finally {
+            right.releaseStore();
+         }
+      } finally {
+         releaseStore();
+      }
+
+      return child;
+   }
+
+   /**
+    * Mutates the neuron graph.
+    */
+   @Override
+   public void mutate() {
+      // Likelihood of mutating neuron.
+      final double kNeuronMutationRate = 0.5;
+      // Likelihood of mutating weight.
+      final double kWeightMutationRate = 0.5;
+      // Bounds of weight mutation.
+      final double kMutationBounds = 0.1;
+
+      DoubleBuffer weights = acquireStore();
+      try {
+         Random rand = getRandom();
+
+         for (int layerIndex = 0; layerIndex < weightOffsets.length; ++layerIndex) {
+            int inSize = layerSizes[layerIndex];
+            int weightIndex = weightOffsets[layerIndex];
+            int biasIndex = biasOffsets[layerIndex];
+
+            for (int row = 0; row < layerSizes[layerIndex + 1]; ++row, weightIndex += inSize) {
+               // Mutate neuron according to mutation rate.
+               if (Double.compare(rand.nextDouble(), kNeuronMutationRate) >= 0) continue;
+
+               for (int col = 0; col < inSize; ++col) {
+                  if (Double.compare(rand.nextDouble(), kWeightMutationRate) < 0) {
+                     // Generate a sigma between -kMutationBounds and +kMutationBounds.
+                     weights.put(weightIndex + col, weights.get(weightIndex + col) +
+                           rand.nextDouble() * (2 * kMutationBounds) - kMutationBounds);
+                  }
+               }
+               weights.put(biasIndex + row, weights.get(biasIndex + row) +
+                     rand.nextDouble() * (2 * kMutationBounds) - kMutationBounds);
+            }
+         }
+      } finally {
+         releaseStore();
+      }
+   }
+
+   @Override
+   public String toString() {
+      if (isClosed()) return "Network (closed)\n";
+
+      DoubleBuffer weights = acquireStore();
+      try {
+         StringBuilder sb = new StringBuilder("Network\n");
+
+         for (int layerIndex = 0; layerIndex < weightOffsets.length; ++layerIndex) {
+            sb.append("  LAYER\n");
+            int inSize = layerSizes[layerIndex];
+            int weightIndex = weightOffsets[layerIndex];
+
+            for (int row = 0; row < layerSizes[layerIndex + 1]; ++row) {
+               for (int col = 0; col < inSize; ++col) {
+                  sb.append(weights.get(weightIndex++) + "\n");
+               }
+               sb.append("\n");
+            }
+         }
+         return sb.toString();
+      } finally {
+         releaseStore();
+      }
+   }
+}
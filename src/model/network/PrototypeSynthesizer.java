@@ -0,0 +1,211 @@
+package model.network;
+
+import model.network.activation.ActivationFunction;
+import model.network.parameters.BooleanParameter;
+import model.network.parameters.ClassParameter;
+import model.network.parameters.Parameters;
+import model.network.schema.Schema;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Synthesizes a prototype input for a classification by gradient ascent
+ * on the input vector.
+ *
+ * The trained weights are held fixed and the output error is
+ * backpropagated to the inputs instead of the weights.  With a softmax
+ * output the objective is the log probability of the classification.
+ * Otherwise it is the margin between the classification's output and the
+ * strongest other output.  Each step moves the inputs a fixed distance
+ * along the gradient and clamps them back into [0, 1].  The search
+ * restarts from several random inputs and keeps the best input it visits,
+ * preferring inputs the graph classifies correctly.
+ */
+public class PrototypeSynthesizer {
+   /** Number of random starting inputs. */
+   private static final int kStarts = 8;
+
+   /** Gradient steps from each starting input. */
+   private static final int kSteps = 40;
+
+   /** Root mean square input change of the first step. */
+   private static final double kInitialStep = 0.1;
+
+   /** Step size decay per step. */
+   private static final double kStepDecay = 0.95;
+
+   /** Layer sizes, from input layer to output layer. */
+   private final int[] layerSizes;
+
+   /** Weight matrices of each non-input layer. */
+   private final double[][] weights;
+
+   /** Bias vectors of each non-input layer. */
+   private final double[][] biases;
+
+   /** Activation function shared by every neuron. */
+   private final ActivationFunction activationFunction;
+
+   /** Whether the output layer is a softmax trained with cross-entropy. */
+   private final boolean softmaxOutput;
+
+   /** Outputs of each layer. */
+   private final double[][] activations;
+
+   /** Objective gradients with respect to each layer's outputs. */
+   private final double[][] errors;
+
+   /** Number of forward and backward passes run so far. */
+   private int passCount;
+
+   /**
+    * Constructor.
+    * Copies the graph's current weights, so the graph may change afterwards.
+    * @param graph trained neuron graph
+    * @param schema input/output schema
+    * @param parameters parameters the graph was built with
+    */
+   public PrototypeSynthesizer(NeuronGraph graph, Schema schema, Parameters parameters) {
+      this.activationFunction = (ActivationFunction)
+            ((ClassParameter) parameters.getParameter(Parameters.kActivationFunction)).getSharedInstance();
+      this.softmaxOutput = ((BooleanParameter)
+            parameters.getParameter(Parameters.kSoftmaxOutput)).getValue();
+
+      layerSizes = DenseLayers.getLayerSizes(schema, parameters);
+
+      // Split the flat parameter vector into layers.
+      weights = new double[layerSizes.length - 1][];
+      biases = new double[layerSizes.length - 1][];
+      DenseLayers.splitWeights(graph, layerSizes, weights, biases);
+
+      activations = new double[layerSizes.length][];
+      errors = new double[layerSizes.length][];
+      for (int layerIndex = 0; layerIndex < layerSizes.length; ++layerIndex) {
+         activations[layerIndex] = new double[layerSizes[layerIndex]];
+         errors[layerIndex] = new double[layerSizes[layerIndex]];
+      }
+   }
+
+   /**
+    * Synthesizes a prototype input for a classification.
+    * @param classIndex index of the classification's output
+    * @param random random number generator for the starting inputs
+    * @return prototype input vector
+    */
+   public double[] synthesize(int classIndex, Random random) {
+      if (classIndex < 0 || classIndex >= layerSizes[layerSizes.length - 1])
+         throw new RuntimeException("Invalid classification index!");
+
+      int inputSize = layerSizes[0];
+      double[] input = new double[inputSize];
+      double[] best = new double[inputSize];
+      double bestObjective = Double.NEGATIVE_INFINITY;
+      boolean bestCorrect = false;
+
+      for (int start = 0; start < kStarts; ++start) {
+         for (int i = 0; i < inputSize; ++i) input[i] = random.nextDouble();
+
+         double step = kInitialStep * Math.sqrt(inputSize);
+         for (int iteration = 0; ; ++iteration) {
+            double objective = calcObjective(input, classIndex);
+            boolean correct = isCorrect(classIndex);
+            if ((correct && !bestCorrect) ||
+                  (correct == bestCorrect && objective > bestObjective)) {
+               System.arraycopy(input, 0, best, 0, inputSize);
+               bestObjective = objective;
+               bestCorrect = correct;
+            }
+            if (iteration == kSteps) break;
+
+            // Step along the gradient and project back into the unit cube.
+            double[] gradient = backpropagate(classIndex);
+            double norm = Math.sqrt(Kernels.dot(gradient, 0, gradient, 0, inputSize));
+            if (norm == 0.0) break;
+            Kernels.addScaled(step / norm, gradient, 0, input, 0, inputSize);
+            for (int i = 0; i < inputSize; ++i) {
+               input[i] = Math.min(1.0, Math.max(0.0, input[i]));
+            }
+            step *= kStepDecay;
+         }
+      }
+      return best;
+   }
+
+   /**
+    * Gets the number of forward and backward passes run so far.
+    * @return pass count
+    */
+   public int getPassCount() {
+      return passCount;
+   }
+
+   /**
+    * Fires the graph and calculates the objective for a classification.
+    * @param input input vector
+    * @param classIndex index of the classification's output
+    * @return objective value
+    */
+   private double calcObjective(double[] input, int classIndex) {
+      ++passCount;
+      System.arraycopy(input, 0, activations[0], 0, input.length);
+
+      double[] output = DenseLayers.forward(weights, biases, activationFunction,
+            softmaxOutput, activations);
+      if (softmaxOutput) {
+         return Math.log(Math.max(output[classIndex], Double.MIN_VALUE));
+      }
+      return output[classIndex] - output[findRival(classIndex)];
+   }
+
+   /**
+    * Checks whether the last fired input is classified correctly.
+    * @param classIndex index of the classification's output
+    * @return whether the classification has the strongest output
+    */
+   private boolean isCorrect(int classIndex) {
+      double[] output = activations[activations.length - 1];
+      return output.length == 1 || output[classIndex] > output[findRival(classIndex)];
+   }
+
+   /**
+    * Finds the strongest output other than a classification's.
+    * @param classIndex index of the classification's output
+    * @return index of the strongest other output
+    */
+   private int findRival(int classIndex) {
+      double[] output = activations[activations.length - 1];
+      int rival = (classIndex == 0) ? Math.min(1, output.length - 1) : 0;
+      for (int i = 0; i < output.length; ++i) {
+         if (i != classIndex && output[i] > output[rival]) rival = i;
+      }
+      return rival;
+   }
+
+   /**
+    * Backpropagates the objective of the last fired input to the inputs.
+    * @param classIndex index of the classification's output
+    * @return objective gradient with respect to the inputs
+    */
+   private double[] backpropagate(int classIndex) {
+      double[] output = activations[activations.length - 1];
+      double[] error = errors[errors.length - 1];
+
+      if (softmaxOutput) {
+         // Gradient of the log probability with respect to the net inputs.
+         for (int i = 0; i < output.length; ++i) {
+            error[i] = ((i == classIndex) ? 1.0 : 0.0) - output[i];
+         }
+      } else {
+         Arrays.fill(error, 0.0);
+         error[classIndex] = activationFunction.calculateDerivative(output[classIndex]);
+         if (output.length > 1) {
+            int rival = findRival(classIndex);
+            error[rival] = -activationFunction.calculateDerivative(output[rival]);
+         }
+      }
+
+      DenseLayers.backward(weights, activationFunction, activations, errors, true);
+      return errors[0];
+   }
+}
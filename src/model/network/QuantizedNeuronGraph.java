@@ -0,0 +1,286 @@
+package model.network;
+
+import model.network.activation.ActivationFunction;
+import model.network.activation.Identity;
+import model.network.memory.Memory;
+import model.network.parameters.BooleanParameter;
+import model.network.parameters.ClassParameter;
+import model.network.parameters.Parameters;
+import model.network.schema.Schema;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Inference-only copy of a trained neuron graph with int8 weights.
+ *
+ * Each layer's weights are quantized symmetrically with one scale per
+ * layer, and each layer's inputs are quantized with a scale calibrated on
+ * a set of memories, so that net inputs are computed as integer dot
+ * products and rescaled once per neuron.  Biases stay in double precision.
+ * The graph is read-only and may be fired from several threads at once.
+ */
+public class QuantizedNeuronGraph implements Serializable {
+   /** Largest quantized magnitude. */
+   private static final int kQuantizedMax = 127;
+
+   /** Network schema. */
+   private final Schema schema;
+
+   /** Layer sizes, from input layer to output layer. */
+   private final int[] layerSizes;
+
+   /** Quantized weight matrices of each non-input layer. */
+   private final byte[][] weights;
+
+   /** Bias vectors of each non-input layer. */
+   private final double[][] biases;
+
+   /** Weight scale of each non-input layer. */
+   private final double[] weightScales;
+
+   /** Input scale of each non-input layer. */
+   private final double[] inputScales;
+
+   /** Activation function shared by every neuron. */
+   private final ActivationFunction activationFunction;
+
+   /** Whether the output layer is a softmax trained with cross-entropy. */
+   private final boolean softmaxOutput;
+
+   /** Per-thread scratch buffers. */
+   private transient ThreadLocal<Workspace> workspace;
+
+   /**
+    * Quantized inputs and activations for one pass through the graph.
+    */
+   private static final class Workspace {
+      /** Quantized inputs of each non-input layer. */
+      final byte[][] quantized;
+      /** Outputs of each layer. */
+      final double[][] activations;
+
+      Workspace(int[] layerSizes) {
+         quantized = new byte[layerSizes.length - 1][];
+         activations = new double[layerSizes.length][];
+         for (int layerIndex = 0; layerIndex < layerSizes.length; ++layerIndex) {
+            activations[layerIndex] = new double[layerSizes[layerIndex]];
+            if (layerIndex < quantized.length)
+               quantized[layerIndex] = new byte[layerSizes[layerIndex]];
+         }
+      }
+   }
+
+   /**
+    * Quantizes a trained neuron graph.
+    * @param graph trained neuron graph
+    * @param schema input/output schema
+    * @param parameters parameters the graph was built with
+    * @param calibration memories used to calibrate the input scales
+    */
+   public QuantizedNeuronGraph(NeuronGraph graph, Schema schema, Parameters parameters,
+                               List<Memory> calibration) {
+      if (calibration.isEmpty())
+         throw new RuntimeException("Quantization requires calibration memories!");
+
+      this.schema = schema;
+      this.activationFunction = (ActivationFunction)
+            ((ClassParameter) parameters.getParameter(Parameters.kActivationFunction)).getSharedInstance();
+      this.softmaxOutput = ((BooleanParameter)
+            parameters.getParameter(Parameters.kSoftmaxOutput)).getValue();
+
+      layerSizes = DenseLayers.getLayerSizes(schema, parameters);
+
+      // Split the flat parameter vector into layers.
+      double[][] fullWeights = new double[layerSizes.length - 1][];
+      biases = new double[layerSizes.length - 1][];
+      DenseLayers.splitWeights(graph, layerSizes, fullWeights, biases);
+
+      // Quantize weights with one scale per layer.
+      weights = new byte[fullWeights.length][];
+      weightScales = new double[fullWeights.length];
+      for (int layerIndex = 0; layerIndex < fullWeights.length; ++layerIndex) {
+         double[] layerWeights = fullWeights[layerIndex];
+         weightScales[layerIndex] = calcScale(maxMagnitude(layerWeights, layerWeights.length));
+         weights[layerIndex] = new byte[layerWeights.length];
+         quantize(layerWeights, weights[layerIndex], weightScales[layerIndex]);
+      }
+
+      inputScales = calibrate(fullWeights, calibration);
+      createWorkspace();
+   }
+
+   /**
+    * Finds the input scale of each layer from the largest input the
+    * full precision graph gives that layer on the calibration memories.
+    * @param fullWeights full precision weights
+    * @param calibration calibration memories
+    * @return input scales
+    */
+   private double[] calibrate(double[][] fullWeights, List<Memory> calibration) {
+      double[] maxInputs = new double[fullWeights.length];
+      double[][] activations = new Workspace(layerSizes).activations;
+
+      for (int i = 0; i < calibration.size(); ++i) {
+         double[] input = calibration.get(i).inputVector;
+         System.arraycopy(input, 0, activations[0], 0, input.length);
+         DenseLayers.forward(fullWeights, biases, activationFunction, softmaxOutput, activations);
+
+         for (int layerIndex = 0; layerIndex < maxInputs.length; ++layerIndex) {
+            double[] in = activations[layerIndex];
+            maxInputs[layerIndex] = Math.max(maxInputs[layerIndex], maxMagnitude(in, in.length));
+         }
+      }
+
+      double[] scales = new double[maxInputs.length];
+      for (int layerIndex = 0; layerIndex < scales.length; ++layerIndex) {
+         scales[layerIndex] = calcScale(maxInputs[layerIndex]);
+      }
+      return scales;
+   }
+
+   /**
+    * Gets the largest magnitude in a vector.
+    * @param values vector
+    * @param length number of values
+    * @return largest magnitude
+    */
+   private static double maxMagnitude(double[] values, int length) {
+      double max = 0.0;
+      for (int i = 0; i < length; ++i) {
+         max = Math.max(max, Math.abs(values[i]));
+      }
+      return max;
+   }
+
+   /**
+    * Calculates the scale that maps a magnitude to the largest quantized value.
+    * @param maxMagnitude largest magnitude to represent
+    * @return scale
+    */
+   private static double calcScale(double maxMagnitude) {
+      return (maxMagnitude > 0.0) ? maxMagnitude / kQuantizedMax : 1.0;
+   }
+
+   /**
+    * Quantizes a vector, rounding to nearest and clamping out of range values.
+    * @param values full precision values
+    * @param quantized quantized values
+    * @param scale quantization scale
+    */
+   private static void quantize(double[] values, byte[] quantized, double scale) {
+      double inverse = 1.0 / scale;
+      for (int i = 0; i < quantized.length; ++i) {
+         long q = Math.round(values[i] * inverse);
+         if (q > kQuantizedMax) q = kQuantizedMax;
+         else if (q < -kQuantizedMax) q = -kQuantizedMax;
+         quantized[i] = (byte) q;
+      }
+   }
+
+   /**
+    * Gets the activation function applied by a layer's neurons.
+    * A softmax output layer passes its net inputs through, to be
+    * normalized as a whole.
+    * @param layerIndex weight layer index
+    * @return activation function
+    */
+   private ActivationFunction getLayerFunction(int layerIndex) {
+      return (softmaxOutput && layerIndex == weights.length - 1) ?
+            Identity.instance : activationFunction;
+   }
+
+   /**
+    * Sets up the per-thread scratch buffers.
+    */
+   private void createWorkspace() {
+      final int[] sizes = layerSizes;
+      workspace = new ThreadLocal<Workspace>() {
+         @Override
+         protected Workspace initialValue() {
+            return new Workspace(sizes);
+         }
+      };
+   }
+
+   /**
+    * Restores the transient scratch buffers after deserialization.
+    * @param in object input stream
+    */
+   private void readObject(ObjectInputStream in)
+         throws IOException, ClassNotFoundException {
+      in.defaultReadObject();
+      createWorkspace();
+   }
+
+   /**
+    * Fires the quantized graph and returns output.
+    * @param input input signals
+    * @return output signals
+    */
+   public double[] fire(double[] input) {
+      double[] output = new double[layerSizes[layerSizes.length - 1]];
+      fire(input, output);
+      return output;
+   }
+
+   /**
+    * Fires the quantized graph into an output buffer without allocating.
+    * @param input input signals
+    * @param output output signals
+    */
+   public void fire(double[] input, double[] output) {
+      // Validate input size.
+      if (input.length != layerSizes[0])
+         throw new RuntimeException("Network fired with improper input!");
+
+      Workspace work = workspace.get();
+      double[][] activations = work.activations;
+      System.arraycopy(input, 0, activations[0], 0, input.length);
+
+      for (int layerIndex = 0; layerIndex < weights.length; ++layerIndex) {
+         byte[] in = work.quantized[layerIndex];
+         double[] out = activations[layerIndex + 1];
+         byte[] layerWeights = weights[layerIndex];
+         double[] layerBiases = biases[layerIndex];
+         double scale = weightScales[layerIndex] * inputScales[layerIndex];
+         ActivationFunction function = getLayerFunction(layerIndex);
+         int inSize = in.length;
+
+         quantize(activations[layerIndex], in, inputScales[layerIndex]);
+
+         for (int row = 0, offset = 0; row < out.length; ++row, offset += inSize) {
+            int net = Kernels.dot(in, 0, layerWeights, offset, inSize);
+            out[row] = function.calculate(net * scale + layerBiases[row]);
+         }
+      }
+
+      double[] result = activations[activations.length - 1];
+      if (softmaxOutput) Kernels.softmax(result, 0, result.length);
+      System.arraycopy(result, 0, output, 0, result.length);
+   }
+
+   /**
+    * Queries the quantized graph given an input object.
+    * @param in input object
+    * @return output object
+    * @throws Exception if the input does not fit the network schema
+    */
+   public Object query(Object in) throws Exception {
+      return schema.translateOutput(fire(schema.encodeInput(in)));
+   }
+
+   /**
+    * Gets the number of bytes taken by the weights, biases and scales.
+    * @return parameter footprint in bytes
+    */
+   public long getParameterBytes() {
+      long bytes = 8L * (weightScales.length + inputScales.length);
+      for (int layerIndex = 0; layerIndex < weights.length; ++layerIndex) {
+         bytes += weights[layerIndex].length + 8L * biases[layerIndex].length;
+      }
+      return bytes;
+   }
+}
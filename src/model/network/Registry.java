@@ -3,6 +3,8 @@ package model.network;
 import model.network.memory.*;
 import model.network.schema.*;
 import model.network.activation.*;
+import model.network.optimizer.*;
+import model.network.schedule.*;
 
 /**
  * Created by gpdavis on 6/4/15.
@@ -17,7 +19,12 @@ public class Registry {
          new Class[]{
                Sigmoid.class,
                SigmoidEstimate.class,
-               SigmoidClip.class
+               SigmoidClip.class,
+               SigmoidFastExp.class,
+               SigmoidTable.class,
+               Tanh.class,
+               ReLU.class,
+               LeakyReLU.class
          };
 
    public static final Class<? extends ActivationFunction>[] memoryModuleClasses =
@@ -26,4 +33,37 @@ public class Registry {
                ShortTermMemoryModule.class,
                ClassifierMemoryModule.class
          };
+
+   public static final Class<? extends Optimizer>[] optimizerClasses =
+         new Class[]{
+               SGD.class,
+               Momentum.class,
+               Nesterov.class,
+               RMSProp.class,
+               Adam.class
+         };
+
+   public static final Class<? extends NeuronGraph>[] neuronGraphClasses =
+         new Class[]{
+               DenseNeuronGraph.class,
+               FloatNeuronGraph.class,
+               LinkedNeuronGraph.class,
+               OffHeapNeuronGraph.class
+         };
+
+   public static final Class<? extends NetworkTrainer>[] trainerClasses =
+         new Class[]{
+               NetworkTrainer.class,
+               HogwildTrainer.class,
+               LBFGSTrainer.class,
+               ConjugateGradientTrainer.class
+         };
+
+   public static final Class<? extends LearningRateSchedule>[] scheduleClasses =
+         new Class[]{
+               ConstantSchedule.class,
+               StepSchedule.class,
+               ExponentialSchedule.class,
+               CosineSchedule.class
+         };
 }
@@ -0,0 +1,46 @@
+package model.network.activation;
+
+import model.network.parameters.Parameter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Passes net input through unchanged.
+ * Used for layers whose outputs are transformed as a whole, such as a
+ * softmax output layer.
+ */
+public class Identity extends ActivationFunction {
+   public static Map<String, Parameter> defaultParameters =
+         new LinkedHashMap<String, Parameter>();
+
+   /** Shared instance. */
+   public static final Identity instance = new Identity(defaultParameters);
+
+   /**
+    * Default constructor.
+    * @param params function parameters
+    */
+   public Identity(Map<String, Parameter> params) {
+   }
+
+   /**
+    * Returns the input value.
+    * @param sigma input value
+    * @return input value
+    */
+   @Override
+   public double calculate(double sigma) {
+      return sigma;
+   }
+
+   /**
+    * The derivative of the identity is one everywhere.
+    * @param out identity calculation
+    * @return derivative
+    */
+   @Override
+   public double calculateDerivative(double out) {
+      return 1.0;
+   }
+}
@@ -0,0 +1,54 @@
+package model.network.activation;
+
+import model.network.parameters.BoundedParameter;
+import model.network.parameters.Parameter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Models the leaky rectified linear unit, which scales negative inputs
+ * by a small slope instead of zeroing them, so that neurons with negative
+ * net input still learn.
+ */
+public class LeakyReLU extends ActivationFunction {
+   /** Slope for negative inputs. */
+   private double leak;
+
+   public static String kLeak = "Leak";
+   public static Map<String, Parameter> defaultParameters;
+   static {
+      defaultParameters = new LinkedHashMap<String, Parameter>();
+      defaultParameters.put(kLeak,
+            new BoundedParameter<Double>(kLeak, 0.01, 0.0, 1.0));
+   }
+
+   /**
+    * Default constructor.
+    * @param params function parameters
+    */
+   public LeakyReLU(Map<String, Parameter> params) {
+      this.leak = (Double) params.get(kLeak).getValue();
+   }
+
+   /**
+    * Performs the leaky rectifier calculation.
+    * @param sigma input value
+    * @return rectified value
+    */
+   @Override
+   public double calculate(double sigma) {
+      return (sigma > 0.0) ? sigma : leak * sigma;
+   }
+
+   /**
+    * Calculates the derivative of the leaky rectifier given the result
+    * of the rectifier calculation.
+    * @param out rectifier calculation
+    * @return derivative
+    */
+   @Override
+   public double calculateDerivative(double out) {
+      return (out > 0.0) ? 1.0 : leak;
+   }
+}
@@ -0,0 +1,43 @@
+package model.network.activation;
+
+import model.network.parameters.Parameter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Models the rectified linear unit, which passes positive inputs and
+ * zeroes negative ones.
+ */
+public class ReLU extends ActivationFunction {
+   public static Map<String, Parameter> defaultParameters =
+         new LinkedHashMap<String, Parameter>();
+
+   /**
+    * Default constructor.
+    * @param params function parameters
+    */
+   public ReLU(Map<String, Parameter> params) {
+   }
+
+   /**
+    * Performs the rectifier calculation.
+    * @param sigma input value
+    * @return rectified value
+    */
+   @Override
+   public double calculate(double sigma) {
+      return Math.max(0.0, sigma);
+   }
+
+   /**
+    * Calculates the derivative of the rectifier given the result
+    * of the rectifier calculation.
+    * @param out rectifier calculation
+    * @return derivative
+    */
+   @Override
+   public double calculateDerivative(double out) {
+      return (out > 0.0) ? 1.0 : 0.0;
+   }
+}
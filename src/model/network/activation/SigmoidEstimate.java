@@ -3,10 +3,10 @@ package model.network.activation;
 import model.network.parameters.BoundedParameter;
 import model.network.parameters.Parameter;
 
-import java.util.List;
-import java.util.Map;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Models the Sigmoid function using precalculated values to speed up computation.
@@ -30,10 +30,18 @@ public class SigmoidEstimate extends Sigmoid {
    }
 
    /**
-    * Map of values to Sigmoid outputs.
-    * Inputs are multiplied by granularity so they are discrete.
+    * Estimation tables shared by every instance in the JVM,
+    * keyed by slope parameter and granularity.
+    */
+   private static final ConcurrentMap<String, double[]> sharedTables =
+         new ConcurrentHashMap<String, double[]>();
+
+   /**
+    * Sigmoid outputs at evenly spaced inputs from -estimationBounds to
+    * +estimationBounds, granularity points per integer.
+    * Not serialized; looked up again when first used after loading.
     */
-   private HashMap<Integer, Double> precalculated;
+   private transient volatile double[] precalculated;
 
    /**
     * Constructor.
@@ -43,22 +51,32 @@ public class SigmoidEstimate extends Sigmoid {
       super(params);
       this.granularity = (Integer) params.get(kGranularity).getValue();
       this.estimationBounds = (int) Math.ceil((double) 7 / slopeParameter);
-      initializeEstimations();
    }
 
    /**
-    * Initializes sigmoid estimations.
+    * Gets the estimation table, building the shared table if this is
+    * the first instance with these parameters.
+    * @return estimation table
     */
-   private void initializeEstimations() {
-      this.precalculated = new HashMap<Integer, Double>();
-
-      // Precalculate estimation values.
-      for (int i = -estimationBounds; i <= estimationBounds; ++i) {
-         for (int tick = 0; tick < granularity; ++tick) {
-            this.precalculated.put(i * granularity + tick,
-               super.calculate((double) i + (double)tick / granularity));
+   private double[] getEstimations() {
+      double[] table = precalculated;
+      if (table != null) return table;
+
+      String key = slopeParameter + ":" + granularity;
+      table = sharedTables.get(key);
+      if (table == null) {
+         // Precalculate estimation values.
+         table = new double[2 * estimationBounds * granularity + 1];
+         for (int i = 0; i < table.length; ++i) {
+            table[i] = super.calculate((double) i / granularity - estimationBounds);
          }
+
+         double[] existing = sharedTables.putIfAbsent(key, table);
+         if (existing != null) table = existing;
       }
+
+      precalculated = table;
+      return table;
    }
 
    /**
@@ -68,37 +86,28 @@ public class SigmoidEstimate extends Sigmoid {
     */
    @Override
    public double calculate(double sigma) {
-      try {
-         if (Double.compare(sigma, estimationBounds) > 0) return 1.0;
-         if (Double.compare(sigma, -estimationBounds) < 0) return -1.0;
-
-         // Calculate interpolation bounds.
-         int x0 = (int) Math.floor(sigma * granularity);
-         int x1 = (int) Math.ceil(sigma * granularity);
-
-         // Calculate interpolation values.
-         double y0 = precalculated.get(x0);
-         double y1 = precalculated.get(x1);
-         return interpolate(sigma, y0, y1,
-            (double)x0 / granularity, (double)x1 / granularity);
-      } catch (Exception e) {
-         System.out.println("Sigmoid failed on input " + sigma);
-         System.exit(0);
-         return 0.0;
-      }
+      if (Double.compare(sigma, estimationBounds) > 0) return 1.0;
+      if (Double.compare(sigma, -estimationBounds) < 0) return 0.0;
+
+      double[] table = getEstimations();
+
+      // Calculate interpolation bounds.
+      double position = (sigma + estimationBounds) * granularity;
+      int x0 = (int) position;
+      if (x0 >= table.length - 1) return table[table.length - 1];
+
+      // Calculate interpolation values.
+      return interpolate(position - x0, table[x0], table[x0 + 1]);
    }
 
    /**
     * Calculates a linear interpolation.
-    * @param x input
+    * @param fraction position between the left and right x values
     * @param y0 left y value
     * @param y1 right y value
-    * @param x0 left x value
-    * @param x1 right x value
     * @return interpolated result
     */
-   private double interpolate(double x, double y0, double y1,
-                              double x0, double x1) {
-      return y0 + ((y1 - y0) * ((x - x0) / (x1 - x0)));
+   private double interpolate(double fraction, double y0, double y1) {
+      return y0 + (y1 - y0) * fraction;
    }
 }
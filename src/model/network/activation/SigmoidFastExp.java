@@ -0,0 +1,42 @@
+package model.network.activation;
+
+import model.network.parameters.Parameter;
+
+import java.util.Map;
+
+/**
+ * Models the Sigmoid function using a bit-trick estimate of the
+ * exponential.  The estimate writes a scaled input straight into the
+ * exponent bits of a double (Schraudolph's method), which costs one
+ * multiply-add instead of a call to Math.exp.
+ */
+public class SigmoidFastExp extends Sigmoid {
+   /** 2^20 / ln(2), scaling an input into the high word exponent field. */
+   private static final double kExpScale = 1512775.3951951856;
+
+   /** Exponent bias 1023 * 2^20, less a correction that minimizes error. */
+   private static final double kExpOffset = 1072632447.0;
+
+   /** Input magnitude beyond which the estimate would overflow. */
+   private static final double kInputLimit = 700.0;
+
+   /**
+    * Constructor.
+    * @param params function parameters
+    */
+   public SigmoidFastExp(Map<String, Parameter> params) {
+      super(params);
+   }
+
+   /**
+    * Performs the Sigmoid calculation with an estimated exponential.
+    * @param sigma input value
+    * @return estimated sigmoid value
+    */
+   @Override
+   public double calculate(double sigma) {
+      double x = Math.max(-kInputLimit, Math.min(kInputLimit, -sigma * slopeParameter));
+      double exp = Double.longBitsToDouble((long) (kExpScale * x + kExpOffset) << 32);
+      return 1 / (1 + exp);
+   }
+}
@@ -0,0 +1,43 @@
+package model.network.activation;
+
+import model.network.parameters.Parameter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Models the hyperbolic tangent function.
+ * Outputs range from -1.0 to 1.0.
+ */
+public class Tanh extends ActivationFunction {
+   public static Map<String, Parameter> defaultParameters =
+         new LinkedHashMap<String, Parameter>();
+
+   /**
+    * Default constructor.
+    * @param params function parameters
+    */
+   public Tanh(Map<String, Parameter> params) {
+   }
+
+   /**
+    * Performs the hyperbolic tangent calculation.
+    * @param sigma input value
+    * @return tanh value
+    */
+   @Override
+   public double calculate(double sigma) {
+      return Math.tanh(sigma);
+   }
+
+   /**
+    * Calculates the derivative of the hyperbolic tangent given the result
+    * of the tanh calculation.
+    * @param out tanh calculation
+    * @return derivative
+    */
+   @Override
+   public double calculateDerivative(double out) {
+      return 1 - out * out;
+   }
+}
@@ -82,6 +82,8 @@ public abstract class MemoryModule implements Serializable {
 
    /**
     * Clones this memory module.
+    * Memories were checked against the schema when they were added, so
+    * they are copied straight into the clone's lists.
     * @return clone
     */
    public MemoryModule clone() {
@@ -91,7 +93,7 @@ public abstract class MemoryModule implements Serializable {
          copy = this.getClass().getConstructor(Schema.class).newInstance(schema);
 
          for (Object key : memoryMap.keySet()) {
-            copy.add(memoryMap.get(key));
+            copy.memoryMap.get(key).addAll(memoryMap.get(key));
          }
       } catch (Exception e) {
          System.err.println("Error cloning memory module!");
@@ -0,0 +1,82 @@
+package model.network.optimizer;
+
+import model.network.parameters.BoundedParameter;
+import model.network.parameters.Parameter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Adam.
+ * Combines momentum with RMSProp-style scaling, using running averages of
+ * each weight's gradient and squared gradient corrected for their bias
+ * towards zero in early steps.
+ */
+public class Adam extends Optimizer {
+   /** Decay rate of the gradient average. */
+   private double beta1;
+
+   /** Decay rate of the squared gradient average. */
+   private double beta2;
+
+   /** Term added to the root mean square to avoid division by zero. */
+   private double epsilon;
+
+   /** Running average of each weight's gradient. */
+   private double[] mean;
+
+   /** Running average of each weight's squared gradient. */
+   private double[] meanSquare;
+
+   /** Powers of the decay rates at the current step. */
+   private double beta1Power;
+   private double beta2Power;
+
+   public static String kBeta1 = "Beta 1";
+   public static String kBeta2 = "Beta 2";
+   public static String kEpsilon = "Epsilon";
+   public static Map<String, Parameter> defaultParameters;
+   static {
+      defaultParameters = new LinkedHashMap<String, Parameter>();
+      defaultParameters.put(kBeta1,
+            new BoundedParameter<Double>(kBeta1, 0.9, 0.0, kMaxDecayRate));
+      defaultParameters.put(kBeta2,
+            new BoundedParameter<Double>(kBeta2, 0.999, 0.0, kMaxDecayRate));
+      defaultParameters.put(kEpsilon,
+            new BoundedParameter<Double>(kEpsilon, 1e-8, 0.0, null));
+   }
+
+   /**
+    * Default constructor.
+    * @param params optimizer parameters
+    */
+   public Adam(Map<String, Parameter> params) {
+      this.beta1 = (Double) params.get(kBeta1).getValue();
+      this.beta2 = (Double) params.get(kBeta2).getValue();
+      this.epsilon = (Double) params.get(kEpsilon).getValue();
+   }
+
+   @Override
+   protected void calculateUpdate(double[] gradient, double[] update) {
+      beta1Power *= beta1;
+      beta2Power *= beta2;
+      double meanCorrection = 1 / (1 - beta1Power);
+      double meanSquareCorrection = 1 / (1 - beta2Power);
+
+      for (int i = 0; i < gradient.length; ++i) {
+         double g = gradient[i];
+         mean[i] = beta1 * mean[i] + (1 - beta1) * g;
+         meanSquare[i] = beta2 * meanSquare[i] + (1 - beta2) * g * g;
+         update[i] = (mean[i] * meanCorrection) /
+               (Math.sqrt(meanSquare[i] * meanSquareCorrection) + epsilon);
+      }
+   }
+
+   @Override
+   public void reset() {
+      mean = new double[getLength()];
+      meanSquare = new double[getLength()];
+      beta1Power = 1.0;
+      beta2Power = 1.0;
+   }
+}
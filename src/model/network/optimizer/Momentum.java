@@ -0,0 +1,49 @@
+package model.network.optimizer;
+
+import model.network.parameters.BoundedParameter;
+import model.network.parameters.Parameter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Gradient descent with momentum.
+ * Updates follow a velocity that accumulates past gradients, which damps
+ * oscillation across steep directions and speeds travel along shallow ones.
+ */
+public class Momentum extends Optimizer {
+   /** Fraction of the velocity kept each step. */
+   protected double momentum;
+
+   /** Velocity of each weight. */
+   protected double[] velocity;
+
+   public static String kMomentum = "Momentum";
+   public static Map<String, Parameter> defaultParameters;
+   static {
+      defaultParameters = new LinkedHashMap<String, Parameter>();
+      defaultParameters.put(kMomentum,
+            new BoundedParameter<Double>(kMomentum, 0.9, 0.0, kMaxDecayRate));
+   }
+
+   /**
+    * Default constructor.
+    * @param params optimizer parameters
+    */
+   public Momentum(Map<String, Parameter> params) {
+      this.momentum = (Double) params.get(kMomentum).getValue();
+   }
+
+   @Override
+   protected void calculateUpdate(double[] gradient, double[] update) {
+      for (int i = 0; i < gradient.length; ++i) {
+         velocity[i] = momentum * velocity[i] + gradient[i];
+         update[i] = velocity[i];
+      }
+   }
+
+   @Override
+   public void reset() {
+      velocity = new double[getLength()];
+   }
+}
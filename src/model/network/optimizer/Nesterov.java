@@ -0,0 +1,30 @@
+package model.network.optimizer;
+
+import model.network.parameters.Parameter;
+
+import java.util.Map;
+
+/**
+ * Gradient descent with Nesterov momentum.
+ * Each update looks ahead by applying the new velocity on top of the
+ * gradient, which corrects overshooting sooner than plain momentum.
+ */
+public class Nesterov extends Momentum {
+   public static Map<String, Parameter> defaultParameters = Momentum.defaultParameters;
+
+   /**
+    * Default constructor.
+    * @param params optimizer parameters
+    */
+   public Nesterov(Map<String, Parameter> params) {
+      super(params);
+   }
+
+   @Override
+   protected void calculateUpdate(double[] gradient, double[] update) {
+      for (int i = 0; i < gradient.length; ++i) {
+         velocity[i] = momentum * velocity[i] + gradient[i];
+         update[i] = gradient[i] + momentum * velocity[i];
+      }
+   }
+}
@@ -0,0 +1,58 @@
+package model.network.optimizer;
+
+import model.network.NeuronGraph;
+
+import java.io.Serializable;
+
+/**
+ * Turns gradients into weight updates.
+ * Optimizers that adapt the step per weight keep their state in primitive
+ * arrays laid out like the gradient vector, so a new instance must be used
+ * for each neuron graph.
+ */
+public abstract class Optimizer implements Serializable {
+   /**
+    * Largest decay rate an optimizer accepts.  A rate of 1 never lets go
+    * of the first gradients, and Adam's bias correction divides by zero.
+    */
+   protected static final double kMaxDecayRate = 0.9999;
+
+   /** Update vector handed to the neuron graph. */
+   private double[] update;
+
+   /**
+    * Applies one update to a neuron graph.
+    * @param graph neuron graph to update
+    * @param gradient gradient vector averaged over a batch, pointing in
+    *                 the direction of descent
+    * @param learningRate learning rate
+    */
+   public void step(NeuronGraph graph, double[] gradient, double learningRate) {
+      if (update == null || update.length != gradient.length) {
+         update = new double[gradient.length];
+         reset();
+      }
+      calculateUpdate(gradient, update);
+      graph.applyGradient(update, learningRate);
+   }
+
+   /**
+    * Calculates the update for a gradient, before the learning rate.
+    * @param gradient gradient vector
+    * @param update update vector
+    */
+   protected abstract void calculateUpdate(double[] gradient, double[] update);
+
+   /**
+    * Clears the per-weight state, for example after the graph is reset.
+    */
+   public abstract void reset();
+
+   /**
+    * Gets the length of the gradient vectors being optimized.
+    * @return gradient length
+    */
+   protected int getLength() {
+      return (update == null) ? 0 : update.length;
+   }
+}
@@ -0,0 +1,58 @@
+package model.network.optimizer;
+
+import model.network.parameters.BoundedParameter;
+import model.network.parameters.Parameter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * RMSProp.
+ * Each weight's step is divided by a running root mean square of its
+ * gradients, so weights with large gradients take proportionally smaller
+ * steps.
+ */
+public class RMSProp extends Optimizer {
+   /** Decay rate of the mean square. */
+   private double decayRate;
+
+   /** Term added to the root mean square to avoid division by zero. */
+   private double epsilon;
+
+   /** Running mean square of each weight's gradient. */
+   private double[] meanSquare;
+
+   public static String kDecayRate = "Decay Rate";
+   public static String kEpsilon = "Epsilon";
+   public static Map<String, Parameter> defaultParameters;
+   static {
+      defaultParameters = new LinkedHashMap<String, Parameter>();
+      defaultParameters.put(kDecayRate,
+            new BoundedParameter<Double>(kDecayRate, 0.9, 0.0, kMaxDecayRate));
+      defaultParameters.put(kEpsilon,
+            new BoundedParameter<Double>(kEpsilon, 1e-8, 0.0, null));
+   }
+
+   /**
+    * Default constructor.
+    * @param params optimizer parameters
+    */
+   public RMSProp(Map<String, Parameter> params) {
+      this.decayRate = (Double) params.get(kDecayRate).getValue();
+      this.epsilon = (Double) params.get(kEpsilon).getValue();
+   }
+
+   @Override
+   protected void calculateUpdate(double[] gradient, double[] update) {
+      for (int i = 0; i < gradient.length; ++i) {
+         double g = gradient[i];
+         meanSquare[i] = decayRate * meanSquare[i] + (1 - decayRate) * g * g;
+         update[i] = g / (Math.sqrt(meanSquare[i]) + epsilon);
+      }
+   }
+
+   @Override
+   public void reset() {
+      meanSquare = new double[getLength()];
+   }
+}
@@ -0,0 +1,43 @@
+package model.network.optimizer;
+
+import model.network.NeuronGraph;
+import model.network.parameters.Parameter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Plain stochastic gradient descent.
+ * Each update is the gradient scaled by the learning rate.
+ */
+public class SGD extends Optimizer {
+   public static Map<String, Parameter> defaultParameters =
+         new LinkedHashMap<String, Parameter>();
+
+   /**
+    * Default constructor.
+    * @param params optimizer parameters
+    */
+   public SGD(Map<String, Parameter> params) {
+   }
+
+   /**
+    * Applies the gradient directly.
+    * @param graph neuron graph to update
+    * @param gradient gradient vector, pointing in the direction of descent
+    * @param learningRate learning rate
+    */
+   @Override
+   public void step(NeuronGraph graph, double[] gradient, double learningRate) {
+      graph.applyGradient(gradient, learningRate);
+   }
+
+   @Override
+   protected void calculateUpdate(double[] gradient, double[] update) {
+      System.arraycopy(gradient, 0, update, 0, gradient.length);
+   }
+
+   @Override
+   public void reset() {
+   }
+}
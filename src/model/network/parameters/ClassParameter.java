@@ -9,6 +9,9 @@ import java.util.Map;
 public class ClassParameter extends EnumeratedParameter<Class> {
    private Map<String, Parameter> subParameters;
 
+   /** Instance shared by everything built from this parameter. */
+   private transient Object sharedInstance;
+
    public ClassParameter(String name, Class value, Class[] enumerations) {
       super(name, value, enumerations);
       setValue(value);
@@ -22,6 +25,16 @@ public class ClassParameter extends EnumeratedParameter<Class> {
       }
    }
 
+   /**
+    * Gets an instance shared by every caller until the value changes.
+    * Only use this for classes whose instances are immutable.
+    * @return shared instance
+    */
+   public synchronized Object getSharedInstance() {
+      if (sharedInstance == null) sharedInstance = instantiate();
+      return sharedInstance;
+   }
+
    public boolean setValue(Class newValue) {
       try {
          return setValue(newValue,
@@ -38,6 +51,7 @@ public class ClassParameter extends EnumeratedParameter<Class> {
          try {
             this.value = newValue;
             this.subParameters = subParams;
+            this.sharedInstance = null;
             return true;
          } catch (Exception e) {
             return false;
@@ -70,7 +84,18 @@ public class ClassParameter extends EnumeratedParameter<Class> {
       return sb.toString();
    }
 
+   /**
+    * Clones this parameter along with its sub parameters, so customized
+    * sub parameter values carry over and later changes stay separate.
+    * @return clone of parameter
+    */
    public ClassParameter clone() {
-      return new ClassParameter(name, value, enumerations);
+      ClassParameter clone = new ClassParameter(name, value, enumerations);
+      Map<String, Parameter> newSubParams = new LinkedHashMap<String, Parameter>();
+      for (Parameter subParam : subParameters.values()) {
+         newSubParams.put(subParam.name, subParam.clone());
+      }
+      clone.setValue(value, newSubParams);
+      return clone;
    }
 }
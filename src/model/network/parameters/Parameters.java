@@ -1,8 +1,13 @@
 package model.network.parameters;
 
+import model.network.DenseNeuronGraph;
+import model.network.Network;
+import model.network.NetworkTrainer;
 import model.network.Registry;
 import model.network.activation.*;
 import model.network.memory.BasicMemoryModule;
+import model.network.optimizer.SGD;
+import model.network.schedule.ConstantSchedule;
 
 import java.io.Serializable;
 import java.util.*;
@@ -18,9 +23,19 @@ public class Parameters implements Serializable {
    public static final String kAcceptableTestError = "Acceptable Test Error";
    public static final String kAcceptablePercentCorrect = "Acceptable Test Percentage Correct";
    public static final String kIterationCap = "Training iteration cap";
+   public static final String kBatchSize = "Batch Size";
+   public static final String kTrainingThreads = "Training Threads";
    public static final String kLiveTraining = "Live Training";
    public static final String kMemoryModule = "Memory Module";
    public static final String kActivationFunction = "Activation Function";
+   public static final String kSoftmaxOutput = "Softmax Output";
+   public static final String kNeuronGraph = "Neuron Graph";
+   public static final String kTrainer = "Trainer";
+   public static final String kOptimizer = "Optimizer";
+   public static final String kLearningRateSchedule = "Learning Rate Schedule";
+   public static final String kRestartMode = "Restart Mode";
+   public static final String kRestartNoise = "Restart Noise";
+   public static final String kPrototypeGenerator = "Prototype Generator";
 
    /** Parameters map. */
    private Map<String, Parameter> parameters;
@@ -59,6 +74,19 @@ public class Parameters implements Serializable {
       /** Acceptable percentage correct for learning termination. */
       parameters.put(kIterationCap,
             new BoundedParameter<Integer>(kIterationCap, 20000, 1, 1000000));
+      /**
+       * Number of memories whose gradients are accumulated before each
+       * weight update.  1 updates the weights after every memory.
+       */
+      parameters.put(kBatchSize,
+            new BoundedParameter<Integer>(kBatchSize, 1, 1, null));
+      /**
+       * Number of training threads.
+       * The default trainer splits each batch across them, so they only
+       * help with a batch size above 1.
+       */
+      parameters.put(kTrainingThreads,
+            new BoundedParameter<Integer>(kTrainingThreads, 1, 1, null));
       /** Live training flag. */
       parameters.put(kLiveTraining,
             new BooleanParameter(kLiveTraining, true));
@@ -72,6 +100,52 @@ public class Parameters implements Serializable {
       parameters.put(kActivationFunction,
             new ClassParameter(kActivationFunction,
                   SigmoidEstimate.class, Registry.activationFunctionClasses));
+      /**
+       * Softmax output layer flag.
+       * Output neurons are normalized into class probabilities and
+       * trained with cross-entropy loss instead of squared error.
+       */
+      parameters.put(kSoftmaxOutput,
+            new BooleanParameter(kSoftmaxOutput, false));
+
+      /** Neuron graph implementation. */
+      parameters.put(kNeuronGraph,
+            new ClassParameter(kNeuronGraph,
+                  DenseNeuronGraph.class, Registry.neuronGraphClasses));
+
+      /** Training strategy. */
+      parameters.put(kTrainer,
+            new ClassParameter(kTrainer,
+                  NetworkTrainer.class, Registry.trainerClasses));
+
+      /** Weight update rule used by gradient based trainers. */
+      parameters.put(kOptimizer,
+            new ClassParameter(kOptimizer,
+                  SGD.class, Registry.optimizerClasses));
+
+      /** Learning rate over the course of training, from the learning constant. */
+      parameters.put(kLearningRateSchedule,
+            new ClassParameter(kLearningRateSchedule,
+                  ConstantSchedule.class, Registry.scheduleClasses));
+      /**
+       * What a stale network is restarted from.
+       * Either randomized weights, or the best weights so far with noise added.
+       */
+      parameters.put(kRestartMode,
+            new EnumeratedParameter<String>(kRestartMode,
+                  NetworkTrainer.kResetRestart, new String[] {
+                        NetworkTrainer.kResetRestart, NetworkTrainer.kPerturbRestart }));
+      /** Standard deviation of the noise added to weights when perturbing. */
+      parameters.put(kRestartNoise,
+            new BoundedParameter<Double>(kRestartNoise, 0.1, 0.0, null));
+      /**
+       * How classification prototypes are searched for.
+       * Either gradient ascent on the inputs, or a genetic algorithm.
+       */
+      parameters.put(kPrototypeGenerator,
+            new EnumeratedParameter<String>(kPrototypeGenerator,
+                  Network.kGeneticPrototypes, new String[] {
+                        Network.kGradientPrototypes, Network.kGeneticPrototypes }));
    }
 
    /**
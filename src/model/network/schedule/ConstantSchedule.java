@@ -0,0 +1,26 @@
+package model.network.schedule;
+
+import model.network.parameters.Parameter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Keeps the learning rate at the learning constant.
+ */
+public class ConstantSchedule extends LearningRateSchedule {
+   public static Map<String, Parameter> defaultParameters =
+         new LinkedHashMap<String, Parameter>();
+
+   /**
+    * Default constructor.
+    * @param params schedule parameters
+    */
+   public ConstantSchedule(Map<String, Parameter> params) {
+   }
+
+   @Override
+   public double getRate(double baseRate, int epoch) {
+      return baseRate;
+   }
+}
@@ -0,0 +1,68 @@
+package model.network.schedule;
+
+import model.network.parameters.BoundedParameter;
+import model.network.parameters.Parameter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cosine annealing with warm restarts.
+ * The rate falls along half a cosine from the learning constant to a
+ * minimum over one period, then jumps back up for the next period, which
+ * may be longer.  The jumps shake the weights out of narrow minima without
+ * throwing them away.
+ */
+public class CosineSchedule extends LearningRateSchedule {
+   /** Epochs in the first period. */
+   private int period;
+
+   /** Factor each period is longer than the one before. */
+   private int periodMultiplier;
+
+   /** Lowest rate as a fraction of the learning constant. */
+   private double minimumFraction;
+
+   public static String kPeriod = "Period";
+   public static String kPeriodMultiplier = "Period Multiplier";
+   public static String kMinimumFraction = "Minimum Rate Fraction";
+   public static Map<String, Parameter> defaultParameters;
+   static {
+      defaultParameters = new LinkedHashMap<String, Parameter>();
+      defaultParameters.put(kPeriod,
+            new BoundedParameter<Integer>(kPeriod, 50, 1, null));
+      defaultParameters.put(kPeriodMultiplier,
+            new BoundedParameter<Integer>(kPeriodMultiplier, 2, 1, null));
+      defaultParameters.put(kMinimumFraction,
+            new BoundedParameter<Double>(kMinimumFraction, 0.01, 0.0, 1.0));
+   }
+
+   /**
+    * Default constructor.
+    * @param params schedule parameters
+    */
+   public CosineSchedule(Map<String, Parameter> params) {
+      this.period = (Integer) params.get(kPeriod).getValue();
+      this.periodMultiplier = (Integer) params.get(kPeriodMultiplier).getValue();
+      this.minimumFraction = (Double) params.get(kMinimumFraction).getValue();
+   }
+
+   @Override
+   public double getRate(double baseRate, int epoch) {
+      // Find the position within the current period.
+      long length = period;
+      long position = epoch;
+      if (periodMultiplier == 1) {
+         position %= length;
+      } else {
+         while (position >= length) {
+            position -= length;
+            length *= periodMultiplier;
+         }
+      }
+
+      double minimum = baseRate * minimumFraction;
+      double progress = (double) position / length;
+      return minimum + (baseRate - minimum) * 0.5 * (1.0 + Math.cos(Math.PI * progress));
+   }
+}
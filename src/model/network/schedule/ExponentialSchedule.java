@@ -0,0 +1,36 @@
+package model.network.schedule;
+
+import model.network.parameters.BoundedParameter;
+import model.network.parameters.Parameter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Multiplies the learning rate by a decay rate every epoch.
+ */
+public class ExponentialSchedule extends LearningRateSchedule {
+   /** Factor the rate is multiplied by each epoch. */
+   private double decayRate;
+
+   public static String kDecayRate = "Decay Rate";
+   public static Map<String, Parameter> defaultParameters;
+   static {
+      defaultParameters = new LinkedHashMap<String, Parameter>();
+      defaultParameters.put(kDecayRate,
+            new BoundedParameter<Double>(kDecayRate, 0.995, 0.0, 1.0));
+   }
+
+   /**
+    * Default constructor.
+    * @param params schedule parameters
+    */
+   public ExponentialSchedule(Map<String, Parameter> params) {
+      this.decayRate = (Double) params.get(kDecayRate).getValue();
+   }
+
+   @Override
+   public double getRate(double baseRate, int epoch) {
+      return baseRate * Math.pow(decayRate, epoch);
+   }
+}
@@ -0,0 +1,18 @@
+package model.network.schedule;
+
+import java.io.Serializable;
+
+/**
+ * Varies the learning rate over the course of training.
+ * Epochs are counted from the start of training or from the last restart,
+ * so a restarted network begins again at the base rate.
+ */
+public abstract class LearningRateSchedule implements Serializable {
+   /**
+    * Gets the learning rate for an epoch.
+    * @param baseRate learning constant the schedule starts from
+    * @param epoch epochs since training started or restarted
+    * @return learning rate
+    */
+   public abstract double getRate(double baseRate, int epoch);
+}
@@ -0,0 +1,43 @@
+package model.network.schedule;
+
+import model.network.parameters.BoundedParameter;
+import model.network.parameters.Parameter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Multiplies the learning rate by a decay factor every fixed number of epochs.
+ */
+public class StepSchedule extends LearningRateSchedule {
+   /** Epochs between decays. */
+   private int stepEpochs;
+
+   /** Factor the rate is multiplied by at each step. */
+   private double decayFactor;
+
+   public static String kStepEpochs = "Step Epochs";
+   public static String kDecayFactor = "Decay Factor";
+   public static Map<String, Parameter> defaultParameters;
+   static {
+      defaultParameters = new LinkedHashMap<String, Parameter>();
+      defaultParameters.put(kStepEpochs,
+            new BoundedParameter<Integer>(kStepEpochs, 100, 1, null));
+      defaultParameters.put(kDecayFactor,
+            new BoundedParameter<Double>(kDecayFactor, 0.5, 0.0, 1.0));
+   }
+
+   /**
+    * Default constructor.
+    * @param params schedule parameters
+    */
+   public StepSchedule(Map<String, Parameter> params) {
+      this.stepEpochs = (Integer) params.get(kStepEpochs).getValue();
+      this.decayFactor = (Double) params.get(kDecayFactor).getValue();
+   }
+
+   @Override
+   public double getRate(double baseRate, int epoch) {
+      return baseRate * Math.pow(decayFactor, epoch / stepEpochs);
+   }
+}
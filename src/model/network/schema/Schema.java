@@ -119,12 +119,19 @@ public class Schema implements Serializable {
     */
    public final double[] encodeOutput(Object out) throws Exception {
       double[] outputVector = new double[classifications.length];
+      outputVector[getOutputIndex(out)] = 1.0;
+      return outputVector;
+   }
 
+   /**
+    * Gets the index of an output's classification, which is the index
+    * of the one in its output vector.
+    * @param out output object
+    * @return classification index
+    */
+   public final int getOutputIndex(Object out) throws Exception {
       for (int i = 0; i < classifications.length; ++i)
-         if (out.equals(classifications[i])) {
-            outputVector[i] = 1.0;
-            return outputVector;
-         }
+         if (out.equals(classifications[i])) return i;
 
       throw new Exception("Output object is not recognized by this schema.");
    }
@@ -135,6 +142,15 @@ public class Schema implements Serializable {
     * @return Object output result
     */
    public final Object translateOutput(double[] out) throws Exception {
+      return classifications[translateOutputIndex(out)];
+   }
+
+   /**
+    * Translate an output vector to the index of its classification.
+    * @param out output vector
+    * @return classification index
+    */
+   public final int translateOutputIndex(double[] out) throws Exception {
       if (out.length != classifications.length)
          throw new Exception ("Invalid output vector!");
 
@@ -148,7 +164,7 @@ public class Schema implements Serializable {
             maxIndex = index;
          }
       }
-      return classifications[maxIndex];
+      return maxIndex;
    }
 
    /**
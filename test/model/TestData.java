@@ -0,0 +1,81 @@
+package model;
+
+import application.FileManager;
+import model.network.activation.Sigmoid;
+import model.network.memory.Memory;
+import model.network.parameters.ClassParameter;
+import model.network.parameters.Parameters;
+import model.network.schema.ColorInputAdapter;
+import model.network.schema.Schema;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Shared fixtures for tests on the stored color memories.
+ */
+public class TestData {
+   /** Memory set used for testing. */
+   private static final String kMemorySet = "master";
+
+   private TestData() { }
+
+   /**
+    * Creates the schema of the stored color memories.
+    * @return color schema
+    */
+   public static Schema createColorSchema() {
+      return new Schema("Schema", new ColorInputAdapter(), new Object[] {
+            "Red",
+            "Orange",
+            "Yellow",
+            "Green",
+            "Blue",
+            "Purple"
+      });
+   }
+
+   /**
+    * Loads the color memories in a fixed shuffled order.
+    * @return memories
+    */
+   public static List<Memory> loadMemories() throws Exception {
+      List<Memory> memories = FileManager.loadMemories(kMemorySet);
+      Collections.shuffle(memories, new Random(0));
+      return memories;
+   }
+
+   /**
+    * Gets the first two thirds of a memory list, for training.
+    * @param memories memories
+    * @return training memories
+    */
+   public static List<Memory> trainingSet(List<Memory> memories) {
+      return memories.subList(0, memories.size() * 2 / 3);
+   }
+
+   /**
+    * Gets the last third of a memory list, for testing.
+    * @param memories memories
+    * @return test memories
+    */
+   public static List<Memory> testSet(List<Memory> memories) {
+      return memories.subList(memories.size() * 2 / 3, memories.size());
+   }
+
+   /**
+    * Creates network parameters for a neuron graph class.
+    * Uses the exact sigmoid so results do not depend on estimation tables.
+    * @param graphClass neuron graph class
+    * @param hiddenLayerDepths hidden layer depths
+    * @return parameters
+    */
+   public static Parameters createParameters(Class graphClass, Integer[] hiddenLayerDepths) {
+      Parameters params = new Parameters();
+      ((ClassParameter) params.getParameter(Parameters.kNeuronGraph)).setValue(graphClass);
+      ((ClassParameter) params.getParameter(Parameters.kActivationFunction)).setValue(Sigmoid.class);
+      params.getParameter(Parameters.kHiddenLayerDepths).setValue(hiddenLayerDepths);
+      return params;
+   }
+}
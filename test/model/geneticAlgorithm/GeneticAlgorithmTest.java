@@ -0,0 +1,95 @@
+package model.geneticAlgorithm;
+
+import model.TestData;
+import model.network.DenseNeuronGraph;
+import model.network.Network;
+import model.network.NeuronGraph;
+import model.network.memory.Memory;
+import model.network.parameters.Parameters;
+import model.network.schema.Schema;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that seeded genetic algorithm runs repeat, serially, on a
+ * fork-join pool and across islands.
+ */
+public class GeneticAlgorithmTest {
+   private final Schema schema = TestData.createColorSchema();
+
+   @After
+   public void clearSeed() {
+      NeuronGraph.clearRandomSeed();
+   }
+
+   @Test
+   public void poolPicksSameWinnerAsSerialRun() throws Exception {
+      final int kThreads = 4;
+      List<Memory> memories = TestData.loadMemories();
+      int third = memories.size() / 3;
+      List<Memory> training = memories.subList(0, third);
+      List<Memory> test = memories.subList(third, 2 * third);
+      List<Memory> fitness = memories.subList(2 * third, memories.size());
+
+      Parameters params = TestData.createParameters(DenseNeuronGraph.class, new Integer[] { 8 });
+      params.getParameter(Parameters.kIterationCap).setValue(20);
+      double[][] inputs = new double[fitness.size()][];
+      for (int i = 0; i < inputs.length; ++i) inputs[i] = fitness.get(i).inputVector;
+
+      double[][][] scores = new double[2][][];
+      long[] evaluations = new long[2];
+      long[] saved = new long[2];
+      for (int run = 0; run < 2; ++run) {
+         ForkJoinPool pool = (run == 0) ? null : new ForkJoinPool(kThreads);
+         GeneticAlgorithm<Network> algorithm = new GeneticAlgorithm<Network>(
+               new NetworkGeneticAdapter(schema, params, training, test, fitness));
+         algorithm.setPopulationSize(8);
+         algorithm.setGenerationCap(2);
+         algorithm.setSeed(42);
+         algorithm.setForkJoinPool(pool);
+
+         try {
+            scores[run] = algorithm.run().queryBatch(inputs).scores;
+         } finally {
+            if (pool != null) pool.shutdown();
+         }
+         evaluations[run] = algorithm.getEvaluationCount();
+         saved[run] = algorithm.getSavedEvaluationCount();
+      }
+
+      assertTrue(Arrays.deepEquals(scores[0], scores[1]));
+      assertEquals(evaluations[0], evaluations[1]);
+      assertEquals(saved[0], saved[1]);
+      assertTrue("Fitness cache saved no evaluations!", saved[0] > 0);
+   }
+
+   @Test
+   public void seededIslandRunsRepeat() throws Exception {
+      List<Memory> memories = TestData.loadMemories();
+      NeuronGraph.setRandomSeed(0);
+      Network network = new Network("Test", schema,
+            TestData.createParameters(DenseNeuronGraph.class, new Integer[] { 16 }));
+      network.train(TestData.trainingSet(memories), TestData.testSet(memories));
+
+      PrototypeGeneticAdapter adapter =
+            new PrototypeGeneticAdapter(network, schema.getOutputClassifications()[0]);
+      double[][] winners = new double[2][];
+      for (int run = 0; run < 2; ++run) {
+         IslandGeneticAlgorithm<double[]> islands =
+               new IslandGeneticAlgorithm<double[]>(adapter, 4);
+         islands.setPopulationSize(50);
+         islands.setGenerationCap(10);
+         islands.setMutationRate(0.1);
+         islands.setMigrationInterval(3);
+         islands.setSeed(0);
+         winners[run] = islands.run();
+      }
+      assertArrayEquals(winners[0], winners[1], 0.0);
+   }
+}
@@ -0,0 +1,54 @@
+package model.network;
+
+import model.TestData;
+import model.network.memory.Memory;
+import model.network.schema.Schema;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that fused evaluation, on one thread or several, agrees with
+ * separate error and accuracy passes.
+ */
+public class EvaluatorTest {
+   @Test
+   public void fusedEvaluationMatchesTwoPasses() throws Exception {
+      final int kThreads = 3;
+      Schema schema = TestData.createColorSchema();
+      List<Memory> memories = TestData.loadMemories();
+      NeuronGraph graph = NeuronGraph.create(schema,
+            TestData.createParameters(DenseNeuronGraph.class, new Integer[] { 16 }));
+      for (Memory mem : TestData.trainingSet(memories)) graph.backpropagate(mem);
+      Evaluator evaluator = new Evaluator(schema, false);
+
+      double[] output = new double[schema.outputSize];
+      double error = 0.0;
+      int correct = 0;
+      for (Memory mem : memories) {
+         graph.fire(mem.inputVector, output);
+         error += evaluator.calcError(output, schema.getOutputIndex(mem.output));
+         if (schema.translateOutput(output).equals(mem.output)) ++correct;
+      }
+      double percent = 100.0 * correct / memories.size();
+
+      Evaluation serial = evaluator.evaluate(graph, memories);
+      assertEquals(error, serial.getTotalError(), 1e-9);
+      assertEquals(percent, serial.getPercentCorrect(), 1e-9);
+      assertEquals(memories.size(), serial.size());
+
+      ExecutorService workers = Executors.newFixedThreadPool(kThreads);
+      try {
+         Evaluation parallel = evaluator.evaluate(graph, memories, workers, kThreads);
+         assertEquals(error, parallel.getTotalError(), 1e-9);
+         assertEquals(percent, parallel.getPercentCorrect(), 1e-9);
+         assertArrayEquals(serial.getConfusionMatrix(), parallel.getConfusionMatrix());
+      } finally {
+         workers.shutdown();
+      }
+   }
+}
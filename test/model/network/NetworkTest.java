@@ -0,0 +1,132 @@
+package model.network;
+
+import model.TestData;
+import model.network.memory.Memory;
+import model.network.parameters.Parameters;
+import model.network.schema.Schema;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks network copies and background prototype generation.
+ */
+public class NetworkTest {
+   private final Schema schema = TestData.createColorSchema();
+
+   @After
+   public void clearSeed() {
+      NeuronGraph.clearRandomSeed();
+   }
+
+   @Test
+   public void copyOnWriteClonesStaySeparate() throws Exception {
+      List<Memory> memories = TestData.loadMemories();
+      double[][] inputs = new double[memories.size()][];
+      for (int i = 0; i < inputs.length; ++i) inputs[i] = memories.get(i).inputVector;
+
+      Network network = new Network("Test", schema,
+            TestData.createParameters(DenseNeuronGraph.class, new Integer[] { 64, 64 }));
+      network.addMemories(memories);
+
+      Network copy = network.copyOnWriteClone();
+      double[][] original = network.queryBatch(inputs).scores;
+      assertTrue(Arrays.deepEquals(original, copy.queryBatch(inputs).scores));
+
+      network.mutate();
+      assertTrue(Arrays.deepEquals(original, copy.queryBatch(inputs).scores));
+
+      double[][] mutated = network.queryBatch(inputs).scores;
+      copy.mutate();
+      assertTrue(Arrays.deepEquals(mutated, network.queryBatch(inputs).scores));
+      assertEquals(memories.size(), copy.getAllMemories().size());
+   }
+
+   @Test
+   public void prototypesAreServedStaleWhileRegenerating() throws Exception {
+      List<Memory> memories = TestData.loadMemories();
+      List<Memory> training = TestData.trainingSet(memories);
+      List<Memory> test = TestData.testSet(memories);
+      Network network = new Network("Test", schema,
+            TestData.createParameters(DenseNeuronGraph.class, new Integer[] { 16 }));
+      network.train(training, test);
+
+      Collection<Memory> generated = network.awaitPrototypes();
+      assertEquals(schema.outputSize, generated.size());
+      assertSame(generated.iterator().next(), network.getPrototypes().iterator().next());
+
+      network.train(training, test);
+      Collection<Memory> stale = network.getPrototypes();
+      assertSame(generated.iterator().next(), stale.iterator().next());
+
+      Collection<Memory> regenerated = network.awaitPrototypes();
+      assertEquals(schema.outputSize, regenerated.size());
+      assertNotSame(generated.iterator().next(), regenerated.iterator().next());
+   }
+
+   @Test
+   public void listenersHearAboutNewPrototypes() throws Exception {
+      List<Memory> memories = TestData.loadMemories();
+      Network network = new Network("Test", schema,
+            TestData.createParameters(DenseNeuronGraph.class, new Integer[] { 16 }));
+      network.addMemories(memories);
+      network.awaitPrototypes();
+
+      final CountDownLatch generated = new CountDownLatch(1);
+      Network.PrototypeListener listener = new Network.PrototypeListener() {
+         @Override
+         public void onPrototypesGenerated(Network network) {
+            generated.countDown();
+         }
+      };
+      network.addPrototypeListener(listener);
+      try {
+         // Mutating makes the prototypes stale, which starts a new set
+         // right away while someone is listening.
+         network.mutate();
+         assertTrue(generated.await(60, TimeUnit.SECONDS));
+      } finally {
+         network.removePrototypeListener(listener);
+      }
+   }
+
+   @Test
+   public void trainingWhileGeneratingIsSafe() throws Exception {
+      List<Memory> memories = TestData.loadMemories();
+      for (Class graphClass : new Class[] {
+            DenseNeuronGraph.class, LinkedNeuronGraph.class, OffHeapNeuronGraph.class }) {
+         Network network = new Network("Test", schema,
+               TestData.createParameters(graphClass, new Integer[] { 16 }));
+         network.addMemories(memories);
+
+         for (int round = 0; round < 5; ++round) {
+            network.getPrototypes();
+            network.train();
+            network.mutate();
+         }
+         assertEquals(schema.outputSize, network.awaitPrototypes().size());
+      }
+   }
+
+   @Test
+   public void gradientPrototypesAreClassifiedCorrectly() throws Exception {
+      List<Memory> memories = TestData.loadMemories();
+      Parameters params = TestData.createParameters(DenseNeuronGraph.class, new Integer[] { 16 });
+      params.getParameter(Parameters.kPrototypeGenerator).setValue(Network.kGradientPrototypes);
+      NeuronGraph.setRandomSeed(0);
+      Network network = new Network("Test", schema, params);
+      network.train(TestData.trainingSet(memories), TestData.testSet(memories));
+
+      for (Memory prototype : network.awaitPrototypes()) {
+         BatchQueryResult result = network.queryBatch(new double[][] { prototype.inputVector });
+         assertEquals(schema.getOutputIndex(prototype.output), result.classIndices[0]);
+      }
+   }
+}
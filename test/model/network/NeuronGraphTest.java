@@ -0,0 +1,297 @@
+package model.network;
+
+import model.TestData;
+import model.network.memory.Memory;
+import model.network.schema.Schema;
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the neuron graph engines agree with each other and that
+ * copies of them stay independent.
+ */
+public class NeuronGraphTest {
+   private final Schema schema = TestData.createColorSchema();
+
+   @After
+   public void clearSeed() {
+      NeuronGraph.clearRandomSeed();
+   }
+
+   @Test
+   public void floatGraphMatchesDenseAccuracy() throws Exception {
+      final int kEpochs = 200;
+      List<Memory> memories = TestData.loadMemories();
+      List<Memory> training = TestData.trainingSet(memories);
+      List<Memory> test = TestData.testSet(memories);
+
+      double[] percents = new double[2];
+      Class[] graphClasses = new Class[] { DenseNeuronGraph.class, FloatNeuronGraph.class };
+      for (int i = 0; i < graphClasses.length; ++i) {
+         NeuronGraph.setRandomSeed(0);
+         NeuronGraph graph = NeuronGraph.create(schema,
+               TestData.createParameters(graphClasses[i], new Integer[] { 16 }));
+         for (int epoch = 0; epoch < kEpochs; ++epoch) {
+            for (Memory mem : training) graph.backpropagate(mem);
+         }
+         percents[i] = calcPercentCorrect(graph, test);
+      }
+
+      assertTrue("Dense graph failed to learn!", percents[0] > 70.0);
+      assertEquals(percents[0], percents[1], 5.0);
+   }
+
+   @Test
+   public void mappedGraphMatchesSource() throws Exception {
+      List<Memory> memories = TestData.loadMemories();
+      Integer[] hiddenLayerDepths = new Integer[] { 64, 64 };
+      NeuronGraph dense = NeuronGraph.create(schema,
+            TestData.createParameters(DenseNeuronGraph.class, hiddenLayerDepths));
+      for (Memory mem : memories) dense.backpropagate(mem);
+
+      File file = File.createTempFile("network", ".model");
+      file.deleteOnExit();
+      OffHeapNeuronGraph.write(dense, file);
+
+      // The off-heap dot product sums in a different order, so outputs
+      // only match to rounding.
+      OffHeapNeuronGraph mapped = OffHeapNeuronGraph.map(file, schema,
+            TestData.createParameters(OffHeapNeuronGraph.class, hiddenLayerDepths), false);
+      try {
+         for (Memory mem : memories) {
+            assertArrayEquals(dense.fire(mem.inputVector), mapped.fire(mem.inputVector), 1e-12);
+         }
+      } finally {
+         mapped.close();
+      }
+   }
+
+   @Test
+   public void closedGraphRejectsUse() throws Exception {
+      OffHeapNeuronGraph graph = (OffHeapNeuronGraph) NeuronGraph.create(schema,
+            TestData.createParameters(OffHeapNeuronGraph.class, new Integer[] { 16 }));
+      graph.close();
+      try {
+         graph.fire(new double[schema.inputSize]);
+         fail("Closed graph fired!");
+      } catch (RuntimeException e) {
+         assertEquals("Neuron graph is closed!", e.getMessage());
+      }
+   }
+
+   @Test
+   public void steadyStateTrainingDoesNotAllocate() throws Exception {
+      final int kWarmUpEpochs = 50;
+
+      com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+      Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+      threads.setThreadAllocatedMemoryEnabled(true);
+      long threadId = Thread.currentThread().getId();
+
+      List<Memory> memories = TestData.loadMemories();
+      double[] output = new double[schema.outputSize];
+
+      Class[] graphClasses = new Class[] {
+            DenseNeuronGraph.class,
+            FloatNeuronGraph.class,
+            OffHeapNeuronGraph.class
+      };
+      String[] paths = new String[] { "backpropagation", "gradient", "query" };
+
+      for (Class graphClass : graphClasses) {
+         NeuronGraph graph = NeuronGraph.create(schema,
+               TestData.createParameters(graphClass, new Integer[] { 16 }));
+         double[] gradient = new double[graph.getParameterCount()];
+
+         long[] allocated = new long[3];
+         for (int epoch = 0; epoch <= kWarmUpEpochs; ++epoch) {
+            // Cost of reading the counter itself.
+            long overhead = -threads.getThreadAllocatedBytes(threadId) +
+                  threads.getThreadAllocatedBytes(threadId);
+
+            long start = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < memories.size(); ++i) {
+               graph.backpropagate(memories.get(i));
+            }
+            allocated[0] = threads.getThreadAllocatedBytes(threadId) - start - overhead;
+
+            start = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < memories.size(); ++i) {
+               graph.accumulateGradient(memories.get(i), gradient);
+            }
+            graph.applyGradient(gradient, 0.0);
+            allocated[1] = threads.getThreadAllocatedBytes(threadId) - start - overhead;
+
+            start = threads.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < memories.size(); ++i) {
+               graph.fire(memories.get(i).inputVector, output);
+            }
+            allocated[2] = threads.getThreadAllocatedBytes(threadId) - start - overhead;
+         }
+         graph.close();
+
+         for (int path = 0; path < paths.length; ++path) {
+            assertTrue(graphClass.getSimpleName() + " allocates " + allocated[path] +
+                  " bytes per " + paths[path] + " epoch!", allocated[path] <= 0);
+         }
+      }
+   }
+
+   @Test
+   public void copyOnWriteClonesStaySeparate() throws Exception {
+      List<Memory> memories = TestData.loadMemories();
+
+      for (Class graphClass : new Class[] { DenseNeuronGraph.class, FloatNeuronGraph.class }) {
+         NeuronGraph graph = NeuronGraph.create(schema,
+               TestData.createParameters(graphClass, new Integer[] { 16 }));
+         double[] original = getWeights(graph);
+
+         NeuronGraph clone = graph.copyOnWriteClone();
+         assertArrayEquals(original, getWeights(clone), 0.0);
+
+         for (Memory mem : memories) graph.backpropagate(mem);
+         double[] trained = getWeights(graph);
+         assertFalse(Arrays.equals(original, trained));
+         assertArrayEquals(original, getWeights(clone), 0.0);
+
+         for (Memory mem : memories) clone.backpropagate(mem);
+         assertArrayEquals(trained, getWeights(graph), 0.0);
+      }
+   }
+
+   @Test
+   public void concurrentUpdatesNeverReachClones() throws Exception {
+      final int kThreads = 3;
+      final long kMillis = 500;
+      final List<Memory> memories = TestData.loadMemories();
+
+      for (Class graphClass : new Class[] { DenseNeuronGraph.class, FloatNeuronGraph.class }) {
+         final NeuronGraph graph = NeuronGraph.create(schema,
+               TestData.createParameters(graphClass, new Integer[] { 64, 64 }));
+         final AtomicBoolean stop = new AtomicBoolean();
+         Thread[] writers = new Thread[kThreads];
+         for (int i = 0; i < writers.length; ++i) {
+            writers[i] = new Thread() {
+               @Override
+               public void run() {
+                  try {
+                     while (!stop.get()) {
+                        for (Memory mem : memories) graph.backpropagate(mem);
+                     }
+                  } catch (Exception e) {
+                     throw new RuntimeException(e);
+                  }
+               }
+            };
+            writers[i].start();
+         }
+
+         try {
+            long end = System.currentTimeMillis() + kMillis;
+            while (System.currentTimeMillis() < end) {
+               NeuronGraph clone = graph.copyOnWriteClone();
+               double[] taken = getWeights(clone);
+               Thread.sleep(1);
+               assertArrayEquals(taken, getWeights(clone), 0.0);
+            }
+         } finally {
+            stop.set(true);
+            for (Thread writer : writers) writer.join();
+         }
+      }
+   }
+
+   @Test
+   public void crossoverAgreesAcrossEngines() throws Exception {
+      Integer[] hiddenLayerDepths = new Integer[] { 8 };
+      Class[] graphClasses = new Class[] {
+            DenseNeuronGraph.class,
+            LinkedNeuronGraph.class,
+            OffHeapNeuronGraph.class
+      };
+
+      double[] leftWeights = null;
+      double[] rightWeights = null;
+      double[] expected = null;
+      for (Class graphClass : graphClasses) {
+         NeuronGraph left = NeuronGraph.create(schema,
+               TestData.createParameters(graphClass, hiddenLayerDepths));
+         NeuronGraph right = NeuronGraph.create(schema,
+               TestData.createParameters(graphClass, hiddenLayerDepths));
+         if (leftWeights == null) {
+            leftWeights = getWeights(left);
+            rightWeights = getWeights(right);
+         }
+         left.setWeights(leftWeights);
+         right.setWeights(rightWeights);
+
+         NeuronGraph.setRandomSeed(0);
+         NeuronGraph child = NeuronGraph.crossover(left, right,
+               TestData.createParameters(graphClass, hiddenLayerDepths));
+         double[] childWeights = getWeights(child);
+
+         // Every weight and bias comes from either parent or their average,
+         // and the right parent contributes some of each.
+         int fromRight = 0;
+         for (int i = 0; i < childWeights.length; ++i) {
+            double average = (leftWeights[i] + rightWeights[i]) / 2;
+            assertTrue(childWeights[i] == leftWeights[i] ||
+                  childWeights[i] == rightWeights[i] || childWeights[i] == average);
+            if (childWeights[i] == rightWeights[i]) ++fromRight;
+         }
+         assertTrue(graphClass.getSimpleName() + " ignores the right parent!", fromRight > 0);
+
+         if (expected == null) expected = childWeights;
+         assertArrayEquals(graphClass.getSimpleName() + " crosses over differently!",
+               expected, childWeights, 0.0);
+
+         left.close();
+         right.close();
+         child.close();
+      }
+
+      // The output biases close the parameter vector.
+      int biasStart = expected.length - schema.outputSize;
+      boolean biasCrossed = false;
+      for (int i = biasStart; i < expected.length; ++i) {
+         if (expected[i] != leftWeights[i]) biasCrossed = true;
+      }
+      assertTrue("Biases were not crossed over!", biasCrossed);
+   }
+
+   /**
+    * Copies a graph's weights into a new vector.
+    * @param graph neuron graph
+    * @return weight vector
+    */
+   private static double[] getWeights(NeuronGraph graph) {
+      double[] weights = new double[graph.getParameterCount()];
+      graph.getWeights(weights);
+      return weights;
+   }
+
+   /**
+    * Calculates the percentage of memories a graph classifies correctly.
+    * @param graph neuron graph
+    * @param memories memories to classify
+    * @return percentage correct
+    */
+   private double calcPercentCorrect(NeuronGraph graph, List<Memory> memories) throws Exception {
+      int correct = 0;
+      for (Memory mem : memories) {
+         if (schema.translateOutput(graph.fire(mem.inputVector)).equals(mem.output))
+            ++correct;
+      }
+      return 100.0 * correct / memories.size();
+   }
+}
@@ -0,0 +1,60 @@
+package model.network;
+
+import model.TestData;
+import model.network.memory.Memory;
+import model.network.parameters.Parameters;
+import model.network.schema.Schema;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that synthesized prototypes are classified as the classification
+ * they were synthesized for.
+ */
+public class PrototypeSynthesizerTest {
+   @After
+   public void clearSeed() {
+      NeuronGraph.clearRandomSeed();
+   }
+
+   @Test
+   public void prototypesAreClassifiedCorrectly() throws Exception {
+      Schema schema = TestData.createColorSchema();
+      List<Memory> memories = TestData.loadMemories();
+
+      for (boolean softmax : new boolean[] { false, true }) {
+         Parameters params = TestData.createParameters(DenseNeuronGraph.class, new Integer[] { 16 });
+         params.getParameter(Parameters.kSoftmaxOutput).setValue(softmax);
+         NeuronGraph.setRandomSeed(0);
+         Network network = new Network("Test", schema, params);
+         network.train(TestData.trainingSet(memories), TestData.testSet(memories));
+
+         PrototypeSynthesizer synthesizer = network.createPrototypeSynthesizer();
+         double[][] prototypes = new double[schema.outputSize][];
+         for (int index = 0; index < prototypes.length; ++index) {
+            prototypes[index] = synthesizer.synthesize(index, new Random(index));
+            for (double value : prototypes[index]) {
+               assertTrue(value >= 0.0 && value <= 1.0);
+            }
+         }
+
+         BatchQueryResult result = network.queryBatch(prototypes);
+         for (int index = 0; index < prototypes.length; ++index) {
+            assertEquals(index, result.classIndices[index]);
+         }
+         assertTrue(synthesizer.getPassCount() > 0);
+      }
+   }
+
+   @Test(expected = RuntimeException.class)
+   public void invalidClassificationIsRejected() throws Exception {
+      Network network = new Network("Test", TestData.createColorSchema(),
+            TestData.createParameters(DenseNeuronGraph.class, new Integer[] { 16 }));
+      network.createPrototypeSynthesizer().synthesize(-1, new Random(0));
+   }
+}
@@ -0,0 +1,59 @@
+package model.network;
+
+import model.TestData;
+import model.network.memory.Memory;
+import model.network.parameters.Parameters;
+import model.network.schema.Schema;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that int8 quantized graphs classify like the graphs they were
+ * built from.
+ */
+public class QuantizedNeuronGraphTest {
+   @After
+   public void clearSeed() {
+      NeuronGraph.clearRandomSeed();
+   }
+
+   @Test
+   public void quantizedGraphAgreesWithSource() throws Exception {
+      final int kEpochs = 200;
+      Schema schema = TestData.createColorSchema();
+      List<Memory> memories = TestData.loadMemories();
+      List<Memory> training = TestData.trainingSet(memories);
+      List<Memory> test = TestData.testSet(memories);
+
+      for (Integer[] shape : new Integer[][] { { 16 }, { 64, 64 } }) {
+         Parameters params = TestData.createParameters(DenseNeuronGraph.class, shape);
+         NeuronGraph.setRandomSeed(0);
+         NeuronGraph graph = NeuronGraph.create(schema, params);
+         for (int epoch = 0; epoch < kEpochs; ++epoch) {
+            for (Memory mem : training) graph.backpropagate(mem);
+         }
+         QuantizedNeuronGraph quantized = new QuantizedNeuronGraph(graph, schema, params, training);
+
+         int agreed = 0;
+         for (Memory mem : test) {
+            if (schema.translateOutputIndex(quantized.fire(mem.inputVector)) ==
+                  schema.translateOutputIndex(graph.fire(mem.inputVector))) ++agreed;
+         }
+         assertTrue("Quantized graph agrees on " + agreed + " of " + test.size() + "!",
+               agreed >= 0.95 * test.size());
+         assertTrue(quantized.getParameterBytes() < 8L * graph.getParameterCount());
+      }
+   }
+
+   @Test(expected = RuntimeException.class)
+   public void quantizationRequiresCalibration() throws Exception {
+      Schema schema = TestData.createColorSchema();
+      Parameters params = TestData.createParameters(DenseNeuronGraph.class, new Integer[] { 16 });
+      new QuantizedNeuronGraph(NeuronGraph.create(schema, params), schema, params,
+            TestData.loadMemories().subList(0, 0));
+   }
+}
@@ -0,0 +1,44 @@
+package model.network.parameters;
+
+import model.network.activation.Sigmoid;
+import org.junit.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that parameter clones keep customized values and stay separate.
+ */
+public class ParametersTest {
+   @Test
+   public void cloneKeepsSubParameters() {
+      Parameters params = new Parameters();
+      ClassParameter function = (ClassParameter) params.getParameter(Parameters.kActivationFunction);
+      Parameter slope = Sigmoid.defaultParameters.get(Sigmoid.kSlopeParameter).clone();
+      assertTrue(slope.setValue(3));
+      Map<String, Parameter> subParams = new LinkedHashMap<String, Parameter>();
+      subParams.put(slope.name, slope);
+      function.setValue(Sigmoid.class, subParams);
+
+      ClassParameter cloned = (ClassParameter) params.clone().getParameter(Parameters.kActivationFunction);
+      Parameter clonedSlope = cloned.getSubParameters().get(Sigmoid.kSlopeParameter);
+      assertEquals(Sigmoid.class, cloned.getValue());
+      assertEquals(3, clonedSlope.getValue());
+
+      assertTrue(clonedSlope.setValue(4));
+      assertEquals(3, slope.getValue());
+   }
+
+   @Test
+   public void cloneLeavesDefaultsAlone() {
+      Parameters params = new Parameters();
+      ClassParameter function = (ClassParameter) params.getParameter(Parameters.kActivationFunction);
+      function.setValue(Sigmoid.class);
+
+      ClassParameter cloned = function.clone();
+      cloned.getSubParameters().get(Sigmoid.kSlopeParameter).setValue(5);
+      assertEquals(1, Sigmoid.defaultParameters.get(Sigmoid.kSlopeParameter).getValue());
+   }
+}